@@ -0,0 +1,432 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.zip.*;
+
+/**
+ * Compressed glossary file (".ugz"). The entries are stored sorted by keyword,
+ * in blocks of about BLOCK_SIZE bytes, each compressed on its own with
+ * Deflate. Inside a block, every keyword only stores what differs from the
+ * previous one (front coding), followed by its definitions. The file is laid
+ * out as:
+ * <ul>
+ * <li>header: magic number, format version, number of entries and blocks,
+ * offset, length and CRC32 of the block index</li>
+ * <li>the compressed blocks</li>
+ * <li>the block index: first keyword, offset, compressed and raw length, number
+ * of entries and CRC32 (of the raw content) of every block</li>
+ * </ul>
+ * Opening the file only reads the block index, so looking up a keyword
+ * inflates a single block, and reading every entry inflates the blocks in
+ * parallel.
+ * <p>
+ * A keyword can be looked up offline with
+ * <code>java BlockFile &lt;file&gt;.ugz &lt;keyword&gt;</code>.
+ */
+public class BlockFile {
+    public static final Integer MAGIC = 0x55475A42; // "UGZB"
+    public static final Integer FORMAT = 1;
+    public static final Integer HEADER = 32;
+    public static final Integer BLOCK_SIZE = 8 * 1024;
+
+    private String path;
+    private ByteBuffer file;
+    private Integer entries;
+    private String[] first;
+    private long[] offsets;
+    private int[] lengths, sizes, counts, crcs;
+
+    /**
+     * Entries of an inflated block.
+     */
+    private static class Block {
+        private String[] keys;
+        private String[][] values;
+    }
+
+    private BlockFile(String path, ByteBuffer file) {
+        this.path = path;
+        this.file = file;
+    }
+
+    /**
+     * Open a compressed glossary file, reading its block index.
+     *
+     * @param path path of the file
+     * @return the opened file
+     * @throws IOException if it can't be read or isn't a valid file
+     */
+    public static BlockFile Open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+        BlockFile blocks;
+        try {
+            // The mapping stays valid after closing
+            blocks = new BlockFile(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+        ByteBuffer file = blocks.file;
+        if (file.capacity() < HEADER || file.getInt(0) != MAGIC || file.getInt(4) != FORMAT) {
+            throw new IOException("'" + path + "' is not a compressed glossary file.");
+        }
+        long start = file.getLong(16);
+        int length = file.getInt(24);
+        if (start < HEADER || start + length != file.capacity()) {
+            throw blocks.Corrupted();
+        }
+        ByteBuffer index = file.slice((int) start, length);
+        CRC32 check = new CRC32();
+        check.update(index.duplicate());
+        if ((int) check.getValue() != file.getInt(28)) {
+            throw blocks.Corrupted();
+        }
+        blocks.entries = file.getInt(8);
+        int count = file.getInt(12);
+        blocks.first = new String[count];
+        blocks.offsets = new long[count];
+        blocks.lengths = new int[count];
+        blocks.sizes = new int[count];
+        blocks.counts = new int[count];
+        blocks.crcs = new int[count];
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[ReadVarint(index)];
+            index.get(key);
+            blocks.first[i] = new String(key, StandardCharsets.UTF_8);
+            blocks.offsets[i] = index.getLong();
+            blocks.lengths[i] = index.getInt();
+            blocks.sizes[i] = index.getInt();
+            blocks.counts[i] = index.getInt();
+            blocks.crcs[i] = index.getInt();
+        }
+        return blocks;
+    }
+
+    /**
+     * Write entries into a compressed glossary file. The file is written aside
+     * then moved into place, so it is never seen half-written.
+     *
+     * @param data entries sorted by keyword
+     * @param path path of the file
+     * @throws IOException
+     */
+    public static void Write(Map<String, String[]> data, String path) throws IOException {
+        Path temp = Path.of(path + ".tmp");
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(2 * BLOCK_SIZE);
+        byte[] compressed = new byte[4 * BLOCK_SIZE];
+        int blocks = 0, count = 0, entries = 0;
+        long offset = HEADER;
+        byte[] previous = null;
+        try {
+            channel.position(HEADER);
+            Iterator<Map.Entry<String, String[]>> it = data.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, String[]> entry = it.next();
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                if (count == 0) {
+                    // The index holds the whole first keyword of each block
+                    WriteVarint(index, key.length);
+                    index.write(key);
+                    previous = null;
+                }
+                int shared = 0;
+                while (previous != null && shared < previous.length && shared < key.length
+                        && previous[shared] == key[shared]) {
+                    shared++;
+                }
+                WriteVarint(raw, shared);
+                WriteVarint(raw, key.length - shared);
+                raw.write(key, shared, key.length - shared);
+                String[] values = entry.getValue();
+                WriteVarint(raw, values.length);
+                for (String value : values) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    WriteVarint(raw, bytes.length);
+                    raw.write(bytes);
+                }
+                previous = key;
+                count++;
+                entries++;
+                if (raw.size() < BLOCK_SIZE && it.hasNext()) {
+                    continue;
+                }
+                // Compress the block and add it to the index
+                byte[] content = raw.toByteArray();
+                deflater.reset();
+                deflater.setInput(content);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+                    }
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+                WriteFully(channel, ByteBuffer.wrap(compressed, 0, length));
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                ByteBuffer meta = ByteBuffer.allocate(24);
+                meta.putLong(offset).putInt(length).putInt(content.length).putInt(count).putInt((int) crc.getValue());
+                index.write(meta.array());
+                offset += length;
+                blocks++;
+                count = 0;
+                raw.reset();
+            }
+            byte[] table = index.toByteArray();
+            WriteFully(channel, ByteBuffer.wrap(table));
+            CRC32 crc = new CRC32();
+            crc.update(table);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(FORMAT).putInt(entries).putInt(blocks);
+            header.putLong(offset).putInt(table.length).putInt((int) crc.getValue());
+            header.flip();
+            channel.position(0);
+            WriteFully(channel, header);
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+        Files.move(temp, Path.of(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return number of entries in the file
+     */
+    public Integer size() {
+        return entries;
+    }
+
+    /**
+     * @return number of blocks in the file
+     */
+    public Integer getBlocks() {
+        return first.length;
+    }
+
+    /**
+     * @return size of the file, in bytes
+     */
+    public Long getLength() {
+        return (long) file.capacity();
+    }
+
+    /**
+     * @return size of the entries once inflated, in bytes
+     */
+    public Long getRawLength() {
+        long total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Look up a keyword (case-sensitive), inflating only the block that can
+     * hold it.
+     *
+     * @param key the keyword
+     * @return its definitions, or null if it isn't in the file
+     * @throws IOException if the block is corrupted
+     */
+    public String[] Get(String key) throws IOException {
+        // Last block starting at or before the keyword
+        int low = 0, high = first.length - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (first[mid].compareTo(key) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0) {
+            return null;
+        }
+        Block block = Inflate(found);
+        int i = Arrays.binarySearch(block.keys, key);
+        return i >= 0 ? block.values[i] : null;
+    }
+
+    /**
+     * Read every entry of the file. The blocks are inflated in parallel, then
+     * added in order.
+     *
+     * @param target receives the entries
+     * @throws IOException if a block is corrupted
+     */
+    public void ReadAll(Map<String, String[]> target) throws IOException {
+        Block[] blocks = new Block[first.length];
+        try {
+            IntStream.range(0, blocks.length).parallel().forEach(i -> {
+                try {
+                    blocks[i] = Inflate(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Block block : blocks) {
+            for (int i = 0; i < block.keys.length; i++) {
+                target.put(block.keys[i], block.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Iterate over every entry of the file, in keyword order. Blocks are
+     * inflated one at a time, so only one is held in memory.
+     *
+     * @return the entries, throwing UncheckedIOException if a block is corrupted
+     */
+    public Iterator<Map.Entry<String, String[]>> Iterate() {
+        return new Iterator<Map.Entry<String, String[]>>() {
+            private Block block = null;
+            private int id = 0, i = 0;
+
+            @Override
+            public boolean hasNext() {
+                while ((block == null || i == block.keys.length) && id < first.length) {
+                    try {
+                        block = Inflate(id++);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    i = 0;
+                }
+                return block != null && i < block.keys.length;
+            }
+
+            @Override
+            public Map.Entry<String, String[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String[]> entry = Map.entry(block.keys[i], block.values[i]);
+                i++;
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Inflate and decode a block. Safe to call from several threads.
+     */
+    private Block Inflate(int id) throws IOException {
+        byte[] content = new byte[sizes[id]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(file.slice((int) offsets[id], lengths[id]));
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int read = inflater.inflate(content, length, content.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != content.length) {
+                throw Corrupted();
+            }
+        } catch (DataFormatException | IndexOutOfBoundsException e) {
+            throw Corrupted();
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != crcs[id]) {
+            throw Corrupted();
+        }
+        ByteBuffer in = ByteBuffer.wrap(content);
+        Block block = new Block();
+        block.keys = new String[counts[id]];
+        block.values = new String[counts[id]][];
+        byte[] key = new byte[0];
+        for (int i = 0; i < counts[id]; i++) {
+            int shared = ReadVarint(in);
+            int rest = ReadVarint(in);
+            key = Arrays.copyOf(key, shared + rest);
+            in.get(key, shared, rest);
+            block.keys[i] = new String(key, StandardCharsets.UTF_8);
+            String[] values = new String[ReadVarint(in)];
+            for (int j = 0; j < values.length; j++) {
+                int length = ReadVarint(in);
+                values[j] = new String(content, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+            block.values[i] = values;
+        }
+        return block;
+    }
+
+    private IOException Corrupted() {
+        return new IOException("Compressed file '" + path + "' is corrupted.");
+    }
+
+    private static void WriteFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Write a non-negative number on as few bytes as possible, 7 bits per byte.
+     */
+    private static void WriteVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int ReadVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Offline lookup tool.
+     *
+     * @param args the compressed file and the keyword to look up
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("(i) Usage: java BlockFile <file>.ugz <keyword>");
+            return;
+        }
+        try {
+            BlockFile blocks = Open(args[0]);
+            String[] values = blocks.Get(args[1]);
+            if (values == null) {
+                System.out.println("(!) '" + args[1] + "' not found.");
+                return;
+            }
+            System.out.print(args[1] + ": ");
+            for (String str : values) {
+                System.out.print(str + " || ");
+            }
+            System.out.println();
+        } catch (IOException e) {
+            System.out.println("(!) Error reading file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.*;
+
+/**
+ * A map from keyword to definitions, sorted by keyword, storing the
+ * definitions dictionary-encoded: each distinct definition is kept once in a
+ * DefinitionPool, and each keyword only holds a packed int array of the ids of
+ * its definitions. Reading a keyword decodes its definitions into a new array,
+ * so changing that array doesn't change the map.
+ */
+public class CompactMap extends AbstractMap<String, String[]> {
+    private TreeMap<String, int[]> ids = new TreeMap<String, int[]>();
+    private DefinitionPool pool = new DefinitionPool();
+    private long definitions = 0;
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return ids.containsKey(key);
+    }
+
+    @Override
+    public String[] get(Object key) {
+        int[] values = ids.get(key);
+        return values == null ? null : pool.Decode(values);
+    }
+
+    @Override
+    public String[] put(String key, String[] value) {
+        int[] values = pool.Encode(value), old = ids.put(key, values);
+        definitions += values.length - (old == null ? 0 : old.length);
+        return old == null ? null : pool.Decode(old);
+    }
+
+    @Override
+    public String[] remove(Object key) {
+        int[] old = ids.remove(key);
+        if (old == null) {
+            return null;
+        }
+        definitions -= old.length;
+        return pool.Decode(old);
+    }
+
+    /**
+     * @return the pool of distinct definitions
+     */
+    public DefinitionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return number of definitions of all keywords
+     */
+    public long getDefinitions() {
+        return definitions;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String[]>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String[]>>() {
+            @Override
+            public int size() {
+                return ids.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String[]>> iterator() {
+                Iterator<Map.Entry<String, int[]>> it = ids.entrySet().iterator();
+                return new Iterator<Map.Entry<String, String[]>>() {
+                    private Map.Entry<String, int[]> last = null;
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, String[]> next() {
+                        last = it.next();
+                        return new Entry(last);
+                    }
+
+                    @Override
+                    public void remove() {
+                        definitions -= last.getValue().length;
+                        it.remove();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An entry decoded on demand. Setting its value encodes it in place.
+     */
+    private class Entry implements Map.Entry<String, String[]> {
+        private Map.Entry<String, int[]> entry;
+
+        private Entry(Map.Entry<String, int[]> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public String[] getValue() {
+            return pool.Decode(entry.getValue());
+        }
+
+        @Override
+        public String[] setValue(String[] value) {
+            int[] values = pool.Encode(value), old = entry.setValue(values);
+            definitions += values.length - old.length;
+            return pool.Decode(old);
+        }
+    }
+}
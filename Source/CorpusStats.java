@@ -0,0 +1,331 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Statistics over all entries of a glossary, kept up to date as entries change
+ * so reporting them doesn't read the glossary again:
+ * <ul>
+ * <li>the number of keywords and definitions, and how many keywords have each
+ * number of definitions;</li>
+ * <li>how many times each word appears in the definitions (normalized as in
+ * SimilarityIndex, without the most common English words);</li>
+ * <li>the keywords sharing identical definitions, in any order and normalized
+ * (as Deduper finds them), grouped by a hash of their definitions.</li>
+ * </ul>
+ * The statistics are first computed over parts of the glossary in parallel,
+ * then merged. A changed keyword is counted out with the definitions it was
+ * counted with, and counted in with its new ones, in O(number of words of its
+ * definitions). The k most frequent words and largest groups are kept ranked,
+ * so reporting them is O(k).
+ */
+public class CorpusStats {
+    private static final Integer PARTS = 64;
+    private static final Set<String> STOP_WORDS = new HashSet<String>(Arrays.asList("a", "an", "and", "are", "as",
+            "at", "be", "by", "for", "from", "i", "in", "is", "it", "of", "on", "or", "that", "the", "this", "to",
+            "was", "when", "with", "you", "your",
+            // Left of contractions by normalization ("don't" is "don t")
+            "d", "ll", "m", "re", "s", "t", "ve"));
+
+    /**
+     * Items ranked by a count, the highest first.
+     */
+    public static class Ranking<T extends Comparable<T>> {
+        private HashMap<T, Integer> counts = new HashMap<T, Integer>();
+        private TreeMap<Integer, TreeSet<T>> buckets = new TreeMap<Integer, TreeSet<T>>(Collections.reverseOrder());
+
+        /**
+         * Change the count of an item, O(log n). An item whose count drops to 0 is
+         * removed.
+         *
+         * @param item  the item
+         * @param delta added to its count
+         */
+        public void Add(T item, Integer delta) {
+            Integer count = counts.getOrDefault(item, 0);
+            if (count > 0) {
+                TreeSet<T> bucket = buckets.get(count);
+                bucket.remove(item);
+                if (bucket.isEmpty()) {
+                    buckets.remove(count);
+                }
+            }
+            count += delta;
+            if (count > 0) {
+                counts.put(item, count);
+                buckets.computeIfAbsent(count, c -> new TreeSet<T>()).add(item);
+            } else {
+                counts.remove(item);
+            }
+        }
+
+        /**
+         * @param item an item
+         * @return its count, 0 if it isn't ranked
+         */
+        public Integer get(T item) {
+            return counts.getOrDefault(item, 0);
+        }
+
+        /**
+         * @return number of items
+         */
+        public Integer size() {
+            return counts.size();
+        }
+
+        /**
+         * Get the items with the highest counts, ties in their natural order.
+         *
+         * @param k number of items
+         * @return at most k items, the highest count first
+         */
+        public List<T> Top(Integer k) {
+            ArrayList<T> top = new ArrayList<T>(k);
+            for (TreeSet<T> bucket : buckets.values()) {
+                for (T item : bucket) {
+                    if (top.size() == k) {
+                        return top;
+                    }
+                    top.add(item);
+                }
+            }
+            return top;
+        }
+    }
+
+    // The definitions each keyword was counted with
+    private HashMap<String, String[]> counted = new HashMap<String, String[]>();
+    private long definitions = 0;
+    private TreeMap<Integer, Integer> histogram = new TreeMap<Integer, Integer>();
+    private Ranking<String> words = new Ranking<String>();
+    // Keywords by hash of their definitions, and the groups of several keywords
+    private HashMap<Long, TreeSet<String>> groups = new HashMap<Long, TreeSet<String>>();
+    private Ranking<Long> shared = new Ranking<Long>();
+    private Integer sharing = 0;
+
+    private CorpusStats() {
+    }
+
+    /**
+     * Compute the statistics of entries, PARTS of them in parallel.
+     *
+     * @param entries every entry of the glossary
+     * @return the statistics
+     */
+    public static CorpusStats Build(Map<String, String[]> entries) {
+        ArrayList<Map.Entry<String, String[]>> list = new ArrayList<Map.Entry<String, String[]>>(entries.entrySet());
+        int parts = Math.max(1, Math.min(PARTS, list.size() / 1024));
+        Partial[] partials = new Partial[parts];
+        IntStream.range(0, parts).parallel().forEach(p -> {
+            Partial partial = new Partial();
+            for (int i = p * list.size() / parts; i < (p + 1) * list.size() / parts; i++) {
+                partial.Add(list.get(i).getKey(), list.get(i).getValue());
+            }
+            partials[p] = partial;
+        });
+        CorpusStats stats = new CorpusStats();
+        HashMap<String, Integer> words = new HashMap<String, Integer>();
+        for (Partial partial : partials) {
+            stats.counted.putAll(partial.counted);
+            stats.definitions += partial.definitions;
+            partial.histogram.forEach((n, count) -> stats.histogram.merge(n, count, Integer::sum));
+            partial.words.forEach((word, count) -> words.merge(word, count, Integer::sum));
+            partial.groups.forEach((hash, keys) -> stats.groups.merge(hash, keys, (a, b) -> {
+                a.addAll(b);
+                return a;
+            }));
+        }
+        words.forEach((word, count) -> stats.words.Add(word, count));
+        stats.groups.forEach((hash, keys) -> {
+            if (keys.size() > 1) {
+                stats.shared.Add(hash, keys.size());
+                stats.sharing += keys.size();
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * Statistics of a part of the glossary, merged by Build.
+     */
+    private static class Partial {
+        private HashMap<String, String[]> counted = new HashMap<String, String[]>();
+        private long definitions = 0;
+        private HashMap<Integer, Integer> histogram = new HashMap<Integer, Integer>();
+        private HashMap<String, Integer> words = new HashMap<String, Integer>();
+        private HashMap<Long, TreeSet<String>> groups = new HashMap<Long, TreeSet<String>>();
+
+        private void Add(String key, String[] defs) {
+            counted.put(key, defs);
+            definitions += defs.length;
+            histogram.merge(defs.length, 1, Integer::sum);
+            for (String def : defs) {
+                for (String word : Words(def)) {
+                    words.merge(word, 1, Integer::sum);
+                }
+            }
+            Long hash = Fingerprint(defs);
+            if (hash != null) {
+                groups.computeIfAbsent(hash, h -> new TreeSet<String>()).add(key);
+            }
+        }
+    }
+
+    /**
+     * Count a keyword again after it was added, changed or removed.
+     *
+     * @param key  the keyword
+     * @param defs its definitions, null if it was removed
+     */
+    public void Put(String key, String[] defs) {
+        String[] old = defs == null ? counted.remove(key) : counted.put(key, defs);
+        if (old == defs) {
+            return;
+        }
+        if (old != null) {
+            Count(key, old, -1);
+        }
+        if (defs != null) {
+            Count(key, defs, 1);
+        }
+    }
+
+    private void Count(String key, String[] defs, Integer sign) {
+        definitions += sign * defs.length;
+        histogram.merge(defs.length, sign, Integer::sum);
+        if (histogram.get(defs.length) == 0) {
+            histogram.remove(defs.length);
+        }
+        for (String def : defs) {
+            for (String word : Words(def)) {
+                words.Add(word, sign);
+            }
+        }
+        Long hash = Fingerprint(defs);
+        if (hash == null) {
+            return;
+        }
+        TreeSet<String> keys = groups.computeIfAbsent(hash, h -> new TreeSet<String>());
+        // The group only counts as shared from 2 keywords
+        if (keys.size() > 1) {
+            shared.Add(hash, -keys.size());
+            sharing -= keys.size();
+        }
+        if (sign > 0) {
+            keys.add(key);
+        } else {
+            keys.remove(key);
+        }
+        if (keys.size() > 1) {
+            shared.Add(hash, keys.size());
+            sharing += keys.size();
+        } else if (keys.isEmpty()) {
+            groups.remove(hash);
+        }
+    }
+
+    /**
+     * Split a definition into its counted words.
+     */
+    private static List<String> Words(String def) {
+        ArrayList<String> words = new ArrayList<String>();
+        for (String word : SimilarityIndex.Normalize(def).split(" ")) {
+            if (!word.isEmpty() && !STOP_WORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Hash definitions normalized and sorted, see Deduper.
+     *
+     * @return the hash, or null if all definitions are empty
+     */
+    private static Long Fingerprint(String[] defs) {
+        ArrayList<String> norms = new ArrayList<String>(defs.length);
+        for (String def : defs) {
+            String norm = SimilarityIndex.Normalize(def);
+            if (!norm.isEmpty() && !norms.contains(norm)) {
+                norms.add(norm);
+            }
+        }
+        if (norms.isEmpty()) {
+            return null;
+        }
+        String[] sorted = norms.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return Deduper.Fingerprint(sorted);
+    }
+
+    /**
+     * @return number of keywords
+     */
+    public Integer getKeywords() {
+        return counted.size();
+    }
+
+    /**
+     * @return number of definitions
+     */
+    public long getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * @return number of keywords by number of definitions, only the numbers some
+     *         keyword has
+     */
+    public SortedMap<Integer, Integer> getHistogram() {
+        return Collections.unmodifiableSortedMap(histogram);
+    }
+
+    /**
+     * @return number of distinct words counted in the definitions
+     */
+    public Integer getDistinctWords() {
+        return words.size();
+    }
+
+    /**
+     * Get the words appearing the most in the definitions.
+     *
+     * @param k number of words
+     * @return at most k words and their counts, the most frequent first
+     */
+    public LinkedHashMap<String, Integer> getTopWords(Integer k) {
+        LinkedHashMap<String, Integer> top = new LinkedHashMap<String, Integer>();
+        for (String word : words.Top(k)) {
+            top.put(word, words.get(word));
+        }
+        return top;
+    }
+
+    /**
+     * @return number of keywords with identical definitions to another one
+     */
+    public Integer getSharing() {
+        return sharing;
+    }
+
+    /**
+     * @return number of groups of keywords with identical definitions
+     */
+    public Integer getSharedGroups() {
+        return shared.size();
+    }
+
+    /**
+     * Get the largest groups of keywords with identical definitions.
+     *
+     * @param k number of groups
+     * @return at most k groups, the largest first
+     */
+    public List<SortedSet<String>> getTopGroups(Integer k) {
+        ArrayList<SortedSet<String>> top = new ArrayList<SortedSet<String>>();
+        for (Long hash : shared.Top(k)) {
+            top.add(Collections.unmodifiableSortedSet(groups.get(hash)));
+        }
+        return top;
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Find duplicate and near-duplicate definitions. Entries are fed one at a time,
+ * so a whole glossary file can be checked while it's being read:
+ * <ul>
+ * <li>Within a keyword, definitions equal after normalization (case, spaces,
+ * punctuation) are merged, keeping the first one. Definitions with nothing
+ * left after normalization (only punctuation) are kept as they are. Definitions with nearly the
+ * same 3-grams (tiny spelling changes) are reported, and only merged if asked
+ * to, as reordered words also share their 3-grams.</li>
+ * <li>Across keywords, identical definition sets (in any order of the '|'
+ * parts) are found by a hash of their normalized form, and near-identical ones
+ * by MinHash/LSH, without comparing all pairs.</li>
+ * </ul>
+ */
+public class Deduper {
+    public static final Double NEAR_WITHIN = 0.7, NEAR_ACROSS = 0.8;
+
+    private HashMap<Long, String> fingerprints = new HashMap<Long, String>();
+    private SimilarityIndex index = new SimilarityIndex();
+    private Consumer<Finding> listener;
+    private Boolean mergeNear;
+    private Integer merged = 0, exact = 0, near = 0;
+
+    /**
+     * A duplicate found by the deduper.
+     */
+    public static class Finding {
+        public final String key, other, def;
+        public final Boolean exact, within;
+
+        private Finding(String key, String other, String def, Boolean exact, Boolean within) {
+            this.key = key;
+            this.other = other;
+            this.def = def;
+            this.exact = exact;
+            this.within = within;
+        }
+
+        @Override
+        public String toString() {
+            if (within) {
+                return key + ": '" + def + "' duplicates '" + other + "'" + (exact ? "" : " (near)");
+            }
+            return key + " = " + other + (exact ? "" : " (near)");
+        }
+    }
+
+    /**
+     * @param mergeNear whether near-duplicates within a keyword are merged too
+     * @param listener  called for every duplicate found, can be null
+     */
+    public Deduper(Boolean mergeNear, Consumer<Finding> listener) {
+        this.mergeNear = mergeNear;
+        this.listener = listener;
+    }
+
+    /**
+     * @return number of definitions merged within keywords
+     */
+    public Integer getMerged() {
+        return merged;
+    }
+
+    /**
+     * @return number of keywords with exactly the same definitions as another
+     */
+    public Integer getExact() {
+        return exact;
+    }
+
+    /**
+     * @return number of keywords with nearly the same definitions as another
+     */
+    public Integer getNear() {
+        return near;
+    }
+
+    /**
+     * Check an entry against itself and all entries added before.
+     *
+     * @param key  the keyword
+     * @param defs its definitions
+     * @return the definitions without duplicates
+     */
+    public String[] Add(String key, String[] defs) {
+        // Within the keyword
+        ArrayList<String> result = new ArrayList<String>(defs.length);
+        ArrayList<String> kept = new ArrayList<String>(defs.length);
+        ArrayList<String> keptNorm = new ArrayList<String>(defs.length);
+        ArrayList<HashSet<Integer>> keptGrams = new ArrayList<HashSet<Integer>>(defs.length);
+        for (String def : defs) {
+            String norm = SimilarityIndex.Normalize(def);
+            if (norm.isEmpty()) {
+                // Nothing to compare, not a duplicate of anything
+                result.add(def.trim());
+                continue;
+            }
+            HashSet<Integer> grams = Grams(norm);
+            String dup = null;
+            Boolean same = false;
+            for (int i = 0; i < kept.size() && dup == null; i++) {
+                if (keptNorm.get(i).equals(norm)) {
+                    dup = kept.get(i);
+                    same = true;
+                } else if (Jaccard(grams, keptGrams.get(i)) >= NEAR_WITHIN) {
+                    dup = kept.get(i);
+                }
+            }
+            if (dup != null) {
+                Report(new Finding(key, dup, def, same, true));
+                if (same || mergeNear) {
+                    merged++;
+                    continue;
+                }
+            }
+            result.add(def.trim());
+            kept.add(def.trim());
+            keptNorm.add(norm);
+            keptGrams.add(grams);
+        }
+        // Across keywords
+        String[] sorted = keptNorm.toArray(new String[0]);
+        Arrays.sort(sorted);
+        if (sorted.length == 0) {
+            // Nothing but empty definitions, nothing to compare
+            return defs;
+        }
+        String first = fingerprints.putIfAbsent(Fingerprint(sorted), key);
+        if (first != null && !first.equals(key)) {
+            exact++;
+            Report(new Finding(key, first, null, true, false));
+        } else {
+            int[] sig = SimilarityIndex.Signature(sorted);
+            List<String> similar = index.Similar(sig, key, 1, NEAR_ACROSS);
+            if (!similar.isEmpty()) {
+                near++;
+                Report(new Finding(key, similar.get(0), null, false, false));
+            }
+            index.Put(key, sig);
+        }
+        return result.toArray(new String[0]);
+    }
+
+    private void Report(Finding finding) {
+        if (listener != null) {
+            listener.accept(finding);
+        }
+    }
+
+    /**
+     * Stream a glossary file (keyword`definition, with continuation lines) and
+     * check every entry, without keeping the definitions in memory.
+     *
+     * @param path     path of the glossary file
+     * @param listener called for every duplicate found
+     * @return the deduper, holding the counts
+     * @throws IOException
+     */
+    public static Deduper Scan(String path, Consumer<Finding> listener) throws IOException {
+        Deduper deduper = new Deduper(false, listener);
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        String line = br.readLine(); // Skip columns name
+        String key = null;
+        ArrayList<String> defs = new ArrayList<String>();
+        while ((line = br.readLine()) != null) {
+            String[] sec = line.split("`", 2);
+            if (sec.length >= 2) {
+                if (key != null) {
+                    deduper.Add(key, defs.toArray(new String[0]));
+                }
+                key = sec[0].trim();
+                defs.clear();
+                defs.addAll(Arrays.asList(sec[1].split("\\|")));
+            } else if (key != null) {
+                defs.addAll(Arrays.asList(sec[0].split("\\|")));
+            }
+        }
+        if (key != null) {
+            deduper.Add(key, defs.toArray(new String[0]));
+        }
+        br.close();
+        return deduper;
+    }
+
+    /**
+     * Hash the 3-grams of a normalized definition.
+     */
+    private static HashSet<Integer> Grams(String norm) {
+        String text = " " + norm + " ";
+        HashSet<Integer> grams = new HashSet<Integer>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            grams.add(text.charAt(i) * 961 + text.charAt(i + 1) * 31 + text.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    private static Double Jaccard(HashSet<Integer> a, HashSet<Integer> b) {
+        int common = 0;
+        for (Integer gram : a) {
+            if (b.contains(gram)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of sorted normalized definitions.
+     *
+     * @param sorted the definitions, normalized (see SimilarityIndex.Normalize)
+     *               and sorted
+     * @return the hash
+     */
+    public static Long Fingerprint(String[] sorted) {
+        long h = 0xcbf29ce484222325L;
+        for (String def : sorted) {
+            for (int i = 0; i < def.length(); i++) {
+                h = (h ^ def.charAt(i)) * 0x100000001b3L;
+            }
+            h = (h ^ '|') * 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+/**
+ * A dictionary of distinct definitions, each addressed by an int id. Slang
+ * glossaries repeat short definitions a lot ("money", "drunk", "laughing out
+ * loud"...), so storing every distinct definition once and referring to it by
+ * id saves a String (and its byte array) for each repetition.
+ * <p>
+ * Ids are given in order of first appearance and never reused: definitions no
+ * longer referred to stay in the pool until the glossary is read again. Lookup
+ * uses an open-addressing table of ids, so no boxed Integer is kept per
+ * definition. Once loading is done, Trim() drops that table until the next
+ * definition is interned.
+ */
+public class DefinitionPool {
+    private String[] strings = new String[1024];
+    private int[] table = new int[2048]; // id + 1 of each slot, 0 if empty
+    private int size = 0;
+    private long hits = 0, saved = 0;
+
+    /**
+     * Get the id of a definition, adding it to the pool if needed.
+     *
+     * @param value the definition
+     * @return its id
+     */
+    public int Intern(String value) {
+        if (table == null) {
+            Rehash(Integer.highestOneBit(Math.max(size, 512)) * 4);
+        }
+        int mask = table.length - 1;
+        for (int slot = Spread(value.hashCode()) & mask;; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                break;
+            }
+            if (strings[id].equals(value)) {
+                if (strings[id] != value) {
+                    // Another copy of a pooled definition, which can be freed
+                    hits++;
+                    saved += StringSize(value);
+                }
+                return id;
+            }
+        }
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, Math.max(size * 2, 1024));
+        }
+        strings[size] = value;
+        if ((size + 1) * 2 > table.length) {
+            Rehash(table.length * 2);
+        } else {
+            Insert(table, size);
+        }
+        return size++;
+    }
+
+    /**
+     * @param id id of a definition, returned by Intern()
+     * @return the definition
+     */
+    public String get(int id) {
+        return strings[id];
+    }
+
+    /**
+     * @return number of distinct definitions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param values definitions
+     * @return their ids, in the same order
+     */
+    public int[] Encode(String[] values) {
+        int[] ids = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ids[i] = Intern(values[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * @param ids ids of definitions
+     * @return a new array of the definitions, in the same order
+     */
+    public String[] Decode(int[] ids) {
+        String[] values = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = strings[ids[i]];
+        }
+        return values;
+    }
+
+    /**
+     * @return number of definitions interned that were already in the pool as
+     *         another String
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return estimated heap freed by those repeated definitions, in bytes
+     */
+    public long getSaved() {
+        return saved;
+    }
+
+    /**
+     * @return estimated heap used by the pool itself (its arrays, not the
+     *         definitions), in bytes
+     */
+    public long getOverhead() {
+        return 16 + 4L * strings.length + (table == null ? 0 : 16 + 4L * table.length);
+    }
+
+    /**
+     * Release the memory only needed to intern more definitions: the spare room
+     * of the pool and the lookup table.
+     */
+    public void Trim() {
+        strings = Arrays.copyOf(strings, size);
+        table = null;
+    }
+
+    private void Rehash(int capacity) {
+        int[] newTable = new int[capacity];
+        for (int id = 0; id < Math.min(size + 1, strings.length); id++) {
+            Insert(newTable, id);
+        }
+        table = newTable;
+    }
+
+    private void Insert(int[] table, int id) {
+        int mask = table.length - 1;
+        int slot = Spread(strings[id].hashCode()) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static int Spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Estimate the heap used by a String and its content, with compressed
+     * references (12-byte headers): the String object itself, then a byte
+     * array with 1 byte per char, or 2 if any char isn't Latin-1.
+     *
+     * @param value the string
+     * @return its size in bytes
+     */
+    public static long StringSize(String value) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return 24 + Align(16 + (long) value.length() * bytesPerChar);
+    }
+
+    private static long Align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,429 @@
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A boolean query over the words of definitions, such as
+ * <code>money AND NOT drunk</code>, <code>"laughing out loud"</code> or
+ * <code>(cool OR awesome) AND slang</code>:
+ * <ul>
+ * <li>words match case-insensitively, whole words only</li>
+ * <li>quoted words match as a phrase, in that order and next to each other
+ * within the same definition</li>
+ * <li>AND (or nothing) between 2 parts needs both, OR either one, NOT the
+ * absence of the next part; NOT binds tighter than AND, AND than OR</li>
+ * </ul>
+ * Queries are evaluated over the positional index of SegmentIndex. Postings
+ * are sorted by keyword id and intersected by galloping through them from the
+ * shortest one, so a conjunction costs time proportional to its rarest part
+ * (times a logarithm), not to the size of the glossary. Matches() evaluates
+ * the query on the definitions of a single keyword, for the changes that
+ * aren't indexed.
+ */
+public class DefinitionQuery {
+    /**
+     * A sorted list of keyword ids.
+     */
+    public interface Docs {
+        int size();
+
+        int Doc(int i);
+    }
+
+    private static abstract class Node {
+    }
+
+    /**
+     * One or more words next to each other.
+     */
+    private static class Phrase extends Node {
+        private String[] words;
+
+        private Phrase(List<String> words) {
+            this.words = words.toArray(new String[0]);
+        }
+    }
+
+    private static class And extends Node {
+        private ArrayList<Node> items = new ArrayList<Node>();
+    }
+
+    private static class Or extends Node {
+        private ArrayList<Node> items = new ArrayList<Node>();
+    }
+
+    private static class Not extends Node {
+        private Node item;
+
+        private Not(Node item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Keyword ids held in an array.
+     */
+    private static class Ids implements Docs {
+        private int[] ids;
+        private int size;
+
+        private Ids(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int Doc(int i) {
+            return ids[i];
+        }
+    }
+
+    private Node root;
+    private ArrayList<String> tokens = new ArrayList<String>();
+    private int pos = 0;
+
+    /**
+     * @param query the query
+     * @throws IllegalArgumentException if the query is invalid
+     */
+    public DefinitionQuery(String query) {
+        Lex(query);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty query.");
+        }
+        root = ParseOr();
+        if (pos < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + tokens.get(pos) + "'.");
+        }
+    }
+
+    /**
+     * Split a text into lower-case words (runs of letters and digits).
+     *
+     * @param text the text
+     * @return the words, in order
+     */
+    public static ArrayList<String> Tokenize(String text) {
+        ArrayList<String> words = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            Boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private void Lex(String query) {
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Missing '\"'.");
+                }
+                tokens.add(query.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end))
+                        && "()\"".indexOf(query.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(query.substring(i, end));
+                i = end;
+            }
+        }
+    }
+
+    private String Peek() {
+        return pos < tokens.size() ? tokens.get(pos) : null;
+    }
+
+    private Node ParseOr() {
+        Or or = new Or();
+        or.items.add(ParseAnd());
+        while ("OR".equals(Peek())) {
+            pos++;
+            or.items.add(ParseAnd());
+        }
+        return or.items.size() == 1 ? or.items.get(0) : or;
+    }
+
+    private Node ParseAnd() {
+        And and = new And();
+        and.items.add(ParseNot());
+        while (Peek() != null && !Peek().equals(")") && !Peek().equals("OR")) {
+            if (Peek().equals("AND")) {
+                pos++;
+            }
+            and.items.add(ParseNot());
+        }
+        return and.items.size() == 1 ? and.items.get(0) : and;
+    }
+
+    private Node ParseNot() {
+        String token = Peek();
+        if (token == null || token.equals(")") || token.equals("AND") || token.equals("OR")) {
+            throw new IllegalArgumentException(token == null ? "Unexpected end of query." : "Unexpected '" + token + "'.");
+        }
+        pos++;
+        if (token.equals("NOT")) {
+            return new Not(ParseNot());
+        } else if (token.equals("(")) {
+            Node node = ParseOr();
+            if (!")".equals(Peek())) {
+                throw new IllegalArgumentException("Missing ')'.");
+            }
+            pos++;
+            return node;
+        }
+        ArrayList<String> words = Tokenize(token);
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException("No word to search in " + token + ".");
+        }
+        return new Phrase(words);
+    }
+
+    /**
+     * Evaluate the query over the positional index of the base layer.
+     *
+     * @param index the index
+     * @return ids of the matching keywords, sorted
+     * @throws IOException
+     */
+    public int[] Evaluate(SegmentIndex index) throws IOException {
+        Docs docs = Evaluate(root, index);
+        int[] ids = new int[docs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = docs.Doc(i);
+        }
+        return ids;
+    }
+
+    private Docs Evaluate(Node node, SegmentIndex index) throws IOException {
+        if (node instanceof Phrase) {
+            return EvaluatePhrase((Phrase) node, index);
+        } else if (node instanceof Not) {
+            return Complement(Evaluate(((Not) node).item, index), index.size());
+        } else if (node instanceof Or) {
+            // Merge all parts, then remove duplicates
+            ArrayList<Docs> parts = new ArrayList<Docs>();
+            int total = 0;
+            for (Node item : ((Or) node).items) {
+                Docs part = Evaluate(item, index);
+                parts.add(part);
+                total += part.size();
+            }
+            int[] ids = new int[total];
+            int size = 0;
+            for (Docs part : parts) {
+                for (int i = 0; i < part.size(); i++) {
+                    ids[size++] = part.Doc(i);
+                }
+            }
+            Arrays.sort(ids);
+            size = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[size++] = ids[i];
+                }
+            }
+            return new Ids(ids, size);
+        }
+        ArrayList<Docs> required = new ArrayList<Docs>(), excluded = new ArrayList<Docs>();
+        for (Node item : ((And) node).items) {
+            if (item instanceof Not) {
+                excluded.add(Evaluate(((Not) item).item, index));
+            } else {
+                required.add(Evaluate(item, index));
+            }
+        }
+        if (required.isEmpty()) {
+            required.add(Complement(new Ids(new int[0], 0), index.size()));
+        }
+        return Intersect(required, excluded);
+    }
+
+    /**
+     * Find the keywords having all words of a phrase, then check their
+     * positions.
+     */
+    private Docs EvaluatePhrase(Phrase phrase, SegmentIndex index) throws IOException {
+        SegmentIndex.Postings[] postings = new SegmentIndex.Postings[phrase.words.length];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = index.Term(phrase.words[i]);
+        }
+        if (postings.length == 1) {
+            return postings[0];
+        }
+        Docs candidates = Intersect(new ArrayList<Docs>(Arrays.asList(postings)), new ArrayList<Docs>());
+        int[] ids = new int[candidates.size()];
+        int size = 0;
+        int[] cursors = new int[postings.length];
+        for (int c = 0; c < candidates.size(); c++) {
+            int doc = candidates.Doc(c);
+            int[][] positions = new int[postings.length][];
+            for (int i = 0; i < postings.length; i++) {
+                cursors[i] = Seek(postings[i], cursors[i], doc);
+                positions[i] = postings[i].Positions(cursors[i]);
+            }
+            if (Adjacent(positions)) {
+                ids[size++] = doc;
+            }
+        }
+        return new Ids(ids, size);
+    }
+
+    /**
+     * @param positions sorted positions of each word of a phrase
+     * @return true if the words follow each other somewhere
+     */
+    private static Boolean Adjacent(int[][] positions) {
+        for (int first : positions[0]) {
+            Boolean found = true;
+            for (int i = 1; i < positions.length && found; i++) {
+                found = Arrays.binarySearch(positions[i], first + i) >= 0;
+            }
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keep the ids found in all required lists and in none of the excluded ones.
+     * The shortest required list drives the search, the other lists are only
+     * galloped through.
+     */
+    private static Docs Intersect(ArrayList<Docs> required, ArrayList<Docs> excluded) {
+        required.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        Docs driver = required.get(0);
+        int[] cursors = new int[required.size()], skips = new int[excluded.size()];
+        int[] ids = new int[driver.size()];
+        int size = 0;
+        for (int i = 0; i < driver.size(); i++) {
+            int doc = driver.Doc(i);
+            Boolean keep = true;
+            for (int r = 1; r < required.size() && keep; r++) {
+                Docs other = required.get(r);
+                cursors[r] = Seek(other, cursors[r], doc);
+                keep = cursors[r] < other.size() && other.Doc(cursors[r]) == doc;
+            }
+            for (int e = 0; e < excluded.size() && keep; e++) {
+                Docs other = excluded.get(e);
+                skips[e] = Seek(other, skips[e], doc);
+                keep = skips[e] >= other.size() || other.Doc(skips[e]) != doc;
+            }
+            if (keep) {
+                ids[size++] = doc;
+            }
+        }
+        return new Ids(ids, size);
+    }
+
+    /**
+     * Galloping search: find the first index from a given one whose id is not
+     * less than the target, by doubling steps then bisecting.
+     *
+     * @return the index, or docs.size() if there is none
+     */
+    private static int Seek(Docs docs, int from, int target) {
+        int size = docs.size();
+        if (from >= size || docs.Doc(from) >= target) {
+            return from;
+        }
+        int step = 1, low = from, high = from + 1;
+        while (high < size && docs.Doc(high) < target) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, size);
+        // docs[low] < target <= docs[high]
+        while (low + 1 < high) {
+            int mid = (low + high) >>> 1;
+            if (docs.Doc(mid) < target) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+
+    private static Docs Complement(Docs docs, int count) {
+        int[] ids = new int[count - docs.size()];
+        int size = 0, j = 0;
+        for (int id = 0; id < count; id++) {
+            if (j < docs.size() && docs.Doc(j) == id) {
+                j++;
+            } else {
+                ids[size++] = id;
+            }
+        }
+        return new Ids(ids, size);
+    }
+
+    /**
+     * Evaluate the query on the definitions of a single keyword.
+     *
+     * @param values the definitions
+     * @return true if they match
+     */
+    public Boolean Matches(String[] values) {
+        HashMap<String, ArrayList<Integer>> positions = new HashMap<String, ArrayList<Integer>>();
+        int position = 0;
+        for (String value : values) {
+            for (String word : Tokenize(value)) {
+                positions.computeIfAbsent(word, w -> new ArrayList<Integer>()).add(position++);
+            }
+            position++; // Phrases don't span definitions
+        }
+        return Matches(root, positions);
+    }
+
+    private static Boolean Matches(Node node, HashMap<String, ArrayList<Integer>> positions) {
+        if (node instanceof Phrase) {
+            String[] words = ((Phrase) node).words;
+            ArrayList<Integer> first = positions.get(words[0]);
+            if (first == null) {
+                return false;
+            }
+            for (Integer start : first) {
+                Boolean found = true;
+                for (int i = 1; i < words.length && found; i++) {
+                    found = positions.containsKey(words[i]) && positions.get(words[i]).contains(start + i);
+                }
+                if (found) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof Not) {
+            return !Matches(((Not) node).item, positions);
+        }
+        Boolean and = node instanceof And;
+        for (Node item : and ? ((And) node).items : ((Or) node).items) {
+            if (Matches(item, positions) != and) {
+                return !and;
+            }
+        }
+        return and;
+    }
+}
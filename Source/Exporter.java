@@ -0,0 +1,519 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Write glossary entries into RFC 4180 csv or JSON Lines, and read them back
+ * with the matching Reader. Each keyword takes one record, with one field per
+ * definition, so keywords and definitions may contain any character (',', '|',
+ * '"', new lines...) without corrupting the file:
+ * <ul>
+ * <li>csv: <code>key,def1,def2</code>, fields quoted when needed</li>
+ * <li>jsonl: <code>{"key":"...","defs":["...","..."]}</code></li>
+ * </ul>
+ * Characters are encoded into UTF-8 straight into pooled direct buffers, which
+ * are written with a FileChannel, so no String is built per line.
+ * REF: https://www.rfc-editor.org/rfc/rfc4180
+ */
+public class Exporter {
+    public static final String CSV_HEADER = "Keyword,Definitions", LEGACY_HEADER = "Keyword,Definition";
+    // Header of change logs: "+" then a keyword and its definitions, or "-" then a removed keyword
+    public static final String CHANGES_HEADER = "Change,Keyword,Definitions";
+    private static final Integer BUFFER_SIZE = 256 << 10;
+    private static final ArrayDeque<ByteBuffer> POOL = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Supported file formats.
+     */
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * Guess the format from the file extension.
+         *
+         * @param path the file path
+         * @return JSONL for ".jsonl" and ".json" files, CSV otherwise
+         */
+        public static Format Of(String path) {
+            String lower = path.toLowerCase();
+            return lower.endsWith(".jsonl") || lower.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    private static ByteBuffer Acquire() {
+        synchronized (POOL) {
+            ByteBuffer buffer = POOL.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void Release(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (POOL) {
+            POOL.push(buffer);
+        }
+    }
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+    private Exporter(FileChannel channel) {
+        this.channel = channel;
+        this.buffer = Acquire();
+    }
+
+    /**
+     * Export all entries into a file, replacing it if it exists.
+     *
+     * @param data   the glossary entries
+     * @param path   path of the file
+     * @param format format of the file
+     * @throws IOException
+     */
+    public static void Export(Map<String, String[]> data, String path, Format format) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        Exporter out = new Exporter(channel);
+        try {
+            if (format == Format.CSV) {
+                out.Ascii(CSV_HEADER);
+                out.Byte('\n');
+            }
+            for (Map.Entry<String, String[]> entry : data.entrySet()) {
+                if (format == Format.CSV) {
+                    out.CsvField(entry.getKey());
+                    for (String def : entry.getValue()) {
+                        out.Byte(',');
+                        out.CsvField(def);
+                    }
+                } else {
+                    out.Ascii("{\"key\":");
+                    out.JsonString(entry.getKey());
+                    out.Ascii(",\"defs\":[");
+                    String[] values = entry.getValue();
+                    for (int i = 0; i < values.length; i++) {
+                        if (i > 0) {
+                            out.Byte(',');
+                        }
+                        out.JsonString(values[i]);
+                    }
+                    out.Ascii("]}");
+                }
+                out.Byte('\n');
+            }
+            out.Flush();
+        } finally {
+            Release(out.buffer);
+            channel.close();
+        }
+    }
+
+    private void Flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void Byte(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            Flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    private void Ascii(String str) throws IOException {
+        for (int i = 0; i < str.length(); i++) {
+            Byte(str.charAt(i));
+        }
+    }
+
+    /**
+     * Encode a character into UTF-8.
+     *
+     * @param str the string holding the character
+     * @param i   index of the character
+     * @return index of the next character (surrogate pairs take 2)
+     */
+    private int Char(String str, int i) throws IOException {
+        if (buffer.remaining() < 4) {
+            Flush();
+        }
+        char c = str.charAt(i);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | c >> 6));
+            buffer.put((byte) (0x80 | c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < str.length()
+                && Character.isLowSurrogate(str.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, str.charAt(i + 1));
+            buffer.put((byte) (0xF0 | cp >> 18));
+            buffer.put((byte) (0x80 | cp >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | cp >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | cp & 0x3F));
+            return i + 2;
+        } else if (Character.isSurrogate(c)) {
+            buffer.put((byte) '?'); // Unpaired surrogate
+        } else {
+            buffer.put((byte) (0xE0 | c >> 12));
+            buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | c & 0x3F));
+        }
+        return i + 1;
+    }
+
+    /**
+     * Write a csv field, quoted if it contains a separator, a quote or a new line
+     * (or is empty, so an empty definition isn't lost).
+     */
+    private void CsvField(String str) throws IOException {
+        Boolean quote = IsQuoted(str);
+        if (quote) {
+            Byte('"');
+        }
+        for (int i = 0; i < str.length();) {
+            if (str.charAt(i) == '"') {
+                Byte('"'); // Escape quotes by doubling them
+            }
+            i = Char(str, i);
+        }
+        if (quote) {
+            Byte('"');
+        }
+    }
+
+    private static Boolean IsQuoted(String str) {
+        Boolean quote = str.isEmpty();
+        for (int i = 0; i < str.length() && !quote; i++) {
+            char c = str.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return quote;
+    }
+
+    /**
+     * Format a csv record the way Export writes it, for files appended to one
+     * record at a time.
+     *
+     * @param fields the fields
+     * @return the record, without line break
+     */
+    public static String CsvRecord(String... fields) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (IsQuoted(fields[i])) {
+                sb.append('"').append(fields[i].replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(fields[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Format a change as a record of a change log (see CHANGES_HEADER).
+     *
+     * @param key  the keyword
+     * @param defs its definitions, null if it was removed
+     * @return the record, without line break
+     */
+    public static String ChangeRecord(String key, String[] defs) {
+        if (defs == null) {
+            return CsvRecord("-", key);
+        }
+        String[] fields = new String[defs.length + 2];
+        fields[0] = "+";
+        fields[1] = key;
+        System.arraycopy(defs, 0, fields, 2, defs.length);
+        return CsvRecord(fields);
+    }
+
+    private void JsonString(String str) throws IOException {
+        Byte('"');
+        for (int i = 0; i < str.length();) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                Byte('\\');
+                Byte(c);
+                i++;
+            } else if (c == '\n') {
+                Ascii("\\n");
+                i++;
+            } else if (c == '\r') {
+                Ascii("\\r");
+                i++;
+            } else if (c == '\t') {
+                Ascii("\\t");
+                i++;
+            } else if (c < 0x20) {
+                Ascii(String.format("\\u%04x", (int) c));
+                i++;
+            } else {
+                i = Char(str, i);
+            }
+        }
+        Byte('"');
+    }
+
+    /**
+     * Read entries back from a csv or JSON Lines file, one at a time. Also reads
+     * the legacy csv format (<code>key,def1|def2|</code>) when the file starts
+     * with its header.
+     */
+    public static class Reader implements Closeable {
+        private BufferedReader br;
+        private Format format;
+        private String header = null;
+        private Boolean legacy = false;
+        private StringBuilder sb = new StringBuilder();
+        private ArrayList<String> fields = new ArrayList<String>();
+        private int peeked = -2;
+
+        /**
+         * Open a file and skip its header.
+         *
+         * @param path   path of the file
+         * @param format format of the file
+         * @throws IOException
+         */
+        public Reader(String path, Format format) throws IOException {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"), BUFFER_SIZE);
+            this.format = format;
+            if (format == Format.CSV) {
+                header = br.readLine();
+                legacy = LEGACY_HEADER.equals(header);
+            }
+        }
+
+        /**
+         * @return the header of a csv file, null if it has none
+         */
+        public String getHeader() {
+            return header;
+        }
+
+        /**
+         * @return true if the file is in the legacy csv format
+         */
+        public Boolean IsLegacy() {
+            return legacy;
+        }
+
+        /**
+         * Read the next entry.
+         *
+         * @return the keyword followed by its definitions, or null at the end of
+         *         the file
+         * @throws IOException
+         */
+        public String[] Next() throws IOException {
+            if (format == Format.JSONL) {
+                return NextJson();
+            }
+            if (legacy) {
+                String line = br.readLine();
+                while (line != null && line.isEmpty()) {
+                    line = br.readLine();
+                }
+                if (line == null) {
+                    return null;
+                }
+                String[] sec = line.split(",", 2);
+                String[] defs = sec.length == 2 ? sec[1].split("\\|") : new String[0];
+                String[] entry = new String[defs.length + 1];
+                entry[0] = sec[0];
+                System.arraycopy(defs, 0, entry, 1, defs.length);
+                return entry;
+            }
+            return NextCsv();
+        }
+
+        private int Read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return br.read();
+        }
+
+        private int Peek() throws IOException {
+            if (peeked == -2) {
+                peeked = br.read();
+            }
+            return peeked;
+        }
+
+        private String[] NextCsv() throws IOException {
+            fields.clear();
+            sb.setLength(0);
+            int c = Read();
+            while (c == '\n' || c == '\r') {
+                c = Read(); // Skip blank lines
+            }
+            if (c == -1) {
+                return null;
+            }
+            Boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted field.");
+                    } else if (c == '"') {
+                        if (Peek() == '"') {
+                            sb.append('"');
+                            Read();
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        sb.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(sb.toString());
+                    sb.setLength(0);
+                } else if (c == '\n' || c == '\r' || c == -1) {
+                    if (c == '\r' && Peek() == '\n') {
+                        Read();
+                    }
+                    fields.add(sb.toString());
+                    return fields.toArray(new String[0]);
+                } else {
+                    sb.append((char) c);
+                }
+                c = Read();
+            }
+        }
+
+        private String[] NextJson() throws IOException {
+            fields.clear();
+            String line = br.readLine();
+            while (line != null && line.isBlank()) {
+                line = br.readLine();
+            }
+            if (line == null) {
+                return null;
+            }
+            String key = null;
+            ArrayList<String> defs = new ArrayList<String>();
+            int[] pos = { 0 };
+            Expect(line, pos, '{');
+            while (true) {
+                Skip(line, pos);
+                if (line.charAt(pos[0]) == '}') {
+                    break;
+                }
+                String name = JsonString(line, pos);
+                Expect(line, pos, ':');
+                Skip(line, pos);
+                if (line.charAt(pos[0]) == '[') {
+                    pos[0]++;
+                    Skip(line, pos);
+                    while (line.charAt(pos[0]) != ']') {
+                        defs.add(JsonString(line, pos));
+                        Skip(line, pos);
+                        if (line.charAt(pos[0]) == ',') {
+                            pos[0]++;
+                            Skip(line, pos);
+                        }
+                    }
+                    pos[0]++;
+                } else if (name.equals("key")) {
+                    key = JsonString(line, pos);
+                } else {
+                    JsonString(line, pos);
+                }
+                Skip(line, pos);
+                if (line.charAt(pos[0]) == ',') {
+                    pos[0]++;
+                }
+            }
+            if (key == null) {
+                throw new IOException("Missing key in '" + line + "'.");
+            }
+            defs.add(0, key);
+            return defs.toArray(new String[0]);
+        }
+
+        private static void Skip(String line, int[] pos) throws IOException {
+            while (pos[0] < line.length() && Character.isWhitespace(line.charAt(pos[0]))) {
+                pos[0]++;
+            }
+            if (pos[0] >= line.length()) {
+                throw new IOException("Unexpected end of line '" + line + "'.");
+            }
+        }
+
+        private static void Expect(String line, int[] pos, char c) throws IOException {
+            Skip(line, pos);
+            if (line.charAt(pos[0]) != c) {
+                throw new IOException("Expected '" + c + "' at " + pos[0] + " in '" + line + "'.");
+            }
+            pos[0]++;
+        }
+
+        private String JsonString(String line, int[] pos) throws IOException {
+            Expect(line, pos, '"');
+            sb.setLength(0);
+            while (pos[0] < line.length()) {
+                char c = line.charAt(pos[0]++);
+                if (c == '"') {
+                    return sb.toString();
+                } else if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos[0] >= line.length()) {
+                    break;
+                }
+                c = line.charAt(pos[0]++);
+                switch (c) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos[0] + 4 > line.length()) {
+                            throw new IOException("Invalid escape in '" + line + "'.");
+                        }
+                        sb.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default:
+                        sb.append(c); // '"', '\\' and '/'
+                        break;
+                }
+            }
+            throw new IOException("Unterminated string in '" + line + "'.");
+        }
+
+        @Override
+        public void close() throws IOException {
+            br.close();
+        }
+    }
+}
@@ -1,19 +1,50 @@
 import java.io.*;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 // References are marked with 'REF' keywords
 
 /**
  * Store data from a glossary file.
+ * <p>
+ * Searches (Entries, Get, Find...) and changes (Put, Append, Change,
+ * RemoveDefinition, Remove, Restore) neither print, prompt nor write files, so
+ * the class can be used as a library. Searches return streams of results
+ * collected when they are called, so later changes don't affect them. The
+ * console commands in Main are built on them.
  */
 public class Glossary {
+    private static final Integer HOT = 16, COMPLETIONS = 10;
     public String path;
-    private TreeMap<String, String[]> data = new TreeMap<String, String[]>();
-    private TreeMap<Integer, String> data_id = new TreeMap<Integer, String>();
+    private LayeredMap data = new LayeredMap(new TreeMap<String, String[]>());
     private LinkedHashMap<Integer, String> search_history = new LinkedHashMap<Integer, String>();
     public Boolean modified = false;
+    private QuizEngine quiz_engine = null;
+    private SimilarityIndex similarity = null;
+    private GlossaryWatcher watcher = null;
+    private Boolean base_modified = false;
+    private ArrayList<PersistentTreeMap> versions = new ArrayList<PersistentTreeMap>();
+    private Integer version = 0;
+    private Boolean compact = false;
+    private SegmentIndex segments = null;
+    private String segments_error = null;
+    private ShardedStore shards = null;
+    private TreeSet<String> keyword_set = null;
+    private PhoneticIndex phonetic = null;
+    private SearchStats search_stats = null;
+    private Boolean stats_modified = false, filter_modified = false;
+    private HashMap<String, TreeMap<String, String[]>> hot_results = null;
+    private SourceIndex source_index = null;
+    private KeywordFilter keyword_filter = null;
+    private ReviewScheduler review_scheduler = null;
+    private String learner = null, review_path = null;
+    private ReplicationLog replication = null;
+    private ReplicaFollower follower = null;
+    private Boolean read_only = false; // A follower, from the start: no file is written
+    private CorpusStats corpus_stats = null;
 
     /**
      * Constructor to get file path and read glossary data.
@@ -21,160 +52,537 @@ public class Glossary {
      * @param path the path of the glossary file
      */
     public Glossary(String path) {
+        this(path, false);
+    }
+
+    /**
+     * Constructor to get file path and read glossary data.
+     * 
+     * @param path    the path of the glossary file
+     * @param compact true to store the definitions read from the file
+     *                dictionary-encoded (see CompactMap), which uses less heap
+     *                when definitions repeat, at the cost of decoding them on
+     *                every access
+     */
+    public Glossary(String path, Boolean compact) {
+        this(path, compact, false);
+    }
+
+    /**
+     * Constructor to get file path and read glossary data.
+     * 
+     * @param path     the path of the glossary file
+     * @param compact  see above
+     * @param readOnly true to open a glossary about to become a follower (see
+     *                 Follow): its files are read but never written, not even
+     *                 the ones usually updated when opening it
+     */
+    public Glossary(String path, Boolean compact, Boolean readOnly) {
         this.path = path.replace('\\', '/');
+        this.compact = compact;
+        this.read_only = readOnly;
         try {
             Read();
         } catch (IOException e) {
             System.out.println("(!) Error reading file.");
         }
+        versions.add(data.Snapshot());
+        getKeywordFilter();
+        if (filter_modified) {
+            WriteKeywordFilter();
+        }
+        getCorpusStats();
+        // Warm the cache with the most frequent searches
+        getHotResults();
     }
 
     /**
      * Read data from specified path using streams. The method will save the data
      * into a TreeMap&ltString, String[]&gt, with each represents the <i>
-     * keyword</i> and the <i>definition</i>.
+     * keyword</i> and the <i>definition</i>. This TreeMap is the base layer of the
+     * glossary, changes made to it afterwards are kept in an overlay, saved into a
+     * separate file (see ReadOverlay).
+     * <p>
+     * Once the user's file was read, the base layer is read from its csv or
+     * compressed file instead, as long as the user's file didn't change since
+     * (see Refresh).
      * 
      * @throws IOException
      */
     public void Read() throws IOException {
-        // Check for a csv file
+        if (ShardedStore.Exists(getFileName())) {
+            ReadShards();
+            return;
+        }
+        // Check for a compressed or csv file
         String csvpath = getFileName() + ".csv";
-        File file = new File(csvpath);
+        File file = new File(getBasePath());
+        Map<String, String[]> base = compact ? new CompactMap() : new TreeMap<String, String[]>();
         if (file.exists()) {
-            ReadCsv(csvpath);
+            if (IsCompressed()) {
+                ReadCompressed(file.getPath(), base);
+            } else {
+                ReadCsv(csvpath, base);
+            }
+            Refresh(base);
+            data = new LayeredMap(base);
+            ReadOverlay();
+            ReportCompact(base);
+            OpenSegments();
             return;
         }
-        // If a csv file doesn't exist, read from user's file and create one
+        // If neither exists, read from user's file and create a csv file
         System.out.println("(@) Reading from '" + path + "'...");
-        FileInputStream fis = new FileInputStream(path);
-        Scanner s = new Scanner(fis, "UTF-8");
-        Integer id = 0;
-        if (s.hasNextLine()) {
-            // Skip columns name
-            s.nextLine();
-        }
-        while (s.hasNextLine()) {
-            // Split the keyword and definition by the symbol '`'
-            String line = s.nextLine();
-            String[] sec = line.split("`", 2);
-            sec[0] = sec[0].trim(); // Remove whitespaces
-            if (sec.length >= 2) {
-                // If there is a '`', split multiple meanings by symbol '|'
-                String[] sec1 = sec[1].split("\\|");
-                for (int i = 0; i < sec1.length; i++) {
-                    sec1[i] = sec1[i].trim(); // Remove whitespaces
-                }
-                data.put(sec[0], sec1);
-                data_id.put(id++, sec[0]);
-            } else if (sec.length == 1) {
-                // If not, it's another definition of the above keyword
-                try {
-                    // Split multiple meanings and joins the ones added before
-                    // REF: https://www.javatpoint.com/how-to-merge-two-arrays-in-java
-                    String[] extArray = sec[0].split("\\|");
-
-                    String last = data.lastKey();
-                    int lastLength = data.get(last).length, extLength = extArray.length;
+        source_index = SourceIndex.Scan(path, base);
+        // Merge duplicated definitions and report duplicated keywords
+        Deduper deduper = new Deduper(false, null);
+        for (Map.Entry<String, String[]> entry : base.entrySet()) {
+            entry.setValue(deduper.Add(entry.getKey(), entry.getValue()));
+        }
+        if (deduper.getMerged() > 0) {
+            System.out.println("(i) Merged " + deduper.getMerged() + " duplicated definitions.");
+        }
+        if (deduper.getExact() + deduper.getNear() > 0) {
+            System.out.println("(i) Found " + (deduper.getExact() + deduper.getNear())
+                    + " keywords with (nearly) the same definitions as another, enter 'dedupe' for details.");
+        }
+        if (!read_only) {
+            System.out.println("(i) Created '" + csvpath + "'.");
+            Exporter.Export(base, csvpath, Exporter.Format.CSV);
+            WriteSourceIndex();
+        }
+        data = new LayeredMap(base);
+        ReadOverlay();
+        System.out.println("(i) Done.\n");
+        ReportCompact(base);
+        OpenSegments();
+    }
 
-                    String[] lastValue = data.get(last), newValue = new String[lastLength + extLength];
-                    System.arraycopy(lastValue, 0, newValue, 0, lastLength);
-                    System.arraycopy(extArray, 0, newValue, lastLength, extLength);
+    /**
+     * Read the glossary from its shards (see ShardedStore), loaded concurrently:
+     * the base layer from their csv files, the overlay from their change logs.
+     * Looking up a keyword then only touches its shard, and searching the
+     * definitions fans out to all shards, so the index segments aren't used.
+     * 
+     * @throws IOException
+     */
+    private void ReadShards() throws IOException {
+        System.out.println("(@) Reading from '" + getFileName() + ".shards'...");
+        shards = ShardedStore.Open(getFileName());
+        Map<String, String[]> base = shards.getBase();
+        System.out.println("(i) Done (" + shards.getShardCount() + " shards).\n");
+        Refresh(base);
+        data = new LayeredMap(base);
+        for (Map.Entry<String, String[]> change : shards.getChanges().entrySet()) {
+            if (change.getValue() == null) {
+                data.remove(change.getKey());
+            } else {
+                data.put(change.getKey(), change.getValue());
+            }
+        }
+        // Changes saved before the glossary was split
+        ReadOverlay();
+        segments = null;
+    }
 
-                    data.replace(last, newValue);
-                } catch (NoSuchElementException e) {
-                    // Start of file is a definition of unknown keyword => Ignore
-                    System.out.println("(!) Start of file has unknown texts, ignored.");
-                }
+    /**
+     * Bring the base layer read from its csv or compressed file up to date with
+     * the user's file. The file holding the base layer is recorded along with the
+     * size, modification time and hash of the user's file it was made from, and
+     * its content-defined chunks (see SourceIndex, saved into "&lt;name&gt;.src").
+     * If the size and time are unchanged, the user's file isn't even read. If it
+     * changed, only its chunks that changed are parsed, and only the keywords
+     * they add, change or remove are applied to the base layer, which is then
+     * written again.
+     * <p>
+     * Nothing is done if the glossary was opened from its csv or compressed file
+     * itself, or is read-only. If no user's file was recorded yet, the current one is recorded,
+     * and only its later changes are applied.
+     * 
+     * @param base the base layer, as read from its file
+     * @throws IOException
+     */
+    private void Refresh(Map<String, String[]> base) throws IOException {
+        File source = new File(path);
+        String lower = path.toLowerCase();
+        if (read_only || !source.exists() || lower.endsWith(".csv") || lower.endsWith(".ugz") || path.equals(getBasePath())) {
+            return;
+        }
+        SourceIndex index = SourceIndex.Read(getFileName() + ".src");
+        if (index == null) {
+            // Not known to be the file the base layer was made from
+            source_index = SourceIndex.Scan(path, null);
+            WriteSourceIndex();
+            return;
+        }
+        if (index.Matches(source)) {
+            source_index = index;
+            return;
+        }
+        SourceIndex.Changes changes = new SourceIndex.Changes();
+        System.out.println("(@) '" + path + "' changed, updating '" + getBasePath() + "'...");
+        source_index = index.Rescan(path, changes);
+        // Merge duplicated definitions, as when reading the whole file
+        Deduper deduper = new Deduper(false, null);
+        Integer updated = 0;
+        for (Map.Entry<String, String[]> entry : changes.put.entrySet()) {
+            String[] defs = deduper.Add(entry.getKey(), entry.getValue());
+            if (!Arrays.equals(defs, base.get(entry.getKey()))) {
+                base.put(entry.getKey(), defs);
+                updated++;
             }
         }
-        if (fis != null) {
-            fis.close();
+        for (String key : changes.removed) {
+            base.remove(key);
         }
-        if (s != null) {
-            s.close();
+        if (updated + changes.removed.size() > 0) {
+            WriteBase(base);
         }
-        Write();
-        System.out.println("(i) Done.\n");
+        WriteSourceIndex();
+        System.out.println("(i) " + updated + " slang words updated, " + changes.removed.size() + " removed ("
+                + changes.parsed + "/" + changes.total + " chunks parsed).\n");
+    }
+
+    /**
+     * Record the user's file the base layer is up to date with (see Refresh).
+     */
+    private void WriteSourceIndex() {
+        if (source_index == null || read_only) {
+            return;
+        }
+        try {
+            source_index.Write(getFileName() + ".src");
+        } catch (IOException e) {
+            System.out.println("(!) Error writing '" + getFileName() + ".src': " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the index of the user's file the base layer is up to date with, or
+     *         null if that file wasn't read
+     */
+    public synchronized SourceIndex getSourceIndex() {
+        return source_index;
+    }
+
+    /**
+     * Open the index segments of the base layer (see SegmentIndex), building
+     * them if they are missing or stale. Searches scan the whole glossary while
+     * the segments can't be used.
+     */
+    private void OpenSegments() {
+        OpenSegments(false);
+    }
+
+    /**
+     * @param rebuild true to build the segments even if they look up to date
+     */
+    private void OpenSegments(Boolean rebuild) {
+        if (shards != null) {
+            return;
+        }
+        File csv = new File(getBasePath());
+        try {
+            segments = rebuild ? null : SegmentIndex.Open(getFileName(), csv);
+            if (segments == null && !read_only) {
+                System.out.println("(@) Building index segments...");
+                segments = SegmentIndex.Build(getFileName(), csv, data.getBase());
+                System.out.println("(i) Done.\n");
+            }
+        } catch (IOException e) {
+            System.out.println("(!) Error opening index segments: " + e.getMessage());
+            segments = null;
+        }
+    }
+
+    /**
+     * Stop using index segments that failed. Searches scan the glossary until
+     * Write() rebuilds them, so a search never prints nor writes files.
+     * 
+     * @param e the error
+     */
+    private void SegmentsFailed(IOException e) {
+        segments = null;
+        segments_error = e.getMessage();
     }
 
     /**
-     * Read data from existing csv file, instead of the user's file.
+     * If the compact storage is used, trim its pool now that the base layer is
+     * loaded and report how much heap it saved.
+     * 
+     * @param base the base layer of the glossary
+     */
+    private void ReportCompact(Map<String, String[]> base) {
+        if (!(base instanceof CompactMap)) {
+            return;
+        }
+        DefinitionPool pool = ((CompactMap) base).getPool();
+        pool.Trim();
+        System.out.println("(i) Compact storage: " + ((CompactMap) base).getDefinitions() + " definitions, "
+                + pool.size() + " distinct.");
+        System.out.println("(i) ~" + (pool.getSaved() - pool.getOverhead()) / 1024 + " KB of heap saved ("
+                + pool.getHits() + " repeated definitions, pool uses " + pool.getOverhead() / 1024 + " KB).\n");
+    }
+
+    /**
+     * Read data from existing csv file, instead of the user's file. Both the
+     * current format and the legacy one (definitions joined by '|') are read.
      * 
      * @param csvpath path to the csv file
+     * @param base    receives the entries
      * @throws IOException
      */
-    private void ReadCsv(String csvpath) throws IOException {
+    private void ReadCsv(String csvpath, Map<String, String[]> base) throws IOException {
         System.out.println("(@) Reading from '" + csvpath + "'...");
-        FileInputStream fis = new FileInputStream(csvpath);
-        Scanner s = new Scanner(fis, "UTF-8");
-        Integer id = 0;
-        if (s.hasNextLine()) {
-            // Skip columns name
-            s.nextLine();
-        }
-        while (s.hasNextLine()) {
-            // Split the keyword and definition by the symbol ','
-            String line = s.nextLine();
-            String[] sec = line.split(",", 2);
-            // Split multiple meanings by symbol '|'
-            data.put(sec[0], sec[1].split("\\|"));
-            data_id.put(id++, sec[0]);
-        }
-        if (fis != null) {
-            fis.close();
-        }
-        if (s != null) {
-            s.close();
+        Exporter.Reader reader = new Exporter.Reader(csvpath, Exporter.Format.CSV);
+        String[] entry;
+        while ((entry = reader.Next()) != null) {
+            // The keyword is followed by its definitions
+            base.put(entry[0], Arrays.copyOfRange(entry, 1, entry.length));
         }
+        reader.close();
         System.out.println("(i) Done.\n");
     }
 
     /**
-     * Write the TreeMap into a csv file for faster loading in the future. The name
-     * of the csv file will be the same as the input file.
+     * Read data from a compressed file (see BlockFile), instead of the csv file.
      * 
+     * @param ugzpath path to the compressed file
+     * @param base    receives the entries
      * @throws IOException
      */
-    public void Write() throws IOException {
-        String csvpath = getFileName() + ".csv";
+    private void ReadCompressed(String ugzpath, Map<String, String[]> base) throws IOException {
+        System.out.println("(@) Reading from '" + ugzpath + "'...");
+        BlockFile.Open(ugzpath).ReadAll(base);
+        System.out.println("(i) Done.\n");
+    }
+
+    /**
+     * Path of the file holding the base layer: the compressed file (".ugz") if
+     * the glossary was compressed, the csv file otherwise.
+     * 
+     * @return the path
+     */
+    private String getBasePath() {
+        if (shards != null) {
+            return getFileName() + ".shards"; // Written again with the shards
+        }
+        return getFileName() + (IsCompressed() ? ".ugz" : ".csv");
+    }
+
+    /**
+     * @return true if the base layer is kept in a compressed file
+     */
+    private Boolean IsCompressed() {
+        return shards == null && new File(getFileName() + ".ugz").exists();
+    }
+
+    /**
+     * Write the base layer into its file, compressed or csv.
+     * 
+     * @param base the base layer
+     * @throws IOException
+     */
+    private void WriteBase(Map<String, String[]> base) throws IOException {
+        if (shards != null) {
+            System.out.println("(@) Writing the changed shards of '" + getBasePath() + "'...");
+            shards.WriteBase();
+            return;
+        }
+        String basepath = getBasePath();
+        System.out.println("(@) Writing to '" + basepath + "'...");
+        if (IsCompressed()) {
+            BlockFile.Write(base, basepath);
+        } else {
+            Exporter.Export(base, basepath, Exporter.Format.CSV);
+        }
+    }
+
+    /**
+     * Switch the base layer between the csv file and a compressed file (see
+     * BlockFile), which is smaller on disk and faster to read. The file not used
+     * anymore is removed.
+     * 
+     * @param on true to compress, false to go back to the csv file
+     */
+    public synchronized void Compress(Boolean on) {
+        if (shards != null) {
+            System.out.println("(!) The glossary is split into shards, which are stored as csv.\n");
+            return;
+        }
+        if (on == IsCompressed()) {
+            System.out.println("(i) The glossary is already " + (on ? "compressed" : "stored as csv") + ".\n");
+            return;
+        }
+        String csvpath = getFileName() + ".csv", ugzpath = getFileName() + ".ugz";
+        try {
+            long before = new File(on ? csvpath : ugzpath).length();
+            if (on) {
+                System.out.println("(@) Compressing into '" + ugzpath + "'...");
+                BlockFile.Write(data.getBase(), ugzpath);
+                new File(csvpath).delete();
+                BlockFile blocks = BlockFile.Open(ugzpath);
+                System.out.println("(i) " + blocks.size() + " slang words in " + blocks.getBlocks() + " blocks, "
+                        + before / 1024 + " KB -> " + blocks.getLength() / 1024 + " KB.");
+            } else {
+                System.out.println("(@) Writing to '" + csvpath + "'...");
+                Exporter.Export(data.getBase(), csvpath, Exporter.Format.CSV);
+                new File(ugzpath).delete();
+                System.out.println("(i) " + before / 1024 + " KB -> " + new File(csvpath).length() / 1024 + " KB.");
+            }
+            // The base layer was written as it is in memory
+            base_modified = false;
+            WriteSourceIndex();
+            WriteKeywordFilter();
+            System.out.println("(i) Done.\n");
+            OpenSegments();
+        } catch (IOException e) {
+            System.out.println("(!) Error writing file: " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Read the changes made to the glossary, saved by Write(), into the overlay.
+     * The file has the same name as the glossary file, with the extension
+     * ".overlay.csv". Each row is '+' followed by a keyword and its definitions
+     * (possibly none), or '-' followed by a deleted keyword. Files written before
+     * have no change column, and a row without definition marks a deleted
+     * keyword.
+     * 
+     * @throws IOException
+     */
+    private void ReadOverlay() throws IOException {
+        String csvpath = getFileName() + ".overlay.csv";
+        if (!new File(csvpath).exists()) {
+            return;
+        }
+        System.out.println("(@) Reading changes from '" + csvpath + "'...");
+        Exporter.Reader reader = new Exporter.Reader(csvpath, Exporter.Format.CSV);
+        Boolean marked = Exporter.CHANGES_HEADER.equals(reader.getHeader());
+        String[] entry;
+        while ((entry = reader.Next()) != null) {
+            if (!marked) {
+                data.Restore(entry[0], Arrays.copyOfRange(entry, 1, entry.length));
+            } else if (entry.length >= 2 && entry[0].equals("+")) {
+                data.put(entry[1], Arrays.copyOfRange(entry, 2, entry.length));
+            } else if (entry.length == 2 && entry[0].equals("-")) {
+                data.remove(entry[1]);
+            }
+        }
+        reader.close();
+    }
+
+    /**
+     * Write the changes made to the glossary into the overlay file (see
+     * ReadOverlay). The base layer is only written again into its file (csv or
+     * compressed) if the original file has changed meanwhile. The overlay file is
+     * a csv file, each row holds a change (see ReadOverlay), quoted as in RFC
+     * 4180.
+     * 
+     * @throws IOException
+     */
+    public synchronized void Write() throws IOException {
+        if (read_only) {
+            return; // The writer saves the glossary
+        }
+        WriteSearchStats();
+        if (base_modified) {
+            WriteBase(data.getBase());
+            WriteSourceIndex();
+            base_modified = false;
+            WriteKeywordFilter();
+            OpenSegments();
+        }
+        if (segments_error != null) {
+            System.out.println("(!) " + segments_error + " Rebuilding index segments.");
+            segments_error = null;
+            OpenSegments(true);
+        }
+        if (filter_modified) {
+            WriteKeywordFilter();
+        }
+        String csvpath = getFileName() + ".overlay.csv";
         File file = new File(csvpath);
+        if (shards != null) {
+            // Only the change logs of the shards whose changes differ are written
+            System.out.println("(@) Writing to the change logs of '" + getBasePath() + "'...");
+            shards.setChanges(getChanges());
+            file.delete();
+            return;
+        }
+        if (data.getOverlaySize() == 0) {
+            // Nothing changed from the original file
+            file.delete();
+            return;
+        }
         System.out.println("(@) Writing to '" + csvpath + "'...");
-        FileWriter fw = null;
-        if (file.createNewFile()) {
+        if (!file.exists()) {
             System.out.println("(i) Created '" + csvpath + "'.");
-            fw = new FileWriter(file);
-            fw.write("Keyword,Definition\n");
         }
-        if (fw == null) {
-            fw = new FileWriter(file);
+        Writer fw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            fw.write(Exporter.CHANGES_HEADER + "\n");
+            for (Map.Entry<String, String[]> change : getChanges().entrySet()) {
+                fw.write(Exporter.ChangeRecord(change.getKey(), change.getValue()) + "\n");
+            }
+        } finally {
+            fw.close();
+        }
+    }
+
+    /**
+     * @return the changes of the overlay, null for removed keywords
+     */
+    private TreeMap<String, String[]> getChanges() {
+        TreeMap<String, String[]> changes = new TreeMap<String, String[]>();
+        for (Map.Entry<String, String[]> entry : data.getOverlay().entrySet()) {
+            changes.put(entry.getKey(), data.IsRemoved(entry.getKey()) ? null : entry.getValue());
         }
-        // REF: https://www.geeksforgeeks.org/how-to-iterate-over-a-treemap-in-java/
-        for (Map.Entry<String, String[]> entry : data.entrySet()) {
-            fw.write(entry.getKey() + ",");
-            String[] values = entry.getValue();
-            for (String str : values) {
-                fw.write(str + "|");
+        return changes;
+    }
+
+    /**
+     * Export the glossary into a csv (RFC 4180), JSON Lines or compressed
+     * (".ugz", see BlockFile) file, depending on the extension of the file.
+     * 
+     * @param file path of the file
+     */
+    public synchronized void Export(String file) {
+        if (file.toLowerCase().endsWith(".ugz")) {
+            System.out.println("(@) Exporting to '" + file + "' compressed...");
+            try {
+                BlockFile.Write(data, file);
+                System.out.println("(i) Done.");
+            } catch (IOException e) {
+                System.out.println("(!) Error writing file.");
             }
-            fw.write("\n");
+            System.out.println();
+            return;
         }
-        if (fw != null) {
-            fw.close();
+        Exporter.Format format = Exporter.Format.Of(file);
+        System.out.println("(@) Exporting to '" + file + "' as " + format.name().toLowerCase() + "...");
+        try {
+            Exporter.Export(data, file, format);
+            System.out.println("(i) Done.");
+        } catch (IOException e) {
+            System.out.println("(!) Error writing file.");
         }
+        System.out.println();
     }
 
     /**
      * Print everything in the glossary.
      */
-    public void Print() {
+    public synchronized void Print() {
         Print(null);
     }
 
     /**
      * Print everything in the specified sub-glossary.
      * 
-     * @param map the TreeMap to be printed
+     * @param map the entries to be printed
      */
-    private void Print(TreeMap<String, String[]> map) {
+    private void Print(Map<String, String[]> map) {
         if (map == null) {
             System.out.println("(i) Printing content of Glossary...");
             map = data;
@@ -201,483 +609,1342 @@ public class Glossary {
         return path.replaceFirst("[.][^.]+$", "");
     }
 
+    /**
+     * Get every entry of the glossary. The entries are collected when called, so
+     * changes made while the stream is consumed don't affect it.
+     * 
+     * @return the entries, sorted by keyword
+     */
+    public Stream<Map.Entry<String, String[]>> Entries() {
+        return Entries(null);
+    }
+
+    /**
+     * Get every entry of a version of the glossary.
+     * 
+     * @param version the version (see Undo), null for the current one
+     * @return the entries, sorted by keyword
+     * @throws NoSuchElementException if the version doesn't exist
+     */
+    public synchronized Stream<Map.Entry<String, String[]>> Entries(Integer version) {
+        return StreamOf(getVersion(version), entry -> true);
+    }
+
+    /**
+     * Get the definitions of a slang word (case-sensitive).
+     * 
+     * @param key the keyword
+     * @return a copy of its definitions, or null if it doesn't exist
+     */
+    public synchronized String[] Get(String key) {
+        String[] values = data.get(key);
+        return values == null ? null : values.clone();
+    }
+
+    /**
+     * @return number of slang words in the glossary
+     */
+    public synchronized Integer size() {
+        return data.size();
+    }
+
     /**
      * Search for the exact keyword in the data (case-insensitive).
      * 
      * @param term search term
-     * @return a TreeMap of all found results
+     * @return the found entries, sorted by keyword
+     */
+    public Stream<Map.Entry<String, String[]>> FindKeyword(String term) {
+        return FindKeyword(term, null);
+    }
+
+    /**
+     * Search for the exact keyword in a version of the data (case-insensitive).
+     * 
+     * @param term    search term
+     * @param version version to search in (see Undo), null for the current one
+     * @return the found entries, sorted by keyword
+     * @throws NoSuchElementException if the version doesn't exist
+     */
+    public synchronized Stream<Map.Entry<String, String[]>> FindKeyword(String term, Integer version) {
+        if (version == null) {
+            return Find("key", term);
+        }
+        return StreamOf(getVersion(version), Matching("key", term));
+    }
+
+    /**
+     * Search for a term in the definition in the data (case-insensitive).
+     * 
+     * @param term search term
+     * @return the found entries, sorted by keyword
+     */
+    public Stream<Map.Entry<String, String[]>> FindDefinition(String term) {
+        return FindDefinition(term, null);
+    }
+
+    /**
+     * Search for a term in the definition in a version of the data
+     * (case-insensitive).
+     * 
+     * @param term    search term
+     * @param version version to search in (see Undo), null for the current one
+     * @return the found entries, sorted by keyword
+     * @throws NoSuchElementException if the version doesn't exist
+     */
+    public synchronized Stream<Map.Entry<String, String[]>> FindDefinition(String term, Integer version) {
+        if (version == null) {
+            return Find("def", term);
+        }
+        return StreamOf(getVersion(version), Matching("def", term));
+    }
+
+    /**
+     * Search the current data: terms that aren't keywords are rejected by the
+     * keyword filter (see KeywordFilter), then from the cache of frequent
+     * searches if possible,
+     * else with the index segments, else by scanning the data. The results of
+     * the HOT most frequent searches (see SearchStats) are kept in the cache.
+     * 
+     * @param kind "key" or "def"
+     * @param term search term
+     * @return the found entries, sorted by keyword
+     */
+    private Stream<Map.Entry<String, String[]>> Find(String kind, String term) {
+        if (kind.equals("key") && !getKeywordFilter().MightContain(term)) {
+            return Stream.empty(); // Surely not a keyword
+        }
+        String item = kind + ":" + term.toLowerCase();
+        HashMap<String, TreeMap<String, String[]>> hot = getHotResults();
+        if (hot.containsKey(item)) {
+            return StreamOf(hot.get(item), entry -> true);
+        }
+        TreeMap<String, String[]> results = kind.equals("key") ? IndexedKeyword(term) : IndexedDefinition(term);
+        if (results == null) {
+            results = Collect(data, Matching(kind, term));
+        }
+        List<String> top = getSearchStats().Top(HOT);
+        if (top.contains(item)) {
+            hot.put(item, results);
+            hot.keySet().retainAll(top);
+        }
+        return StreamOf(results, entry -> true);
+    }
+
+    /**
+     * @param kind "key" to match keywords equal to the term, "def" to match
+     *             definitions containing it (case-insensitive)
+     * @param term search term
+     * @return the filter of the matching entries
+     */
+    private static Predicate<Map.Entry<String, String[]>> Matching(String kind, String term) {
+        String lower = term.toLowerCase();
+        if (kind.equals("key")) {
+            return entry -> entry.getKey().equalsIgnoreCase(term);
+        }
+        return entry -> Contains(entry.getValue(), lower);
+    }
+
+    /**
+     * Stream the entries of a map matching a filter. They are collected right
+     * away, while the caller holds the lock: the base layer can change once it
+     * is released (see Apply). Each entry has its own copy of the definitions.
+     * 
+     * @param map    the map
+     * @param filter the filter of the entries
+     * @return the entries, read-only
+     */
+    private static Stream<Map.Entry<String, String[]>> StreamOf(Map<String, String[]> map,
+            Predicate<Map.Entry<String, String[]>> filter) {
+        ArrayList<Map.Entry<String, String[]>> entries = new ArrayList<Map.Entry<String, String[]>>();
+        for (Map.Entry<String, String[]> entry : map.entrySet()) {
+            if (filter.test(entry)) {
+                entries.add(Map.entry(entry.getKey(), entry.getValue().clone()));
+            }
+        }
+        return entries.stream();
+    }
+
+    /**
+     * Stream the entries of a map for some of its keys, collected right away
+     * like above.
+     * 
+     * @param map  the map
+     * @param keys the keys, in the order of the stream
+     * @return the entries of the keys in the map, read-only
      */
-    public TreeMap<String, String[]> SearchKeyword(String term) {
-        // Add to search history
-        if (!search_history.containsKey(0) && !search_history.containsValue(term)) {
-            search_history.put(0, term);
+    private static Stream<Map.Entry<String, String[]>> StreamOf(Map<String, String[]> map, Collection<String> keys) {
+        ArrayList<Map.Entry<String, String[]>> entries = new ArrayList<Map.Entry<String, String[]>>(keys.size());
+        for (String key : keys) {
+            String[] values = map.get(key);
+            if (values != null) {
+                entries.add(Map.entry(key, values.clone()));
+            }
         }
+        return entries.stream();
+    }
+
+    /**
+     * @param map    the map
+     * @param filter the filter of the entries
+     * @return the entries matching the filter in a TreeMap
+     */
+    private static TreeMap<String, String[]> Collect(Map<String, String[]> map,
+            Predicate<Map.Entry<String, String[]>> filter) {
         TreeMap<String, String[]> results = new TreeMap<String, String[]>();
-        System.out.println("(@) Searching for " + term + " as keyword...");
-        for (Map.Entry<String, String[]> entry : data.entrySet()) {
-            if (!entry.getKey().equalsIgnoreCase(term)) {
-                continue;
+        for (Map.Entry<String, String[]> entry : map.entrySet()) {
+            if (filter.test(entry)) {
+                results.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Get the cache of frequent searches, filling it with the results of the HOT
+     * most frequent ones on first use.
+     * 
+     * @return the results of each search, by kind and lower-case term
+     */
+    private HashMap<String, TreeMap<String, String[]>> getHotResults() {
+        if (hot_results == null) {
+            hot_results = new HashMap<String, TreeMap<String, String[]>>();
+            for (String item : getSearchStats().Top(HOT)) {
+                String[] sec = item.split(":", 2);
+                TreeMap<String, String[]> indexed = sec[0].equals("key") ? IndexedKeyword(sec[1])
+                        : IndexedDefinition(sec[1]);
+                hot_results.put(item, indexed != null ? indexed : Collect(data, Matching(sec[0], sec[1])));
+            }
+        }
+        return hot_results;
+    }
+
+    /**
+     * Get the counters of searched terms, reading them from the file with the
+     * extension ".stats" on first use. Without that file, they start from the
+     * search history.
+     * 
+     * @return the counters
+     */
+    private SearchStats getSearchStats() {
+        if (search_stats != null) {
+            return search_stats;
+        }
+        try {
+            search_stats = SearchStats.Read(getFileName() + ".stats");
+        } catch (IOException e) {
+            System.out.println("(!) Error reading search statistics.");
+        }
+        if (search_stats == null) {
+            search_stats = new SearchStats();
+            File file = new File(getFileName() + ".hist.csv");
+            if (file.exists()) {
+                try {
+                    FileInputStream fis = new FileInputStream(file);
+                    Scanner s = new Scanner(fis, "UTF-8");
+                    while (s.hasNextLine()) {
+                        // Rows of the history: 0 for keyword, 1 for definition, then the term
+                        String[] sec = s.nextLine().split(",", 2);
+                        if (sec.length == 2 && (sec[0].equals("0") || sec[0].equals("1"))) {
+                            search_stats.Add((sec[0].equals("0") ? "key:" : "def:") + sec[1].toLowerCase());
+                        }
+                    }
+                    s.close();
+                    fis.close();
+                } catch (IOException e) {
+                    System.out.println("(!) Error reading history file.");
+                }
+            }
+        }
+        return search_stats;
+    }
+
+    /**
+     * Save the counters of searched terms next to the search history, if searches
+     * were counted since they were last saved. Done by Write() and when the
+     * program stops, not on every search.
+     */
+    public synchronized void WriteSearchStats() {
+        if (!stats_modified || read_only) {
+            return;
+        }
+        try {
+            search_stats.Write(getFileName() + ".stats");
+            stats_modified = false;
+        } catch (IOException e) {
+            System.out.println("(!) Error writing search statistics.");
+        }
+    }
+
+    /**
+     * Print the most frequent searches, with the number of times each was
+     * searched (estimated, see SearchStats).
+     * 
+     * @param n number of searches to print
+     */
+    public synchronized void PrintTopSearches(Integer n) {
+        SearchStats stats = getSearchStats();
+        List<String> top = stats.Top(n);
+        if (top.isEmpty()) {
+            System.out.println("(!) No searches yet.\n");
+            return;
+        }
+        System.out.println("(i) Most frequent searches (out of " + stats.getTotal() + "):");
+        for (int i = 0; i < top.size(); i++) {
+            String[] sec = top.get(i).split(":", 2);
+            long error = stats.getError(top.get(i));
+            System.out.println("(i) " + (i + 1) + ". " + sec[1] + " (" + (sec[0].equals("key") ? "keyword" : "definition")
+                    + "): " + stats.Estimate(top.get(i)) + " times" + (error > 0 ? " (at most " + error + " less)" : "")
+                    + (getHotResults().containsKey(top.get(i)) ? ", cached" : ""));
+        }
+        System.out.println();
+    }
+
+    /**
+     * Get the statistics of the glossary, computing them on first use.
+     * 
+     * @return the statistics
+     */
+    private CorpusStats getCorpusStats() {
+        if (corpus_stats == null) {
+            corpus_stats = CorpusStats.Build(data);
+        }
+        return corpus_stats;
+    }
+
+    /**
+     * Print the statistics of the glossary (see CorpusStats): the number of
+     * keywords and definitions, the number of keywords by number of definitions,
+     * the most frequent words in the definitions and the largest groups of
+     * keywords with identical definitions.
+     * 
+     * @param k number of words and groups
+     */
+    public synchronized void PrintCorpusStats(Integer k) {
+        CorpusStats stats = getCorpusStats();
+        System.out.println("(i) Keywords: " + stats.getKeywords() + ", definitions: " + stats.getDefinitions()
+                + String.format(" (%.2f per keyword).", (double) stats.getDefinitions() / Math.max(1, stats.getKeywords())));
+        StringJoiner histogram = new StringJoiner(", ");
+        stats.getHistogram().forEach((n, count) -> histogram.add(n + ": " + count));
+        System.out.println("(i) Keywords by number of definitions: " + histogram + ".");
+        StringJoiner words = new StringJoiner(", ");
+        stats.getTopWords(k).forEach((word, count) -> words.add(word + " (" + count + ")"));
+        System.out.println("(i) Most frequent words (out of " + stats.getDistinctWords() + "): " + words + ".");
+        System.out.println("(i) Keywords sharing identical definitions: " + stats.getSharing() + ", in "
+                + stats.getSharedGroups() + " groups.");
+        List<SortedSet<String>> groups = stats.getTopGroups(k);
+        for (int i = 0; i < groups.size(); i++) {
+            SortedSet<String> group = groups.get(i);
+            StringJoiner keys = new StringJoiner(", ");
+            group.stream().limit(COMPLETIONS).forEach(keys::add);
+            System.out.println("(i) " + (i + 1) + ". " + group.size() + " slang words (" + keys
+                    + (group.size() > COMPLETIONS ? ", ..." : "") + "): " + String.join(" | ", data.get(group.first())));
+        }
+        System.out.println();
+    }
+
+    /**
+     * Complete the beginning of a keyword (case-insensitive), the keywords
+     * searched most often first.
+     * 
+     * @param prefix beginning of the keyword
+     * @return the completions, at most COMPLETIONS of them
+     */
+    public synchronized List<String> Complete(String prefix) {
+        TreeSet<String> keys = getKeywordSet();
+        TreeSet<String> candidates = new TreeSet<String>();
+        // Keywords are mostly upper-case: look up the usual letter cases of the prefix
+        for (String start : new String[] { prefix, prefix.toUpperCase(), prefix.toLowerCase() }) {
+            for (String key : keys.tailSet(start)) {
+                if (!key.startsWith(start)) {
+                    break;
+                }
+                candidates.add(key);
+            }
+        }
+        SearchStats stats = getSearchStats();
+        ArrayList<String> completions = new ArrayList<String>(candidates);
+        completions.sort((a, b) -> Long.compare(stats.Estimate("key:" + b.toLowerCase()),
+                stats.Estimate("key:" + a.toLowerCase())));
+        return new ArrayList<String>(completions.subList(0, Math.min(COMPLETIONS, completions.size())));
+    }
+
+    /**
+     * Search for the keywords matching a glob (<code>L*L</code>,
+     * <code>?TW</code>) or a regular expression (<code>^[0-9]+$</code>), see
+     * KeywordPattern. The match is case-sensitive.
+     * 
+     * @param pattern the pattern
+     * @return the found entries, sorted by keyword
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public synchronized Stream<Map.Entry<String, String[]>> FindPattern(String pattern) {
+        KeywordPattern compiled = new KeywordPattern(pattern);
+        return StreamOf(data, compiled.Search(getKeywordSet()));
+    }
+
+    /**
+     * Search keywords sounding like a term, such as "kewl" for "cool" or "phat"
+     * for "fat" (see PhoneticIndex).
+     * 
+     * @param term search term
+     * @return the found entries, sorted by keyword
+     */
+    public synchronized Stream<Map.Entry<String, String[]>> FindSound(String term) {
+        return StreamOf(data, getPhoneticIndex().Search(term));
+    }
+
+    /**
+     * Search definitions with a boolean query such as
+     * <code>money AND NOT drunk</code>, <code>"laughing out loud"</code> or
+     * <code>(cool OR awesome) AND slang</code>, see DefinitionQuery. Words are
+     * matched case-insensitively as whole words.
+     * 
+     * @param query   the query
+     * @param version version to search in (see Undo), null for the current one
+     * @return the found entries, sorted by keyword
+     * @throws IllegalArgumentException if the query is invalid
+     * @throws NoSuchElementException   if the version doesn't exist
+     */
+    public synchronized Stream<Map.Entry<String, String[]>> FindQuery(String query, Integer version) {
+        DefinitionQuery compiled = new DefinitionQuery(query);
+        Map<String, String[]> source = getVersion(version);
+        if (version == null && segments != null) {
+            try {
+                TreeMap<String, String[]> results = new TreeMap<String, String[]>();
+                for (int id : compiled.Evaluate(segments)) {
+                    String key = segments.Key(id);
+                    if (!data.getOverlay().containsKey(key)) {
+                        results.put(key, data.get(key));
+                    }
+                }
+                // Changes aren't indexed
+                for (Map.Entry<String, String[]> entry : data.getOverlay().entrySet()) {
+                    if (!data.IsRemoved(entry.getKey()) && compiled.Matches(entry.getValue())) {
+                        results.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                return StreamOf(results, entry -> true);
+            } catch (IOException e) {
+                SegmentsFailed(e);
+            }
+        }
+        return StreamOf(source, entry -> compiled.Matches(entry.getValue()));
+    }
+
+    /**
+     * Get the sorted set of keywords, building it on first use.
+     * 
+     * @return the keywords
+     */
+    private TreeSet<String> getKeywordSet() {
+        if (keyword_set == null) {
+            keyword_set = new TreeSet<String>(data.keySet());
+        }
+        return keyword_set;
+    }
+
+    /**
+     * Get the Bloom filter of the keywords (see KeywordFilter): the one saved
+     * next to the base layer file if it is up to date with that file, plus the
+     * keywords of the overlay, else a new one. A new filter is also built once
+     * too many keywords were removed or added since.
+     * 
+     * @return the filter
+     */
+    private KeywordFilter getKeywordFilter() {
+        if (keyword_filter != null) {
+            return keyword_filter;
+        }
+        String bloompath = getFileName() + ".bloom";
+        if (!base_modified) {
+            try {
+                keyword_filter = KeywordFilter.Read(bloompath, new File(getBasePath()));
+            } catch (IOException e) {
+                keyword_filter = null;
+            }
+        }
+        if (keyword_filter != null) {
+            for (String key : data.getOverlay().keySet()) {
+                if (!data.IsRemoved(key) && !keyword_filter.MightContain(key)) {
+                    keyword_filter.Add(key);
+                }
+            }
+        }
+        if (keyword_filter == null || keyword_filter.IsWorn()) {
+            // Saved by Write(), not while searching
+            keyword_filter = new KeywordFilter(data.keySet(), data.size() + data.size() / 2);
+            filter_modified = true;
+        }
+        return keyword_filter;
+    }
+
+    /**
+     * Save the keyword filter next to the base layer file, if the base layer
+     * matches that file. The saved filter may also hold keywords of the overlay,
+     * which only makes it match a few more terms.
+     */
+    private void WriteKeywordFilter() {
+        if (keyword_filter == null || base_modified || read_only) {
+            return;
+        }
+        try {
+            keyword_filter.Write(getFileName() + ".bloom", new File(getBasePath()));
+            filter_modified = false;
+        } catch (IOException e) {
+            System.out.println("(!) Error writing '" + getFileName() + ".bloom': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the phonetic index of the keywords, building it on first use.
+     * 
+     * @return the phonetic index
+     */
+    private PhoneticIndex getPhoneticIndex() {
+        if (phonetic == null) {
+            phonetic = new PhoneticIndex(data.keySet());
+        }
+        return phonetic;
+    }
+
+    /**
+     * Find the keywords equal to a term (case-insensitive) with the index
+     * segments, and among the changes of the overlay.
+     * 
+     * @param term search term
+     * @return the results, or null if the segments can't be used
+     */
+    private TreeMap<String, String[]> IndexedKeyword(String term) {
+        if (segments == null && shards == null) {
+            return null;
+        }
+        TreeMap<String, String[]> results = new TreeMap<String, String[]>();
+        try {
+            // A keyword in any letter case is in the same shard
+            Collection<String> keys = segments != null ? segments.Keyword(term)
+                    : shards.SearchBaseKeyword(term).keySet();
+            for (String key : keys) {
+                if (!data.getOverlay().containsKey(key)) {
+                    results.put(key, data.get(key));
+                }
+            }
+        } catch (IOException e) {
+            SegmentsFailed(e);
+            return null;
+        }
+        for (Map.Entry<String, String[]> entry : data.getOverlay().entrySet()) {
+            if (!data.IsRemoved(entry.getKey()) && entry.getKey().equalsIgnoreCase(term)) {
+                results.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Find the keywords whose definitions contain a term (case-insensitive) with
+     * the index segments, and among the changes of the overlay.
+     * 
+     * @param term search term
+     * @return the results, or null if the segments can't be used
+     */
+    private TreeMap<String, String[]> IndexedDefinition(String term) {
+        if (segments == null && shards == null) {
+            return null;
+        }
+        String lower = term.toLowerCase();
+        TreeMap<String, String[]> results = new TreeMap<String, String[]>();
+        try {
+            // Searched in all shards in parallel
+            Collection<String> candidates = segments != null ? segments.Definition(term)
+                    : shards.SearchBaseDefinition(term).keySet();
+            if (candidates == null) {
+                return null;
+            }
+            for (String key : candidates) {
+                String[] values = data.get(key);
+                if (!data.getOverlay().containsKey(key) && Contains(values, lower)) {
+                    results.put(key, values);
+                }
+            }
+        } catch (IOException e) {
+            SegmentsFailed(e);
+            return null;
+        }
+        for (Map.Entry<String, String[]> entry : data.getOverlay().entrySet()) {
+            if (!data.IsRemoved(entry.getKey()) && Contains(entry.getValue(), lower)) {
+                results.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param values definitions
+     * @param lower  a lower-case term
+     * @return true if any definition contains the term (case-insensitive)
+     */
+    private static Boolean Contains(String[] values, String lower) {
+        for (String str : values) {
+            if (str.toLowerCase().contains(lower)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get search history from a file. The file will have the same name as the
+     * glossary file, with the extension ".hist.csv". The variable search_history is
+     * a LinkedHashMap (it'll retain inserted order). Each entry is an Integer (0:
+     * keyword search, 1: definition search) and a String (search term).
+     */
+    public void ReadSearchHistory() {
+        System.out.println("(@) Getting search history...");
+        String csvpath = getFileName() + ".hist.csv";
+        File file = new File(csvpath);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            FileInputStream fis = new FileInputStream(file);
+            Scanner s = new Scanner(fis, "UTF-8");
+            if (s.hasNextLine()) {
+                // Skip columns name
+                s.nextLine();
+            }
+            while (s.hasNextLine()) {
+                String line = s.nextLine();
+                String[] sec = line.split(",", 2);
+                search_history.put(Integer.parseInt(sec[0]), sec[1]);
+
+            }
+            if (fis != null) {
+                fis.close();
+            }
+            if (s != null) {
+                s.close();
+            }
+        } catch (IOException e) {
+            System.out.println("(!) Error reading history file.");
+        }
+    }
+
+    /**
+     * Write all search terms entered during this session into a history file. If
+     * the file is missing, it will be created.
+     */
+    public void WriteSearchHistory() {
+        String csvpath = getFileName() + ".hist.csv";
+        File file = new File(csvpath);
+        FileWriter fw = null;
+        try {
+            if (file.createNewFile()) {
+                // If history file not found, create new with 2 columns: Code and Term
+                fw = new FileWriter(file);
+                fw.write("Code,Term\n");
+                if (fw != null) {
+                    fw.close();
+                }
+            }
+            fw = new FileWriter(file, true);
+            for (Map.Entry<Integer, String> entry : search_history.entrySet()) {
+                fw.write(entry.getKey() + "," + entry.getValue() + "\n");
+            }
+            if (fw != null) {
+                fw.close();
+            }
+        } catch (IOException e) {
+            System.out.println("(!) Error writing history file.");
+        }
+    }
+
+    /**
+     * Record a search made by the user, in the search history and in the counters
+     * of frequent searches (see SearchStats). The history is saved right away,
+     * the counters by WriteSearchStats().
+     * 
+     * @param code 0 for a keyword search, 1 for a definition search
+     * @param term search term
+     */
+    public synchronized void AddSearchHistory(Integer code, String term) {
+        if (!search_history.containsKey(code) && !search_history.containsValue(term)) {
+            search_history.put(code, term);
+        }
+        getSearchStats().Add((code == 0 ? "key:" : "def:") + term.toLowerCase());
+        stats_modified = true;
+        if (!read_only) {
+            WriteSearchHistory();
+        }
+    }
+
+    /**
+     * Print search history to console.
+     */
+    public void PrintSearchHistory() {
+        System.out.println("(i) Printing search history...");
+        for (Map.Entry<Integer, String> entry : search_history.entrySet()) {
+            String type = entry.getKey() == 0 ? "keyword" : "definition";
+            System.out.print("By " + type + ": ");
+            System.out.println(entry.getValue());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Add a slang word, or replace all the definitions of an existing one.
+     * 
+     * @param key  the keyword
+     * @param defs its definitions
+     * @return the previous definitions, or null if the slang word is new
+     */
+    public synchronized String[] Put(String key, String[] defs) {
+        CheckWritable();
+        String[] previous = data.put(key, defs.clone());
+        Changed(key);
+        return previous;
+    }
+
+    /**
+     * Add a definition to a slang word, adding the slang word if it doesn't
+     * exist.
+     * 
+     * @param key the keyword
+     * @param def the new definition
+     * @return the definitions of the slang word
+     */
+    public synchronized String[] Append(String key, String def) {
+        CheckWritable();
+        String[] oldVal = data.get(key);
+        String[] newVal = oldVal == null ? new String[1] : Arrays.copyOf(oldVal, oldVal.length + 1);
+        newVal[newVal.length - 1] = def;
+        data.put(key, newVal);
+        Changed(key);
+        return newVal.clone();
+    }
+
+    /**
+     * Change a definition of a slang word.
+     * 
+     * @param key   the keyword
+     * @param index index of the definition, from 0
+     * @param def   the new definition
+     * @return the definitions of the slang word
+     * @throws NoSuchElementException    if the slang word doesn't exist
+     * @throws IndexOutOfBoundsException if it has no such definition
+     */
+    public synchronized String[] Change(String key, Integer index, String def) {
+        CheckWritable();
+        String[] val = getExisting(key);
+        Objects.checkIndex(index, val.length);
+        // Copy first, the old definitions may be shared with the base
+        val = val.clone();
+        val[index] = def;
+        data.put(key, val);
+        Changed(key);
+        return val.clone();
+    }
+
+    /**
+     * Remove a definition of a slang word. The slang word stays, even without
+     * definitions.
+     * 
+     * @param key   the keyword
+     * @param index index of the definition, from 0
+     * @return the definitions left
+     * @throws NoSuchElementException    if the slang word doesn't exist
+     * @throws IndexOutOfBoundsException if it has no such definition
+     */
+    public synchronized String[] RemoveDefinition(String key, Integer index) {
+        CheckWritable();
+        String[] val = getExisting(key);
+        Objects.checkIndex(index, val.length);
+        String[] newVal = new String[val.length - 1];
+        System.arraycopy(val, 0, newVal, 0, index);
+        System.arraycopy(val, index + 1, newVal, index, val.length - index - 1);
+        data.put(key, newVal);
+        Changed(key);
+        return newVal.clone();
+    }
+
+    /**
+     * Remove a slang word.
+     * 
+     * @param key the keyword
+     * @return its definitions, or null if it didn't exist
+     */
+    public synchronized String[] Remove(String key) {
+        CheckWritable();
+        String[] previous = data.remove(key);
+        if (previous != null) {
+            Changed(key);
+        }
+        return previous;
+    }
+
+    /**
+     * Restore the original glossary by discarding the overlay holding all changes
+     * made to it. Only the changed keywords are reindexed. This can be undone.
+     * The overlay file stays until the glossary is written (see Write).
+     * 
+     * @return the keywords that were changed
+     */
+    public synchronized Set<String> Restore() {
+        CheckWritable();
+        Set<String> changed = data.ClearOverlay();
+        for (String key : changed) {
+            Reindex(key);
+        }
+        modified = true;
+        Commit();
+        return changed;
+    }
+
+    private String[] getExisting(String key) {
+        String[] val = data.get(key);
+        if (val == null) {
+            throw new NoSuchElementException("Slang word " + key + " not found.");
+        }
+        return val;
+    }
+
+    /**
+     * Update the indexes and record a new version after a slang word has been
+     * changed.
+     * 
+     * @param key the keyword
+     */
+    private void Changed(String key) {
+        modified = true;
+        Reindex(key);
+        Commit();
+    }
+
+    /**
+     * Record the current state of the glossary as a new version, after a command
+     * has changed it. Versions that were undone are dropped. Taking a version is
+     * O(1) and shares all unchanged data with the previous versions.
+     */
+    private void Commit() {
+        Publish();
+        PersistentTreeMap current = data.Snapshot();
+        if (current == versions.get(version)) {
+            return;
+        }
+        versions.subList(version + 1, versions.size()).clear();
+        versions.add(current);
+        version++;
+    }
+
+    /**
+     * Get a version of the glossary.
+     * 
+     * @param version the version number, null for the current one
+     * @return a read-only view of the version, which later changes don't affect
+     * @throws NoSuchElementException if the version doesn't exist
+     */
+    private Map<String, String[]> getVersion(Integer version) {
+        if (version == null) {
+            return data.At(data.Snapshot());
+        }
+        if (version < 0 || version >= versions.size()) {
+            throw new NoSuchElementException(
+                    "Invalid version, the possible range is [0," + (versions.size() - 1) + "].");
+        }
+        return data.At(versions.get(version));
+    }
+
+    /**
+     * Undo the changes of the last command (version 0 being the glossary as read
+     * when the program started).
+     */
+    public synchronized void Undo() {
+        CheckWritable();
+        if (version == 0) {
+            System.out.println("(!) Nothing to undo.\n");
+            return;
+        }
+        Checkout(version - 1);
+    }
+
+    /**
+     * Redo the changes of the last undone command.
+     */
+    public synchronized void Redo() {
+        CheckWritable();
+        if (version == versions.size() - 1) {
+            System.out.println("(!) Nothing to redo.\n");
+            return;
+        }
+        Checkout(version + 1);
+    }
+
+    private void Checkout(Integer target) {
+        Set<String> changed = data.Checkout(versions.get(target));
+        for (String key : changed) {
+            Reindex(key);
+        }
+        version = target;
+        modified = true;
+        Publish();
+        System.out.println("(i) Now at version " + version + " of " + (versions.size() - 1) + " (" + changed.size()
+                + " slang words changed).\n");
+    }
+
+    /**
+     * Measure the heap retained by each structure of the glossary, from the
+     * layout of their objects (see MemoryMeter). Objects shared by several
+     * structures count for the first one: data (with the shards it's read
+     * from), search_history, the previous versions, the keyword set, the
+     * similarity and phonetic indexes, the keyword filter, the corpus and search
+     * statistics, the search cache, the index segments, the index of the user's
+     * file, the quiz engine, the review scheduler, the watcher, the replication
+     * log and the follower. The data is also
+     * broken down into its keywords (strings only), its definitions (strings,
+     * lists of definitions and pool) and the rest of its structure, as
+     * "data.keywords", "data.definitions" and "data.structure".
+     * 
+     * @return size of each structure in bytes, in the order above, 0 for indexes
+     *         not built yet
+     */
+    public synchronized LinkedHashMap<String, Long> getMemoryUsage() {
+        LinkedHashMap<String, Long> usage = new LinkedHashMap<String, Long>();
+        MemoryMeter meter = new MemoryMeter();
+        meter.Exclude(this);
+        long strings = meter.getStrings(), lists = meter.getLists();
+        usage.put("data", meter.Measure(data));
+        // Keywords of both layers, measured on their own
+        MemoryMeter keys = new MemoryMeter();
+        for (String key : data.getBase().keySet()) {
+            keys.Measure(key);
+        }
+        for (String key : data.getOverlay().keySet()) {
+            keys.Measure(key);
+        }
+        long definitions = meter.getStrings() - strings - keys.getTotal() + meter.getLists() - lists;
+        usage.put("data.keywords", keys.getTotal());
+        usage.put("data.definitions", definitions);
+        usage.put("data.structure", usage.get("data") - keys.getTotal() - definitions);
+        usage.put("search_history", meter.Measure(search_history));
+        usage.put("versions", meter.Measure(versions));
+        usage.put("keyword_set", meter.Measure(keyword_set));
+        usage.put("similarity", meter.Measure(similarity));
+        usage.put("phonetic", meter.Measure(phonetic));
+        usage.put("keyword_filter", meter.Measure(keyword_filter));
+        usage.put("corpus_stats", meter.Measure(corpus_stats));
+        usage.put("search_stats", meter.Measure(search_stats));
+        usage.put("hot_results", meter.Measure(hot_results));
+        usage.put("segments", meter.Measure(segments));
+        usage.put("source_index", meter.Measure(source_index));
+        usage.put("quiz_engine", meter.Measure(quiz_engine));
+        usage.put("review_scheduler", meter.Measure(review_scheduler));
+        usage.put("watcher", meter.Measure(watcher));
+        usage.put("replication", meter.Measure(replication));
+        usage.put("follower", meter.Measure(follower));
+        return usage;
+    }
+
+    /**
+     * Print the heap used by the glossary (see getMemoryUsage), per structure and
+     * per entry, and estimate it for another number of entries.
+     * 
+     * @param target number of entries to estimate the heap for, or null
+     */
+    public synchronized void Memory(Long target) {
+        System.out.println("(@) Measuring glossary memory...");
+        LinkedHashMap<String, Long> usage = getMemoryUsage();
+        MemoryMeter meter = new MemoryMeter();
+        System.out.println("(i) Compressed references: " + (meter.compressedOops ? "yes" : "no") + " (header "
+                + meter.headerSize + " bytes, reference " + meter.referenceSize + " bytes, alignment "
+                + meter.alignment + " bytes).");
+        long total = 0, fixed = 0;
+        for (Map.Entry<String, Long> entry : usage.entrySet()) {
+            if (entry.getKey().startsWith("data.")) {
+                System.out.println("(i)   - " + entry.getKey().substring(5) + ": " + Kilobytes(entry.getValue()));
+                continue;
+            }
+            System.out.println("(i) - " + entry.getKey() + ": " + Kilobytes(entry.getValue()));
+            total += entry.getValue();
+            if (Arrays.asList("search_history", "watcher", "replication", "follower").contains(entry.getKey())) {
+                fixed += entry.getValue(); // Don't grow with the glossary
+            }
+        }
+        long definitions = 0;
+        for (String[] values : data.values()) {
+            definitions += values.length;
+        }
+        Integer entries = Math.max(data.size(), 1);
+        System.out.println("(i) Total: " + Kilobytes(total) + " for " + data.size() + " entries and " + definitions
+                + " definitions.");
+        System.out.println("(i) Per entry: " + (total - fixed) / entries + " bytes (data: " + usage.get("data") / entries
+                + " bytes).");
+        System.out.println("(i) Per keyword: " + (usage.get("data.keywords") + usage.get("data.structure")) / entries
+                + " bytes (with its map node), per definition: "
+                + usage.get("data.definitions") / Math.max(definitions, 1) + " bytes.");
+        if (target != null) {
+            long estimate = fixed + (total - fixed) * target / entries;
+            System.out.println("(i) Estimated for " + target + " entries: " + Kilobytes(estimate) + " ("
+                    + (estimate >> 20) + " MB), with the same definitions per entry.");
+        }
+        System.out.println();
+    }
+
+    private static String Kilobytes(long bytes) {
+        return String.format("%,d KB", (bytes + 1023) / 1024);
+    }
+
+    /**
+     * List the changes made to the glossary since it was read from the original
+     * file: '+' for added, '~' for changed and '-' for deleted slang words.
+     */
+    public synchronized void Diff() {
+        System.out.println("(i) Printing changes of Glossary...");
+        Map<String, String[]> base = data.getBase();
+        for (Map.Entry<String, String[]> entry : data.getOverlay().entrySet()) {
+            if (data.IsRemoved(entry.getKey())) {
+                System.out.println("- " + entry.getKey());
+                continue;
+            }
+            System.out.print((base.containsKey(entry.getKey()) ? "~ " : "+ ") + entry.getKey() + ": ");
+            for (String str : entry.getValue()) {
+                System.out.print(str + " || ");
+            }
+            System.out.println();
+        }
+        System.out.println("(i) " + data.getOverlaySize() + " changes.");
+        System.out.println();
+    }
+
+    /**
+     * Apply a batch of changes of the original file to the base layer of the
+     * glossary and its indexes, as a single step for the other methods using the
+     * glossary. Changes made by the user still take precedence.
+     * 
+     * @param put     keywords to add or replace, with their definitions
+     * @param removed keywords to remove
+     * @param index   index of the original file with these changes, saved along
+     *                with the base layer (see Refresh)
+     */
+    public synchronized void Apply(Map<String, String[]> put, Collection<String> removed, SourceIndex index) {
+        CheckWritable();
+        source_index = index;
+        for (Map.Entry<String, String[]> entry : put.entrySet()) {
+            data.PutBase(entry.getKey(), entry.getValue());
+            Reindex(entry.getKey());
+        }
+        for (String key : removed) {
+            data.PutBase(key, null);
+            Reindex(key);
+        }
+        if (!put.isEmpty() || !removed.isEmpty()) {
+            base_modified = true;
+            modified = true;
+            segments = null; // Stale until the csv file is written again
+        }
+        Publish();
+    }
+
+    /**
+     * Start or stop watching the file the glossary was read from. While watching,
+     * changes to that file are applied to the glossary in the background.
+     * 
+     * @param on true to start watching, false to stop
+     */
+    public void Watch(Boolean on) {
+        if (!on) {
+            if (watcher != null) {
+                watcher.Close();
+                watcher = null;
+            }
+            System.out.println("(i) Stopped watching '" + path + "'.\n");
+            return;
+        }
+        if (watcher != null) {
+            System.out.println("(i) Already watching '" + path + "'.\n");
+            return;
+        }
+        if (read_only) {
+            // Changes of the file come from the writer
+            System.out.println("(!) A follower can't watch its file.\n");
+            return;
+        }
+        try {
+            watcher = new GlossaryWatcher(this);
+            System.out.println("(i) Watching '" + path + "' for changes.\n");
+        } catch (IOException e) {
+            System.out.println("(!) Error watching file.\n");
+        }
+    }
+
+    /**
+     * Start, stop or report replicating the changes of the glossary to read-only
+     * followers (see ReplicationLog), through the "&lt;name&gt;.repl" directory
+     * next to the glossary file.
+     *
+     * @param arg empty to start, "stop" to stop, "status" to report
+     */
+    public synchronized void Replicate(String arg) {
+        if (arg.equals("status")) {
+            if (follower != null) {
+                follower.PrintStatus();
+            } else if (replication != null) {
+                System.out.println("(i) Replicating to '" + replication.getDirectory() + "', at record "
+                        + replication.getSequence() + ".\n");
+            } else {
+                System.out.println("(i) Not replicating. Start with 'replicate'.\n");
+            }
+            return;
+        }
+        if (follower != null) {
+            System.out.println("(!) A follower can't replicate.\n");
+            return;
+        }
+        if (arg.equals("stop")) {
+            if (replication != null) {
+                StopReplication();
+                System.out.println("(i) Stopped replicating.\n");
+            } else {
+                System.out.println("(!) Not replicating.\n");
+            }
+            return;
+        }
+        if (replication != null) {
+            System.out.println("(i) Already replicating to '" + replication.getDirectory() + "'.\n");
+            return;
+        }
+        try {
+            replication = new ReplicationLog(Path.of(getFileName() + ".repl"), getVersion(null));
+            System.out.println("(i) Replicating to '" + replication.getDirectory() + "'. Start followers with 'java Main "
+                    + path + " --follow'.\n");
+        } catch (IOException e) {
+            System.out.println("(!) Error starting the replication log: " + e.getMessage() + "\n");
+            replication = null;
+        }
+    }
+
+    /**
+     * Turn the glossary into a read-only follower of the writer replicating it
+     * (see Replicate): it is replaced with the last snapshot of the writer, then
+     * kept up to date in the background. A follower doesn't write any file.
+     *
+     * @throws IOException if the writer isn't replicating
+     */
+    public synchronized void Follow() throws IOException {
+        if (follower == null) {
+            read_only = true;
+            follower = new ReplicaFollower(this, Path.of(getFileName() + ".repl"));
+        }
+    }
+
+    /**
+     * @return true if the glossary is a read-only follower (see Follow)
+     */
+    public Boolean IsFollower() {
+        return follower != null;
+    }
+
+    /**
+     * Replace all entries of a follower with a snapshot of the writer. Only the
+     * keywords that differ are changed and reindexed.
+     *
+     * @param entries every entry of the writer
+     */
+    public synchronized void Replicated(Map<String, String[]> entries) {
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String key : data.keySet()) {
+            if (!entries.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        for (String key : changed) {
+            data.remove(key);
+        }
+        for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+            if (!Arrays.equals(data.get(entry.getKey()), entry.getValue())) {
+                data.put(entry.getKey(), entry.getValue());
+                changed.add(entry.getKey());
             }
-            results.put(entry.getKey(), entry.getValue());
         }
-        System.out.println("(i) Done.");
-        if (results.isEmpty()) {
-            System.out.println("(!) Found no results.\n");
-        } else {
-            System.out.println("(i) The following results are found:");
-            Print(results);
+        for (String key : changed) {
+            Reindex(key);
         }
-        WriteSearchHistory();
-        return results;
     }
 
     /**
-     * Search for a term in the definition in the data (case-insensitive).
-     * 
-     * @param term search term
-     * @return a TreeMap of all found results
+     * Apply records of the writer to a follower, in order.
+     *
+     * @param records the records
      */
-    public TreeMap<String, String[]> SearchDefinition(String term) {
-        // Add to search history
-        if (!search_history.containsKey(1) && !search_history.containsValue(term)) {
-            search_history.put(1, term);
-        }
-        TreeMap<String, String[]> results = new TreeMap<String, String[]>();
-        System.out.println("(@) Searching for " + term + " as definition...");
-        for (Map.Entry<String, String[]> entry : data.entrySet()) {
-            String[] values = entry.getValue();
-            Boolean found = false;
-            for (String str : values) {
-                if (str.toLowerCase().contains(term.toLowerCase())) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                // Current entry doesn't contain the search phrase => Skip
-                continue;
+    public synchronized void Replicated(List<ReplicationLog.Record> records) {
+        for (ReplicationLog.Record record : records) {
+            if (record.defs == null) {
+                data.remove(record.key);
+            } else {
+                data.put(record.key, record.defs);
             }
-            results.put(entry.getKey(), entry.getValue());
-        }
-        System.out.println("(i) Done.");
-        if (results.isEmpty()) {
-            System.out.println("(!) Found no results.");
-        } else {
-            System.out.println("(i) The following results are found:");
-            Print(results);
+            Reindex(record.key);
         }
-        WriteSearchHistory();
-        return results;
     }
 
     /**
-     * Get search history from a file. The file will have the same name as the
-     * glossary file, with the extension ".hist.csv". The variable search_history is
-     * a LinkedHashMap (it'll retain inserted order). Each entry is an Integer (0:
-     * keyword search, 1: definition search) and a String (search term).
+     * Send the changes logged since the last call to followers, and take a
+     * snapshot when one is due.
      */
-    public void ReadSearchHistory() {
-        System.out.println("(@) Getting search history...");
-        String csvpath = getFileName() + ".hist.csv";
-        File file = new File(csvpath);
-        if (!file.exists()) {
+    private void Publish() {
+        if (replication == null) {
             return;
         }
         try {
-            FileInputStream fis = new FileInputStream(file);
-            Scanner s = new Scanner(fis, "UTF-8");
-            if (s.hasNextLine()) {
-                // Skip columns name
-                s.nextLine();
-            }
-            while (s.hasNextLine()) {
-                String line = s.nextLine();
-                String[] sec = line.split(",", 2);
-                search_history.put(Integer.parseInt(sec[0]), sec[1]);
-
-            }
-            if (fis != null) {
-                fis.close();
-            }
-            if (s != null) {
-                s.close();
+            replication.Flush();
+            if (replication.IsSnapshotDue()) {
+                replication.Snapshot(getVersion(null));
             }
         } catch (IOException e) {
-            System.out.println("(!) Error reading history file.");
+            ReplicationFailed(e);
         }
     }
 
-    /**
-     * Write all search terms entered during this session into a history file. If
-     * the file is missing, it will be created.
-     */
-    public void WriteSearchHistory() {
-        String csvpath = getFileName() + ".hist.csv";
-        File file = new File(csvpath);
-        FileWriter fw = null;
+    private void ReplicationFailed(IOException e) {
+        System.out.println("(!) Error writing the replication log: " + e.getMessage() + ", replication stopped.");
+        StopReplication();
+    }
+
+    private void StopReplication() {
         try {
-            if (file.createNewFile()) {
-                // If history file not found, create new with 2 columns: Code and Term
-                fw = new FileWriter(file);
-                fw.write("Code,Term\n");
-                if (fw != null) {
-                    fw.close();
-                }
-            }
-            fw = new FileWriter(file, true);
-            for (Map.Entry<Integer, String> entry : search_history.entrySet()) {
-                fw.write(entry.getKey() + "," + entry.getValue() + "\n");
-            }
-            if (fw != null) {
-                fw.close();
-            }
+            replication.Close();
         } catch (IOException e) {
-            System.out.println("(!) Error writing history file.");
+            // Followers stop at the last complete record
         }
+        replication = null;
     }
 
     /**
-     * Print search history to console.
+     * @throws IllegalStateException if the glossary is a read-only follower
      */
-    public void PrintSearchHistory() {
-        System.out.println("(i) Printing search history...");
-        for (Map.Entry<Integer, String> entry : search_history.entrySet()) {
-            String type = entry.getKey() == 0 ? "keyword" : "definition";
-            System.out.print("By " + type + ": ");
-            System.out.println(entry.getValue());
+    private void CheckWritable() {
+        if (read_only) {
+            throw new IllegalStateException("The glossary is a read-only follower.");
         }
-        System.out.println();
     }
 
     /**
-     * Add a new slang word to glossary. If an entry exist, ask the user to decide
-     * whether they want to overwrite or append the definition.
+     * Import all entries of another glossary file (user's format or csv) in bulk.
      * 
-     * @param key keyword to add to glossary
-     * @param def definition for that keyword
+     * @param file   path of the file to import
+     * @param policy what to do with keywords that already exist
      */
-    public void AddSlang(String key, String def) {
-        Boolean added = false, exist = false;
-        // Enter data (if no args given)
-        if (key == "" && def == "") {
-            System.out.println("(?) Enter keyword...");
-            System.out.print(" > ");
-            key = Main.sc.nextLine();
-            System.out.println("(?) Enter definition...");
-            System.out.print(" > ");
-            def = Main.sc.nextLine();
-        }
-        // Check existing
-        for (Map.Entry<String, String[]> entry : data.entrySet()) {
-            if (entry.getKey().equals(key)) {
-                exist = true;
-                String option = "";
-                System.out.print("(?) Found an existing entry '" + entry.getKey() + "': ");
-                for (String str : entry.getValue()) {
-                    System.out.print(str + " || ");
-                }
-                System.out.println();
-                System.out.println("(?) Do you want to overwrite? (y/N/a/?)");
-                do {
-                    System.out.print(" > ");
-                    option = Main.sc.nextLine();
-                    switch (option) {
-                        case "yes":
-                        case "y":
-                            // Overwrite the entry
-                            data.replace(entry.getKey(), new String[] { def });
-                            added = true;
-                            break;
-
-                        case "no":
-                        case "n":
-                        case "":
-                            System.out.println("(i) Adding cancelled.");
-                            break;
-
-                        case "append":
-                        case "a":
-                            // Append new definition to keyword (Duplicate slang word)
-                            String[] oldVal = entry.getValue(), newVal = new String[oldVal.length + 1];
-                            System.arraycopy(oldVal, 0, newVal, 0, oldVal.length);
-                            newVal[oldVal.length] = def;
-                            data.replace(entry.getKey(), newVal);
-                            added = true;
-                            break;
-
-                        case "help":
-                        case "h":
-                        case "?":
-                            System.out.println(
-                                    "(i) Options: y = yes, n = no (default), a = append definition, ? = show this help.");
-                            break;
-
-                        default:
-                            System.out.println("(!) Unknown option '" + option + "'.");
-                            option = "?";
-                            break;
-                    }
-                } while (option == "?");
-                break;
-            }
+    public synchronized void Import(String file, Importer.Policy policy) {
+        CheckWritable();
+        System.out.println("(@) Importing '" + file + "' (on conflict: " + policy.name().toLowerCase() + ")...");
+        Importer importer = new Importer(policy, Importer.DEFAULT_BUDGET);
+        try {
+            importer.Import(file, data, key -> Reindex(key));
+        } catch (IOException e) {
+            System.out.println("(!) Error reading file.\n");
+            return;
         }
-        if (added) {
-            System.out.println("(i) Slang word updated to glossary.");
-            modified = true;
-        } else if (!exist) {
-            data.put(key, new String[] { def });
-            System.out.println("(i) Slang word added to glossary.");
+        if (importer.getAdded() + importer.getOverwritten() + importer.getAppended() > 0) {
             modified = true;
+            Commit();
         }
+        System.out.println("(i) Done.");
+        System.out.println("(i) Added: " + importer.getAdded() + ", overwritten: " + importer.getOverwritten()
+                + ", appended: " + importer.getAppended() + ", skipped: " + importer.getSkipped() + ".");
         System.out.println();
     }
 
     /**
-     * Edit the definitions of a slang word if the provided keyword existed. The
-     * program will enter edit mode for the keyword, the user wil be able to change
-     * a definition, or delete it.
+     * Find exact and near-duplicate definitions, within a keyword and across
+     * keywords.
      * 
-     * @param key the keyword existing in the glossary
+     * @param arg empty to report duplicates in the glossary, "merge" to also merge
+     *            (near-)duplicated definitions of each keyword, or the path of a
+     *            glossary file to check without loading it
      */
-    public void EditSlang(String key) {
-        Boolean exist = false;
-        // Enter data (if no args given)
-        if (key == "") {
-            System.out.println("(?) Enter keyword...");
-            System.out.print(" > ");
-            key = Main.sc.nextLine();
-        }
-        // Check existing
-        for (Map.Entry<String, String[]> entry : data.entrySet()) {
-            if (entry.getKey().equals(key)) {
-                exist = true;
-                String cmd = "";
-                String[] args, subargs;
-                System.out.println("(i) Found " + entry.getKey() + ": ");
-                String[] val = entry.getValue();
-                for (int i = 0; i < val.length; i++) {
-                    System.out.println("(i) - " + (i + 1) + ". " + val[i]);
-                }
-                System.out.println("(i) ----");
-                System.out.println("(i) Edit commands:");
-                System.out.println("(i) - (h)elp: Print this help.");
-                System.out.println("(i) - (p)rint: Print the definitions.");
-                System.out.println("(i) - (c)hange <id> <def>: Change the <id>th definition with <def>.");
-                System.out.println("(i) - (d)elete <id>: Delete the <id>th definition.");
-                System.out.println("(i) - (q)uit: Quit the edit menu.");
-                Boolean listening = true;
-                while (listening) {
-                    System.out.print(" e> ");
-                    cmd = Main.sc.nextLine();
-                    // Split into [<command>, <arguments>]
-                    args = cmd.split(" ", 2);
-                    if (args.length == 1) {
-                        args = new String[] { args[0], "" };
-                    }
-                    Integer id; // Index of definition
-                    String option; // Confirmation variable
-                    switch (args[0]) {
-                        case "help":
-                        case "h":
-                            System.out.println("(i) Edit commands:");
-                            System.out.println("(i) - (h)elp: Print this help.");
-                            System.out.println("(i) - (p)rint: Print the definitions.");
-                            System.out.println("(i) - (c)hange <id> <def>: Change the <id>th definition with <def>.");
-                            System.out.println("(i) - (d)elete <id>: Delete the <id>th definition.");
-                            System.out.println("(i) - (q)uit: Quit the edit menu.");
-                            break;
-
-                        case "print":
-                        case "p":
-                        case "":
-                            for (int i = 0; i < val.length; i++) {
-                                System.out.println("(i) - " + (i + 1) + ". " + val[i]);
-                            }
-                            System.out.println("----");
-                            break;
-
-                        case "change":
-                        case "c":
-                            subargs = args[1].split(" ", 2);
-                            if (subargs.length < 2) {
-                                System.out.println("(!) Missing arguments. Correct syntax is 'change <id> <def>'.");
-                            } else {
-                                id = Integer.parseInt(subargs[0]);
-                                if (id < 1 || id > val.length) {
-                                    System.out.println(
-                                            "(!) Invalid index, the possible range is [1," + val.length + "].");
-                                } else {
-                                    val[--id] = subargs[1];
-                                    data.replace(entry.getKey(), val);
-                                    System.out.println("(i) Definition changed.");
-                                }
-                            }
-                            modified = true;
-                            break;
-
-                        case "delete":
-                        case "d":
-                            // Split into 2 to discard any remaining arguments in subargs[1]
-                            subargs = args[1].split(" ", 2);
-                            id = Integer.parseInt(subargs[0]);
-                            if (id < 1 || id > val.length) {
-                                System.out.println("(!) Invalid index, the possible range is [1," + val.length + "].");
-                            } else {
-                                System.out.println("(@) Deleting '" + val[--id] + "'...");
-                                System.out.println("(?) Do you want to delete this definition? (y/N)");
-                                do {
-                                    System.out.print(" > ");
-                                    option = Main.sc.nextLine();
-                                    switch (option) {
-                                        case "yes":
-                                        case "y":
-                                            String[] newVal = new String[val.length - 1];
-                                            System.arraycopy(val, 0, newVal, 0, id);
-                                            System.arraycopy(val, id + 1, newVal, id, val.length - id - 1);
-                                            val = newVal;
-                                            data.replace(entry.getKey(), val);
-                                            System.out.println("(i) Definition deleted.");
-                                            break;
-
-                                        case "no":
-                                        case "n":
-                                        case "":
-                                            // Do nothing
-                                            break;
-
-                                        default:
-                                            System.out.println("(!) Unknown option '" + option + "'.");
-                                            option = "?";
-                                            break;
-                                    }
-                                } while (option == "?");
-                            }
-                            modified = true;
-                            break;
-
-                        case "quit":
-                        case "q":
-                            listening = false;
-                            break;
-
-                        default:
-                            System.out.println("(!) Unknown command '" + cmd + "'.");
-                            break;
-                    }
+    public synchronized void Dedupe(String arg) {
+        Consumer<Deduper.Finding> report = finding -> System.out.println("(i) - " + finding);
+        Deduper deduper;
+        if (arg.equals("merge")) {
+            CheckWritable();
+        }
+        if (arg.isEmpty() || arg.equals("merge")) {
+            System.out.println("(@) Looking for duplicates in glossary...");
+            deduper = new Deduper(arg.equals("merge"), report);
+            for (Map.Entry<String, String[]> entry : data.entrySet()) {
+                String[] values = deduper.Add(entry.getKey(), entry.getValue());
+                if (arg.equals("merge") && values.length != entry.getValue().length) {
+                    entry.setValue(values);
+                    modified = true;
+                    Reindex(entry.getKey());
                 }
-                break;
+            }
+            Commit();
+        } else {
+            System.out.println("(@) Looking for duplicates in '" + arg + "'...");
+            try {
+                deduper = Deduper.Scan(arg, report);
+            } catch (IOException e) {
+                System.out.println("(!) Error reading file.\n");
+                return;
             }
         }
-        if (!exist) {
-            System.out.println("(!) Slang word " + key + " not found.");
-        }
+        System.out.println("(i) Done.");
+        System.out.println("(i) Duplicated definitions " + (arg.equals("merge") ? "merged" : "found") + ": "
+                + deduper.getMerged());
+        System.out.println("(i) Keywords with the same definitions as another: " + deduper.getExact());
+        System.out.println("(i) Keywords with nearly the same definitions as another: " + deduper.getNear());
         System.out.println();
     }
 
     /**
-     * Delete a slang word from glossary. If an entry exist, ask the user to
-     *  confirm deletion. If not, abort.
+     * Split the glossary into hash-partitioned shard files (see ShardedStore):
+     * the base layer into their csv files, the changes into their change logs.
+     * The glossary is then read from the shards instead of its csv or compressed
+     * file, which is removed.
      * 
-     * @param key keyword to remove from glossary
+     * @param count number of shards
      */
-    public void DeleteSlang(String key) {
-        Boolean deleted = false, exist = false;
-        // Enter data (if no args given)
-        if (key == "") {
-            System.out.println("(?) Enter keyword...");
-            System.out.print(" > ");
-            key = Main.sc.nextLine();
-        }
-        // Check existing
-        for (Map.Entry<String, String[]> entry : data.entrySet()) {
-            if (entry.getKey().equals(key)) {
-                exist = true;
-                String option = "";
-                System.out.print("(?) Found '" + entry.getKey() + "': ");
-                for (String str : entry.getValue()) {
-                    System.out.print(str + " || ");
-                }
-                System.out.println();
-                System.out.println("(?) Are you sure to delete? (y/N)");
-                do {
-                    System.out.print(" > ");
-                    option = Main.sc.nextLine();
-                    switch (option) {
-                        case "yes":
-                        case "y":
-                            data.remove(key);
-                            deleted = true;
-                            break;
-
-                        case "no":
-                        case "n":
-                        case "":
-                            System.out.println("(i) Deleting cancelled.");
-                            break;
-
-                        default:
-                            System.out.println("(!) Unknown option '" + option + "'. Valid ones are 'y' and 'n'.");
-                            option = "?";
-                            break;
-                    }
-                } while (option == "?");
-                break;
-            }
+    public synchronized void Shard(Integer count) {
+        if (shards != null) {
+            System.out.println("(!) The glossary is already split into " + shards.getShardCount()
+                    + " shards. Reshard it offline with 'java ShardedStore " + path + " <number>'.\n");
+            return;
         }
-        if (deleted) {
-            System.out.println("(i) Slang word deleted from glossary.");
-            modified = true;
-        } else if (!exist) {
-            System.out.println("(i) Slang word not exists.");
+        System.out.println("(@) Splitting glossary into " + count + " shards...");
+        String basepath = getBasePath();
+        try {
+            shards = ShardedStore.Create(getFileName(), data.getBase(), getChanges(), count);
+        } catch (IOException e) {
+            System.out.println("(!) Error writing shards.\n");
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println("(!) " + e.getMessage() + "\n");
+            return;
         }
-        System.out.println();
-    }
-
-    /**
-     * Restore the old glossary by re-reading the 'path'. This will override the
-     * current csv with a new one.
-     */
-    public void Reset() {
-        String csvpath = getFileName() + ".csv";
-        System.out.println("(?) Do you want to reset the glossary? All changes made will be lost. (y/N)");
-        String option;
-        do {
-            System.out.print(" > ");
-            option = Main.sc.nextLine();
-            switch (option) {
-                case "yes":
-                case "y":
-                    try {
-                        Files.delete(Path.of(csvpath));
-                        Read();
-                    } catch (IOException e) {
-                        System.out.println("(!) Error reading file.");
-                    }
-                    break;
-
-                case "no":
-                case "n":
-                case "":
-                    System.out.println("(i) Reseting cancelled.");
-                    System.out.println();
-                    break;
-
-                default:
-                    System.out.println("(!) Unknown option '" + option + "'.");
-                    option = "?";
-                    break;
-            }
-        } while (option == "?");
+        // Same entries, now read from the shards: versions still apply to them
+        PersistentTreeMap current = data.Snapshot();
+        data = new LayeredMap(shards.getBase());
+        data.Checkout(current);
+        base_modified = false;
+        segments = null;
+        new File(basepath).delete();
+        new File(getFileName() + ".overlay.csv").delete();
+        WriteKeywordFilter();
+        System.out.println("(i) Created '" + getBasePath() + "', removed '" + basepath + "'.\n");
     }
 
     /**
      * Output a random slang word.
      */
-    public void Random() {
+    public synchronized void Random() {
         // REF:
         // https://stackoverflow.com/questions/12385284/how-to-select-a-random-key-from-a-hashmap-in-java/12385392
         Random random = new Random();
-        String key = data_id.get(random.nextInt(data_id.size()));
+        String key = RandomKey(random);
+        if (key == null) {
+            System.out.println("(!) The glossary is empty.\n");
+            return;
+        }
         TreeMap<String, String[]> randomMap = new TreeMap<String, String[]>();
         randomMap.put(key, data.get(key));
         System.out.println("(i) On this day slang word:");
@@ -685,7 +1952,57 @@ public class Glossary {
         Print(randomMap);
     }
 
+    /**
+     * Pick a random slang word, from the sampling table of the index segments if
+     * possible. Slang words added since the csv file was written are picked
+     * from the overlay.
+     * 
+     * @param random the random generator
+     * @return the slang word, or null if the glossary is empty
+     */
+    private String RandomKey(Random random) {
+        if (data.isEmpty()) {
+            return null;
+        }
+        if (segments != null) {
+            ArrayList<String> added = new ArrayList<String>();
+            for (Map.Entry<String, String[]> entry : data.getOverlay().entrySet()) {
+                if (!data.IsRemoved(entry.getKey()) && !data.getBase().containsKey(entry.getKey())) {
+                    added.add(entry.getKey());
+                }
+            }
+            try {
+                int sampled = segments.getSampleSize();
+                for (int attempt = 0; attempt < 100 && sampled + added.size() > 0; attempt++) {
+                    int i = random.nextInt(sampled + added.size());
+                    String key = i < sampled ? segments.Sample(i) : added.get(i - sampled);
+                    if (data.containsKey(key)) {
+                        return key; // Not deleted since
+                    }
+                }
+            } catch (IOException e) {
+                SegmentsFailed(e);
+            }
+        }
+        // Without segments (or if most sampled slang words were deleted)
+        ArrayList<String> keys = new ArrayList<String>(data.keySet());
+        return keys.get(random.nextInt(keys.size()));
+    }
+
     public void Game(String type, Integer stages) {
+        Game(type, stages, "");
+    }
+
+    /**
+     * Enter the game menu.
+     * 
+     * @param type    "key", "def", or "review" for the spaced-repetition quiz
+     * @param stages  number of questions
+     * @param learner name of the learner whose review schedule is used, the
+     *                user's name if empty
+     */
+    public void Game(String type, Integer stages, String learner) {
+        this.learner = learner.isBlank() ? System.getProperty("user.name", "default") : learner.trim();
         Boolean done = false;
         Integer maxStage = 20, minStage = 1, score = 0;
         String cmd;
@@ -695,7 +2012,7 @@ public class Glossary {
         }
         System.out.println("(i) Game commands:");
         System.out.println("(i) - (p)lay: Play the game.");
-        System.out.println("(i) - (c)hange key/def: Change game.");
+        System.out.println("(i) - (c)hange key/def/review: Change game.");
         System.out.println("(i) - (s)etstages <number>: Set number of stage, possible range is [" + minStage + ","
                 + maxStage + "].");
         System.out.println("(i) - (h)elp: Print this help.");
@@ -711,12 +2028,16 @@ public class Glossary {
             switch (cmd) {
                 case "play":
                 case "p":
-                    if (type == "key") {
-                        score = GameKey(stages);
+                    if (type.equals("review")) {
+                        score = GameReview(stages);
                     } else {
-                        score = GameDef(stages);
+                        if (type.equals("key")) {
+                            score = GameKey(stages);
+                        } else {
+                            score = GameDef(stages);
+                        }
+                        score = score * 100 / stages;
                     }
-                    score = score * 100 / stages;
                     System.out.println("-- Game complete! Your score: " + score + ".");
                     break;
 
@@ -743,7 +2064,7 @@ public class Glossary {
                 case "h":
                     System.out.println("(i) Game commands:");
                     System.out.println("(i) - (p)lay: Play the game.");
-                    System.out.println("(i) - (c)hange key/def: Change game.");
+                    System.out.println("(i) - (c)hange key/def/review: Change game.");
                     System.out.println("(i) - (s)etstages <number>: Set number of stage, possible range is [" + minStage
                             + "," + maxStage + "].");
                     System.out.println("(i) - (h)elp: Print this help.");
@@ -764,30 +2085,82 @@ public class Glossary {
     }
 
     /**
-     * Generate a randomized list of unique glossary entries for a quiz. Using
-     * HashMap instead of TreeMap to store unsorted data. If glossary size is
-     * smaller than stages, there will be duplicate entries.
+     * Update the derived indexes after a keyword has been added, changed or
+     * removed.
      * 
-     * @param stages size of the return HashMap
-     * @return a HashMap containing random glossary entries
+     * @param key the modified keyword
      */
-    private HashMap<String, String> GenerateQuiz(Integer stages) {
-        Random random = new Random();
-        String key;
-        HashMap<String, String> quizMap = new HashMap<String, String>();
-        Boolean overlap = false;
-        if (data.size() < stages) {
-            overlap = true;
+    private void Reindex(String key) {
+        quiz_engine = null;
+        if (hot_results != null) {
+            // Cached results are found again on their next search
+            hot_results.clear();
+        }
+        if (keyword_set != null) {
+            if (data.containsKey(key)) {
+                keyword_set.add(key);
+            } else {
+                keyword_set.remove(key);
+            }
+        }
+        if (keyword_filter != null) {
+            if (data.containsKey(key)) {
+                if (!keyword_filter.MightContain(key)) {
+                    keyword_filter.Add(key);
+                }
+            } else {
+                keyword_filter.Remove();
+            }
+            if (keyword_filter.IsWorn()) {
+                keyword_filter = null; // Built again on next search
+            }
         }
-        while (quizMap.size() < stages) {
-            key = data_id.get(random.nextInt(data_id.size()));
-            if (overlap || !quizMap.containsKey(key)) {
-                // Get random def
-                Integer id = random.nextInt(data.get(key).length);
-                quizMap.put(key, data.get(key)[id]);
+        if (phonetic != null) {
+            if (data.containsKey(key)) {
+                phonetic.Put(key);
+            } else {
+                phonetic.Remove(key);
+            }
+        }
+        if (similarity != null) {
+            similarity.Put(key, data.get(key));
+        }
+        if (corpus_stats != null) {
+            corpus_stats.Put(key, data.get(key));
+        }
+        if (replication != null) {
+            try {
+                replication.Append(key, data.get(key));
+            } catch (IOException e) {
+                ReplicationFailed(e);
             }
         }
-        return quizMap;
+    }
+
+    /**
+     * Get the similarity index over the definitions, building it on first use.
+     * 
+     * @return the similarity index
+     */
+    public synchronized SimilarityIndex getSimilarityIndex() {
+        if (similarity == null) {
+            similarity = new SimilarityIndex(data);
+        }
+        return similarity;
+    }
+
+    /**
+     * Get the quiz engine of the current glossary data. The engine is rebuilt
+     * after the glossary has been modified, and picks distractors with similar
+     * definitions.
+     * 
+     * @return the quiz engine
+     */
+    public synchronized QuizEngine getQuizEngine() {
+        if (quiz_engine == null) {
+            quiz_engine = new QuizEngine(data, System.nanoTime(), getSimilarityIndex());
+        }
+        return quiz_engine;
     }
 
     /**
@@ -798,8 +2171,7 @@ public class Glossary {
      */
     private Integer GameKey(Integer stages) {
         System.out.println("-- Welcome to Quiz Game: Slang word");
-        HashMap<String, String> quizMap = GenerateQuiz(stages);
-        return GameStart(stages, quizMap, "key");
+        return GameStart(getQuizEngine().Generate(stages, "key"), "key");
     }
 
     /**
@@ -810,138 +2182,211 @@ public class Glossary {
      */
     private Integer GameDef(Integer stages) {
         System.out.println("-- Welcome to Quiz Game: Definition");
-        HashMap<String, String> quizMap = GenerateQuiz(stages);
-        return GameStart(stages, quizMap, "def");
+        return GameStart(getQuizEngine().Generate(stages, "def"), "def");
     }
 
     /**
-     * Start the game and return number of correct answers.
+     * Initialize quiz game: spaced-repetition review of the learner's cards (see
+     * ReviewScheduler). The cards due come first, the most overdue first, then
+     * slang words new to the learner fill the remaining questions. Each answer
+     * schedules the next review of its card.
      * 
-     * @param stages  number of questions
-     * @param quizMap availible questions
-     * @param type    type of game
-     * @return the score (correct answers)
+     * @param stages number of questions
+     * @return the score (percentage of correct answers)
      */
-    private Integer GameStart(Integer stages, HashMap<String, String> quizMap, String type) {
-        Random random = new Random();
-        String[] key = quizMap.keySet().toArray(new String[stages]), def = quizMap.values().toArray(new String[stages]);
-        Integer score = 0;
-        for (int i = 0; i < quizMap.size(); i++) {
-            // Ask questions
-            if (type == "key") {
-                System.out.println((i + 1) + ". " + def[i] + ":");
-            } else {
-                System.out.println((i + 1) + ". What is " + key[i] + "?");
-            }
-            Integer ans = random.nextInt(4);
-            ArrayList<String> ansStrings = new ArrayList<String>();
-            // Create options
-            for (int a = 0; a < 4; a++) {
-                if (a == ans) {
-                    // The correct answer
-                    ansStrings.add(key[i]);
+    private Integer GameReview(Integer stages) {
+        ReviewScheduler scheduler = getReviewScheduler();
+        if (scheduler == null) {
+            return 0;
+        }
+        QuizEngine engine = getQuizEngine();
+        long now = System.currentTimeMillis() / 1000;
+        Integer due = scheduler.CountDue(now);
+        ArrayList<String> asked = new ArrayList<String>();
+        try {
+            for (String key : scheduler.PeekDue(now, stages)) {
+                if (data.containsKey(key)) {
+                    asked.add(key);
                 } else {
-                    Boolean added = false;
-                    while (!added) {
-                        // The wrong answers
-                        String badKey = data_id.get(random.nextInt(data_id.size()));
-                        if (type == "key") {
-                            if (!ansStrings.contains(badKey) || (data.size() < stages)) {
-                                ansStrings.add(badKey);
-                                added = true;
-                            }
-                        } else {
-                            Integer id = random.nextInt(data.get(badKey).length);
-                            String badDef = data.get(badKey)[id];
-                            if (!ansStrings.contains(badDef) || (data.size() < stages)) {
-                                ansStrings.add(badDef);
-                                added = true;
-                            }
-                        }
-                    }
+                    scheduler.Forget(key); // Deleted from the glossary
                 }
-                switch (a) {
-                    case 0:
-                        System.out.print("A. ");
-                        break;
-
-                    case 1:
-                        System.out.print("B. ");
-                        break;
-
-                    case 2:
-                        System.out.print("C. ");
-                        break;
-
-                    case 3:
-                        System.out.print("D. ");
-                        break;
+            }
+            Integer reviews = asked.size();
+            // New cards, as long as the learner hasn't seen every slang word
+            SplittableRandom random = new SplittableRandom();
+            for (int attempt = 0; asked.size() < stages && attempt < stages * 20
+                    && scheduler.size() + asked.size() - reviews < engine.size(); attempt++) {
+                String key = engine.getKey(random.nextInt(engine.size()));
+                if (!scheduler.Contains(key) && !asked.contains(key)) {
+                    asked.add(key);
                 }
-                System.out.println(ansStrings.get(a) + ".");
-            }
-            String option = "";
-            while (option == "") {
-                System.out.print(" > ");
-                option = Main.sc.nextLine();
-                switch (option) {
-                    case "a":
-                    case "A":
-                    case "1":
-                        option = "0";
-                        break;
-
-                    case "b":
-                    case "B":
-                    case "2":
-                        option = "1";
-                        break;
-
-                    case "c":
-                    case "C":
-                    case "3":
-                        option = "2";
-                        break;
-
-                    case "d":
-                    case "D":
-                    case "4":
-                        option = "3";
-                        break;
-
-                    default:
-                        System.out.println("(!) Unknown option '" + option + "'. Valid ones are A/B/C/D/1/2/3/4.");
-                        option = "";
-                        break;
+            }
+            System.out.println("-- Welcome to Quiz Game: Review (" + learner + ")");
+            System.out.println("-- " + reviews + " due of " + due + ", " + (asked.size() - reviews) + " new, "
+                    + scheduler.size() + " cards in total.");
+            if (asked.isEmpty()) {
+                return 0;
+            }
+            QuizEngine.Question[] quiz = engine.Generate(asked, "key");
+            Integer score = 0;
+            for (int i = 0; i < quiz.length; i++) {
+                Boolean correct = GameAsk(quiz[i], i, "key");
+                if (correct) {
+                    score++;
                 }
+                // SM-2 quality: recalled (4) or not (1)
+                scheduler.Review(quiz[i].key, correct ? 4 : 1, System.currentTimeMillis() / 1000);
             }
-            // Check if chosen answer is the correct one
-            // (also accounted for duplicated answers).
-            Integer opt = Integer.parseInt(option);
-            if (ansStrings.get(opt) == ansStrings.get(ans)) {
-                System.out.println(" * CORRECT!!!");
+            return quiz.length == 0 ? 0 : score * 100 / quiz.length;
+        } catch (IOException e) {
+            System.out.println("(!) Error writing review schedule: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Open the review schedule of the current learner, saved next to the glossary
+     * file as "&lt;name&gt;.&lt;learner&gt;.srs".
+     * 
+     * @return the schedule, or null if it can't be opened
+     */
+    private ReviewScheduler getReviewScheduler() {
+        if (read_only) {
+            System.out.println("(!) A follower can't save review schedules, review on the writer.");
+            return null;
+        }
+        String srspath = getFileName() + "." + learner.replaceAll("[^\\w-]", "_") + ".srs";
+        try {
+            if (review_scheduler != null && !srspath.equals(review_path)) {
+                review_scheduler.Close();
+                review_scheduler = null;
+            }
+            if (review_scheduler == null) {
+                review_scheduler = ReviewScheduler.Open(srspath);
+                review_path = srspath;
+            }
+        } catch (IOException e) {
+            System.out.println("(!) Error opening review schedule: " + e.getMessage());
+            review_scheduler = null;
+        }
+        return review_scheduler;
+    }
+
+    /**
+     * Start the game and return number of correct answers.
+     * 
+     * @param quiz questions generated by the quiz engine
+     * @param type type of game
+     * @return the score (correct answers)
+     */
+    private Integer GameStart(QuizEngine.Question[] quiz, String type) {
+        Integer score = 0;
+        for (int i = 0; i < quiz.length; i++) {
+            if (GameAsk(quiz[i], i, type)) {
                 score++;
-            } else {
-                System.out.print(" * Wrong answer... The correct one is ");
-                switch (ans) {
-                    case 0:
-                        System.out.print("A. ");
-                        break;
-
-                    case 1:
-                        System.out.print("B. ");
-                        break;
-
-                    case 2:
-                        System.out.print("C. ");
-                        break;
-
-                    case 3:
-                        System.out.print("D. ");
-                        break;
-                }
-                System.out.println(ansStrings.get(ans) + ".");
             }
         }
         return score;
     }
+
+    /**
+     * Ask a question and check the answer.
+     * 
+     * @param question the question
+     * @param i        index of the question in the quiz
+     * @param type     type of game
+     * @return true if the answer is correct
+     */
+    private Boolean GameAsk(QuizEngine.Question question, Integer i, String type) {
+        // Ask questions
+        if (type.equals("key")) {
+            System.out.println((i + 1) + ". " + question.def + ":");
+        } else {
+            System.out.println((i + 1) + ". What is " + question.key + "?");
+        }
+        Integer ans = question.answer;
+        // Print options
+        for (int a = 0; a < QuizEngine.OPTIONS; a++) {
+            switch (a) {
+                case 0:
+                    System.out.print("A. ");
+                    break;
+
+                case 1:
+                    System.out.print("B. ");
+                    break;
+
+                case 2:
+                    System.out.print("C. ");
+                    break;
+
+                case 3:
+                    System.out.print("D. ");
+                    break;
+            }
+            System.out.println(question.options[a] + ".");
+        }
+        String option = "";
+        while (option == "") {
+            System.out.print(" > ");
+            option = Main.sc.nextLine();
+            switch (option) {
+                case "a":
+                case "A":
+                case "1":
+                    option = "0";
+                    break;
+
+                case "b":
+                case "B":
+                case "2":
+                    option = "1";
+                    break;
+
+                case "c":
+                case "C":
+                case "3":
+                    option = "2";
+                    break;
+
+                case "d":
+                case "D":
+                case "4":
+                    option = "3";
+                    break;
+
+                default:
+                    System.out.println("(!) Unknown option '" + option + "'. Valid ones are A/B/C/D/1/2/3/4.");
+                    option = "";
+                    break;
+            }
+        }
+        // Check if chosen answer is the correct one
+        // (also accounted for duplicated answers).
+        Integer opt = Integer.parseInt(option);
+        if (question.IsCorrect(opt)) {
+            System.out.println(" * CORRECT!!!");
+            return true;
+        }
+        System.out.print(" * Wrong answer... The correct one is ");
+        switch (ans) {
+            case 0:
+                System.out.print("A. ");
+                break;
+
+            case 1:
+                System.out.print("B. ");
+                break;
+
+            case 2:
+                System.out.print("C. ");
+                break;
+
+            case 3:
+                System.out.print("D. ");
+                break;
+        }
+        System.out.println(question.options[ans] + ".");
+        return false;
+    }
 }
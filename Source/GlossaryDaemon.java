@@ -0,0 +1,273 @@
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Keep a glossary loaded in a resident process serving commands over a Unix
+ * domain socket ("&lt;name&gt;.sock" next to the glossary file), so a command
+ * costs a socket round-trip instead of starting a JVM and loading the glossary:
+ * <ul>
+ * <li><code>java Main &lt;glossary&gt; --daemon</code> starts the daemon.</li>
+ * <li><code>java Main --client &lt;glossary&gt; [command]</code> runs a
+ * command in the daemon and prints its output, or opens an interactive session
+ * without command. The input of the client is forwarded, so commands asking
+ * questions work too. <code>--stop</code> as command stops the daemon.</li>
+ * </ul>
+ * The protocol is plain text: the client sends the command on the first line,
+ * then its input, and the daemon sends the output back and closes the
+ * connection when the command is done. Any client speaking it works, e.g.
+ * <code>echo 'search key lol' | nc -U Data/slang.sock</code>.
+ * <p>
+ * Clients are served one at a time, with the console (System.out and Main.sc)
+ * redirected to the connection. A client sending nothing for READ_TIMEOUT_MS
+ * while the daemon waits for its input is disconnected, so it can't hold the
+ * daemon. Changes made by a single command are written when it is done; in a
+ * session, they are saved when quitting, as usual.
+ */
+public class GlossaryDaemon {
+    public static final Integer READ_TIMEOUT_MS = 60 * 1000;
+
+    private Glossary glossary;
+    private Path socket;
+    private ServerSocketChannel server;
+    private Boolean running = true;
+    private Timer timer = new Timer("daemon-timeout", true);
+
+    private GlossaryDaemon(Glossary glossary) {
+        this.glossary = glossary;
+        this.socket = getSocket(glossary.path);
+    }
+
+    /**
+     * Get the socket of the daemon serving a glossary.
+     *
+     * @param path path of the glossary file
+     * @return path of the socket, next to the glossary file
+     */
+    public static Path getSocket(String path) {
+        return Path.of(path.replace('\\', '/').replaceFirst("[.][^.]+$", "") + ".sock").toAbsolutePath();
+    }
+
+    /**
+     * Serve a glossary until a client stops the daemon.
+     *
+     * @param glossary the glossary
+     */
+    public static void Run(Glossary glossary) {
+        GlossaryDaemon daemon = new GlossaryDaemon(glossary);
+        try {
+            daemon.Listen();
+        } catch (IOException e) {
+            System.out.println("(!) Error listening on '" + daemon.socket + "': " + e.getMessage());
+        }
+    }
+
+    private void Listen() throws IOException {
+        if (Files.exists(socket)) {
+            try {
+                SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+                System.out.println("(!) Another daemon is already listening on '" + socket + "'.");
+                return;
+            } catch (IOException e) {
+                Files.delete(socket); // Left by a daemon that didn't stop cleanly
+            }
+        }
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        System.out.println("(i) Listening on '" + socket + "'. Stop with 'java Main --client " + glossary.path
+                + " --stop'.\n");
+        PrintStream console = System.out;
+        Scanner input = Main.sc;
+        try {
+            while (running) {
+                SocketChannel client = server.accept();
+                try {
+                    Serve(client);
+                } finally {
+                    System.setOut(console);
+                    Main.sc = input;
+                    client.close();
+                }
+            }
+        } finally {
+            server.close();
+            Files.deleteIfExists(socket);
+        }
+        System.out.println("(i) Daemon stopped.");
+    }
+
+    /**
+     * Run the command of a client, with the console redirected to it.
+     */
+    private void Serve(SocketChannel client) {
+        PrintStream out = new PrintStream(new ChannelOutput(client), true, StandardCharsets.UTF_8);
+        InputStream in = new FilterInputStream(new ChannelInput(client)) {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                // Prompts are printed without new line: send them before waiting for input
+                out.flush();
+                // Closing the connection ends the read, as if the client closed its input
+                TimerTask timeout = new TimerTask() {
+                    @Override
+                    public void run() {
+                        try {
+                            client.close();
+                        } catch (IOException e) {
+                            // Already closed
+                        }
+                    }
+                };
+                timer.schedule(timeout, READ_TIMEOUT_MS);
+                try {
+                    return super.read(b, off, len);
+                } finally {
+                    timeout.cancel();
+                }
+            }
+        };
+        Main.sc = new Scanner(in, "UTF-8");
+        System.setOut(out);
+        try {
+            if (!Main.sc.hasNextLine()) {
+                return; // Closed or timed out without sending a command
+            }
+            String cmd = Main.sc.nextLine().trim();
+            if (cmd.equals("--stop")) {
+                if (glossary.modified) {
+                    glossary.Write();
+                    glossary.modified = false;
+                }
+                System.out.println("(i) Daemon stopping.");
+                running = false;
+            } else if (cmd.isEmpty()) {
+                Main.getCommand(glossary, new String[0]);
+            } else {
+                Main.runCommand(glossary, cmd);
+                if (glossary.modified) {
+                    glossary.Write();
+                    glossary.modified = false;
+                }
+            }
+        } catch (NoSuchElementException e) {
+            // The client closed its input while a command was asking for more
+            System.out.println("\n(!) Input closed, command cancelled.");
+        } catch (IOException e) {
+            System.out.println("(!) Error writing file: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Keep serving the next clients
+            System.out.println("(!) Command failed: " + e);
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Run a command in the daemon serving a glossary, forwarding the input of
+     * this process to it and printing its output.
+     *
+     * @param path path of the glossary file
+     * @param cmd  the command, empty for an interactive session
+     */
+    public static void Client(String path, String cmd) {
+        Path socket = getSocket(path);
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.out.println("(!) No daemon is listening on '" + socket + "'. Start one with 'java Main " + path
+                    + " --daemon'.");
+            return;
+        }
+        try {
+            OutputStream out = new ChannelOutput(channel);
+            out.write((cmd + "\n").getBytes(StandardCharsets.UTF_8));
+            Thread forward = new Thread(() -> {
+                byte[] buffer = new byte[4096];
+                try {
+                    int n;
+                    while ((n = System.in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                    channel.shutdownOutput();
+                } catch (IOException e) {
+                    // The daemon closed the connection
+                }
+            }, "client-input");
+            forward.setDaemon(true);
+            forward.start();
+            InputStream in = new ChannelInput(channel);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                System.out.write(buffer, 0, n);
+                System.out.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("(!) Connection to the daemon lost: " + e.getMessage());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Stream reading a socket channel. Unlike Channels.newInputStream, reading
+     * doesn't block writing to the same channel from another thread.
+     */
+    private static class ChannelInput extends InputStream {
+        private final SocketChannel channel;
+
+        private ChannelInput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    /**
+     * Stream writing a socket channel, see ChannelInput.
+     */
+    private static class ChannelOutput extends OutputStream {
+        private final SocketChannel channel;
+
+        private ChannelOutput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
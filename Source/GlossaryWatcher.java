@@ -0,0 +1,103 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch the source file of a glossary and apply its changes while the glossary
+ * keeps being used. The file is split into content-defined chunks (see
+ * SourceIndex), so only the chunks that changed are parsed, and only the
+ * keywords added, changed or removed are applied to the glossary.
+ */
+public class GlossaryWatcher implements Runnable {
+    private static final Long SETTLE_MS = 200L;
+
+    private Glossary glossary;
+    private Path source;
+    private SourceIndex index;
+    private WatchService service;
+    private Thread thread;
+
+    /**
+     * Start watching the source file of a glossary. The starting point is the
+     * content the glossary is up to date with, or else the current content of the
+     * file.
+     *
+     * @param glossary the glossary to update
+     * @throws IOException
+     */
+    public GlossaryWatcher(Glossary glossary) throws IOException {
+        this.glossary = glossary;
+        source = Path.of(glossary.path).toAbsolutePath();
+        index = glossary.getSourceIndex();
+        if (index == null) {
+            index = SourceIndex.Scan(source.toString(), null);
+        }
+        service = FileSystems.getDefault().newWatchService();
+        source.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this, "glossary-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching.
+     */
+    public void Close() {
+        thread.interrupt();
+        try {
+            service.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                Boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (source.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // Wait for the writer to finish, merging the events it causes
+                Thread.sleep(SETTLE_MS);
+                WatchKey more;
+                while ((more = service.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                Reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Find the changes of the source file and apply them to the glossary.
+     */
+    private void Reload() {
+        SourceIndex.Changes changes = new SourceIndex.Changes();
+        try {
+            index = index.Rescan(source.toString(), changes);
+        } catch (IOException e) {
+            Main.console.println("(!) Error reading '" + glossary.path + "'.");
+            return;
+        }
+        if (changes.IsEmpty()) {
+            return;
+        }
+        glossary.Apply(changes.put, changes.removed, index);
+        Main.console.println("\n(i) '" + glossary.path + "' changed: " + changes.put.size() + " slang words updated, "
+                + changes.removed.size() + " removed (" + changes.parsed + "/" + changes.total
+                + " chunks parsed).");
+    }
+}
@@ -0,0 +1,474 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Import a glossary file into an existing glossary in bulk. The file is read as
+ * a stream and sorted by keyword with an external merge sort: entries are
+ * gathered until the memory budget is reached, sorted and spilled into a
+ * temporary run file, then all runs are merged. The sorted stream is merged
+ * with the (already sorted) glossary in a single pass, applying the same
+ * conflict policy to every existing keyword. New keywords are held within the
+ * same budget, and spilled too until the pass is over.
+ * <p>
+ * Supported formats are the user's format (keyword`def1| def2, with
+ * continuation lines), csv (files ending with ".csv", current or legacy format
+ * of Glossary.Write) and JSON Lines (".jsonl"), both read with Exporter.Reader,
+ * and compressed files (".ugz", read block by block with BlockFile).
+ */
+public class Importer {
+    public static final Long DEFAULT_BUDGET = 8L << 20; // chars held in memory
+
+    /**
+     * What to do when an imported keyword already exists.
+     */
+    public enum Policy {
+        OVERWRITE, APPEND, SKIP;
+
+        /**
+         * @param name "overwrite", "append" or "skip"
+         * @return the policy
+         */
+        public static Policy Parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private Policy policy;
+    private Long budget;
+    private Integer added = 0, overwritten = 0, appended = 0, skipped = 0, runs = 0;
+
+    /**
+     * @param policy what to do when an imported keyword already exists
+     * @param budget maximum number of characters of entries held in memory
+     *               while sorting
+     */
+    public Importer(Policy policy, Long budget) {
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    public Integer getAdded() {
+        return added;
+    }
+
+    public Integer getOverwritten() {
+        return overwritten;
+    }
+
+    public Integer getAppended() {
+        return appended;
+    }
+
+    public Integer getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return number of sorted runs spilled to disk (0 if the file fit in memory)
+     */
+    public Integer getRuns() {
+        return runs;
+    }
+
+    /**
+     * An imported keyword and its definitions.
+     */
+    private static class Entry {
+        private String key;
+        private String[] defs;
+
+        private Entry(String key, String[] defs) {
+            this.key = key;
+            this.defs = defs;
+        }
+
+        private Long Size() {
+            long size = key.length();
+            for (String def : defs) {
+                size += def.length();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Import a file into a glossary.
+     *
+     * @param path    path of the file to import
+     * @param data    the glossary entries, sorted by keyword, modified in place
+     * @param changed called with every added or modified keyword
+     * @throws IOException
+     */
+    public void Import(String path, Map<String, String[]> data, Consumer<String> changed) throws IOException {
+        ArrayList<File> files = new ArrayList<File>();
+        try {
+            Iterator<Entry> sorted = Sort(Parse(path), files);
+            Merge(sorted, data, changed, files);
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Read a file entry by entry. Definitions are trimmed, continuation lines of
+     * the user's format are appended to the previous keyword.
+     *
+     * @param path path of the file
+     * @return an iterator over the entries, in file order
+     * @throws IOException
+     */
+    private Iterator<Entry> Parse(String path) throws IOException {
+        String lower = path.toLowerCase();
+        if (lower.endsWith(".csv") || lower.endsWith(".jsonl") || lower.endsWith(".json")) {
+            return Decode(new Exporter.Reader(path, Exporter.Format.Of(path)));
+        }
+        if (lower.endsWith(".ugz")) {
+            Iterator<Map.Entry<String, String[]>> entries = BlockFile.Open(path).Iterate();
+            return new Iterator<Entry>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Entry next() {
+                    Map.Entry<String, String[]> entry = entries.next();
+                    return new Entry(entry.getKey(), Trim(entry.getValue()));
+                }
+            };
+        }
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        br.readLine(); // Skip columns name
+        return new Iterator<Entry>() {
+            private Entry next = null, pending = null;
+            private Boolean done = false;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    next = Read();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = next;
+                next = null;
+                return entry;
+            }
+
+            private Entry Read() {
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        String[] sec = line.split("`", 2);
+                        if (sec.length >= 2) {
+                            Entry entry = pending;
+                            pending = new Entry(sec[0].trim(), Split(sec[1]));
+                            if (entry != null) {
+                                return entry;
+                            }
+                        } else if (pending != null && !line.isBlank()) {
+                            // Another definition of the above keyword
+                            String[] ext = Split(sec[0]), defs = Arrays.copyOf(pending.defs,
+                                    pending.defs.length + ext.length);
+                            System.arraycopy(ext, 0, defs, pending.defs.length, ext.length);
+                            pending.defs = defs;
+                        }
+                    }
+                    br.close();
+                    done = true;
+                    Entry entry = pending;
+                    pending = null;
+                    return entry;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Read a csv or JSON Lines file entry by entry.
+     *
+     * @param reader the opened file
+     * @return an iterator over the entries, in file order
+     */
+    private Iterator<Entry> Decode(Exporter.Reader reader) {
+        return new Iterator<Entry>() {
+            private String[] next = null;
+            private Boolean done = false;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    try {
+                        next = reader.Next();
+                        if (next == null) {
+                            done = true;
+                            reader.close();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String[] entry = next;
+                next = null;
+                return new Entry(entry[0].trim(), Trim(Arrays.copyOfRange(entry, 1, entry.length)));
+            }
+        };
+    }
+
+    /**
+     * @return the definitions trimmed, without blank ones
+     */
+    private static String[] Trim(String[] values) {
+        ArrayList<String> defs = new ArrayList<String>(values.length);
+        for (String value : values) {
+            if (!value.isBlank()) {
+                defs.add(value.trim());
+            }
+        }
+        return defs.toArray(new String[0]);
+    }
+
+    private static String[] Split(String defs) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (String def : defs.split("\\|")) {
+            def = def.trim();
+            if (!def.isEmpty()) {
+                result.add(def);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * Sort entries by keyword. If they don't fit in the memory budget, sorted
+     * runs are spilled into temporary files and merged lazily.
+     *
+     * @param entries entries in any order
+     * @param files   receives the temporary files to delete afterwards
+     * @return an iterator over the entries, sorted by keyword (stable for
+     *         repeated keywords)
+     * @throws IOException
+     */
+    private Iterator<Entry> Sort(Iterator<Entry> entries, List<File> files) throws IOException {
+        ArrayList<Entry> chunk = new ArrayList<Entry>();
+        long size = 0;
+        try {
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                chunk.add(entry);
+                size += entry.Size();
+                if (size >= budget) {
+                    files.add(Spill(chunk));
+                    chunk.clear();
+                    size = 0;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        chunk.sort((a, b) -> a.key.compareTo(b.key));
+        if (files.isEmpty()) {
+            return chunk.iterator();
+        }
+        if (!chunk.isEmpty()) {
+            files.add(Spill(chunk));
+        }
+        runs = files.size();
+        // K-way merge of the runs, ties broken by run order to keep file order
+        ArrayList<DataInputStream> inputs = new ArrayList<DataInputStream>();
+        PriorityQueue<Object[]> heap = new PriorityQueue<Object[]>((a, b) -> {
+            int cmp = ((Entry) a[0]).key.compareTo(((Entry) b[0]).key);
+            return cmp != 0 ? cmp : Integer.compare((Integer) a[1], (Integer) b[1]);
+        });
+        for (int i = 0; i < files.size(); i++) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(files.get(i))));
+            inputs.add(in);
+            Entry first = ReadRun(in);
+            if (first != null) {
+                heap.add(new Object[] { first, i });
+            }
+        }
+        return new Iterator<Entry>() {
+            @Override
+            public boolean hasNext() {
+                return !heap.isEmpty();
+            }
+
+            @Override
+            public Entry next() {
+                Object[] top = heap.poll();
+                Integer run = (Integer) top[1];
+                try {
+                    Entry following = ReadRun(inputs.get(run));
+                    if (following != null) {
+                        heap.add(new Object[] { following, run });
+                    } else {
+                        inputs.get(run).close();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return (Entry) top[0];
+            }
+        };
+    }
+
+    /**
+     * Sort a chunk of entries and write it into a temporary run file.
+     */
+    private File Spill(List<Entry> chunk) throws IOException {
+        chunk.sort((a, b) -> a.key.compareTo(b.key));
+        File file = File.createTempFile("glossary-import", ".run");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        for (Entry entry : chunk) {
+            WriteString(out, entry.key);
+            out.writeInt(entry.defs.length);
+            for (String def : entry.defs) {
+                WriteString(out, def);
+            }
+        }
+        out.close();
+        return file;
+    }
+
+    /**
+     * Write a string as its length in bytes and its UTF-8 bytes (writeUTF is
+     * limited to 64 KB).
+     */
+    private static void WriteString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String ReadString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Read the next entry of a run file.
+     *
+     * @return the entry, or null at the end of the run
+     */
+    private static Entry ReadRun(DataInputStream in) throws IOException {
+        String key;
+        try {
+            key = ReadString(in);
+        } catch (EOFException e) {
+            return null;
+        }
+        String[] defs = new String[in.readInt()];
+        for (int i = 0; i < defs.length; i++) {
+            defs[i] = ReadString(in);
+        }
+        return new Entry(key, defs);
+    }
+
+    /**
+     * Merge sorted entries into the glossary in a single pass over both.
+     * Existing keywords are updated through their map entries, new keywords are
+     * inserted after the pass. They come sorted, so they are gathered in chunks
+     * spilled like the runs of Sort, and read back in order.
+     *
+     * @param files receives the temporary files to delete afterwards
+     */
+    private void Merge(Iterator<Entry> sorted, Map<String, String[]> data, Consumer<String> changed,
+            List<File> files) throws IOException {
+        ArrayList<Entry> created = new ArrayList<Entry>();
+        ArrayList<File> spilled = new ArrayList<File>();
+        Entry last = null; // Last new keyword, repeated ones are next to each other
+        long size = 0;
+        Iterator<Map.Entry<String, String[]>> cursor = data.entrySet().iterator();
+        Map.Entry<String, String[]> current = cursor.hasNext() ? cursor.next() : null;
+        try {
+            while (sorted.hasNext()) {
+                Entry entry = sorted.next();
+                if (entry.defs.length == 0) {
+                    continue;
+                }
+                while (current != null && current.getKey().compareTo(entry.key) < 0) {
+                    current = cursor.hasNext() ? cursor.next() : null;
+                }
+                if (current != null && current.getKey().equals(entry.key)) {
+                    // Existing keyword
+                    switch (policy) {
+                        case OVERWRITE:
+                            current.setValue(entry.defs);
+                            overwritten++;
+                            break;
+
+                        case APPEND:
+                            current.setValue(Append(current.getValue(), entry.defs));
+                            appended++;
+                            break;
+
+                        case SKIP:
+                            skipped++;
+                            continue;
+                    }
+                    changed.accept(entry.key);
+                } else if (last != null && last.key.equals(entry.key)) {
+                    // Repeated keyword in the imported file
+                    last.defs = Append(last.defs, entry.defs);
+                    size += entry.Size();
+                } else {
+                    if (size >= budget) {
+                        spilled.add(Spill(created));
+                        files.add(spilled.get(spilled.size() - 1));
+                        created.clear();
+                        size = 0;
+                    }
+                    last = new Entry(entry.key, entry.defs);
+                    created.add(last);
+                    size += last.Size();
+                    added++;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (File file : spilled) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            Entry entry;
+            while ((entry = ReadRun(in)) != null) {
+                data.put(entry.key, entry.defs);
+                changed.accept(entry.key);
+            }
+            in.close();
+        }
+        for (Entry entry : created) {
+            data.put(entry.key, entry.defs);
+            changed.accept(entry.key);
+        }
+    }
+
+    /**
+     * Append definitions, skipping the ones already there.
+     */
+    private static String[] Append(String[] values, String[] extra) {
+        LinkedHashSet<String> merged = new LinkedHashSet<String>(Arrays.asList(values));
+        merged.addAll(Arrays.asList(extra));
+        return merged.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Bloom filter over the keywords of a glossary, case-folded, telling in a few
+ * nanoseconds that a term is not a keyword without reading the glossary. Each
+ * keyword sets HASHES bits of a bit array of BITS_PER_KEY bits per keyword
+ * (about 1% of false positives), picked by double hashing. A term none of
+ * whose bits are set is surely not a keyword; otherwise it may be one.
+ * <p>
+ * Keywords can be added but not removed: removed keywords only count as
+ * stale (see getStale) until the filter is built again.
+ * REF: https://www.eecs.harvard.edu/~michaelm/postscripts/rsa2008.pdf
+ */
+public class KeywordFilter {
+    public static final Integer MAGIC = 0x55474246; // "UGBF"
+    public static final Integer FORMAT = 1;
+    public static final Integer BITS_PER_KEY = 10, HASHES = 7;
+
+    private long[] bits;
+    private int mask;
+    private int count = 0, stale = 0;
+
+    /**
+     * Build the filter over keywords.
+     *
+     * @param keys     the keywords
+     * @param capacity number of keywords the filter is sized for, at least the
+     *                 number of keywords given (more leaves room for additions)
+     */
+    public KeywordFilter(Collection<String> keys, Integer capacity) {
+        // Power of 2 number of bits, at least 64
+        long size = Long.highestOneBit(Math.max(64L, (long) capacity * BITS_PER_KEY - 1) * 2);
+        bits = new long[(int) Math.min(size / 64, 1 << 24)];
+        mask = bits.length * 64 - 1;
+        for (String key : keys) {
+            Add(key);
+        }
+    }
+
+    private KeywordFilter(long[] bits, int count) {
+        this.bits = bits;
+        this.mask = bits.length * 64 - 1;
+        this.count = count;
+    }
+
+    /**
+     * Add a keyword.
+     *
+     * @param key the keyword
+     */
+    public void Add(String key) {
+        long h = Hash(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        count++;
+    }
+
+    /**
+     * Count a keyword removed from the glossary, still matched by the filter.
+     */
+    public void Remove() {
+        stale++;
+    }
+
+    /**
+     * Tell whether a term may be a keyword (case-insensitive).
+     *
+     * @param term the term
+     * @return false if the term is surely not a keyword
+     */
+    public Boolean MightContain(String term) {
+        long h = Hash(term);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell whether the filter should be built again: too many removed keywords,
+     * or more keywords than it was sized for, make it match too many terms.
+     *
+     * @return true if it should be built again
+     */
+    public Boolean IsWorn() {
+        return stale > count / 4 || (long) count * BITS_PER_KEY > bits.length * 64L;
+    }
+
+    /**
+     * @return number of keywords added, including the removed ones
+     */
+    public Integer getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of removed keywords since the filter was built
+     */
+    public Integer getStale() {
+        return stale;
+    }
+
+    /**
+     * @return size of the bit array, in bytes
+     */
+    public Integer getBytes() {
+        return bits.length * 8;
+    }
+
+    /**
+     * Hash a term case-folded the same way as String.equalsIgnoreCase, so terms
+     * equal ignoring case have the same hash: 64-bit FNV-1a, then the SplitMix64
+     * finalizer to spread its bits.
+     */
+    private static long Hash(String term) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < term.length(); i++) {
+            char c = Character.toLowerCase(Character.toUpperCase(term.charAt(i)));
+            h = (h ^ c) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Save the filter into a file, along with the size and modification time of
+     * the data file it was built from.
+     *
+     * @param path   path of the file
+     * @param source the data file
+     * @throws IOException
+     */
+    public void Write(String path, File source) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            out.writeInt(count);
+            out.writeInt(stale);
+            out.writeInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a filter saved by Write().
+     *
+     * @param path   path of the file
+     * @param source the data file
+     * @return the filter, or null if the file doesn't exist, has another format
+     *         or was built from another version of the data file
+     * @throws IOException
+     */
+    public static KeywordFilter Read(String path, File source) throws IOException {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || in.readLong() != source.length()
+                    || in.readLong() != source.lastModified()) {
+                return null;
+            }
+            int count = in.readInt(), stale = in.readInt();
+            long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            KeywordFilter filter = new KeywordFilter(bits, count);
+            filter.stale = stale;
+            return filter;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,453 @@
+import java.util.*;
+
+/**
+ * A glob or regular expression matched against whole keywords
+ * (case-sensitive), compiled into an automaton.
+ * <p>
+ * Globs support <code>*</code> (any characters), <code>?</code> (any
+ * character) and <code>[...]</code> classes (<code>[!...]</code> to negate).
+ * Regular expressions start with <code>^</code> or end with <code>$</code>, and
+ * support literals, <code>.</code>, classes, <code>\d \w \s</code>, groups,
+ * <code>|</code> and the <code>* + ? {m,n}</code> quantifiers.
+ * <p>
+ * The pattern is compiled into an NFA (Thompson's construction), run as a DFA
+ * whose states are built on demand. Searching walks the sorted keywords: as
+ * soon as the automaton dies on a prefix, the whole range of keywords sharing
+ * that prefix is skipped with a single seek. A literal prefix of the pattern
+ * restricts the walk to its range of keywords up front.
+ * REF: https://swtch.com/~rsc/regexp/regexp1.html
+ */
+public class KeywordPattern {
+    private static final int MAX_REPEAT = 100;
+    private static final int MAX_STATES = 100000;
+
+    /**
+     * A node of the parsed pattern.
+     */
+    private static abstract class Node {
+    }
+
+    /**
+     * One character of a set.
+     */
+    private static class Chars extends Node {
+        private ArrayList<char[]> ranges = new ArrayList<char[]>();
+        private Boolean negated = false;
+
+        private Chars Add(char from, char to) {
+            ranges.add(new char[] { from, to });
+            return this;
+        }
+
+        private Boolean Matches(char c) {
+            for (char[] range : ranges) {
+                if (c >= range[0] && c <= range[1]) {
+                    return !negated;
+                }
+            }
+            return negated;
+        }
+
+        /**
+         * @return the character if this set holds a single one, or 0
+         */
+        private char Single() {
+            return !negated && ranges.size() == 1 && ranges.get(0)[0] == ranges.get(0)[1] ? ranges.get(0)[0] : 0;
+        }
+    }
+
+    private static class Concat extends Node {
+        private ArrayList<Node> items = new ArrayList<Node>();
+    }
+
+    private static class Alternation extends Node {
+        private ArrayList<Node> choices = new ArrayList<Node>();
+    }
+
+    private static class Repeat extends Node {
+        private Node item;
+        private int min, max; // max < 0 for unbounded
+
+        private Repeat(Node item, int min, int max) {
+            this.item = item;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    // NFA: state i either moves to next[i] on a character of chars[i], or to
+    // next[i] and alt[i] without consuming anything (chars[i] == null)
+    private ArrayList<Chars> chars = new ArrayList<Chars>();
+    private ArrayList<Integer> next = new ArrayList<Integer>(), alt = new ArrayList<Integer>();
+    private int start, accept;
+    private String prefix;
+
+    // DFA built on demand: sets of NFA states and their transitions
+    private ArrayList<BitSet> sets = new ArrayList<BitSet>();
+    private HashMap<BitSet, Integer> setIds = new HashMap<BitSet, Integer>();
+    private HashMap<Long, Integer> moves = new HashMap<Long, Integer>();
+
+    /**
+     * @param pattern a glob, or a regular expression starting with '^' or ending
+     *                with '$'
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public KeywordPattern(String pattern) {
+        Node root;
+        if (pattern.startsWith("^") || pattern.endsWith("$")) {
+            String regex = pattern.substring(pattern.startsWith("^") ? 1 : 0);
+            if (regex.endsWith("$") && !regex.endsWith("\\$")) {
+                regex = regex.substring(0, regex.length() - 1);
+            }
+            int[] pos = { 0 };
+            root = ParseAlternation(regex, pos);
+            if (pos[0] < regex.length()) {
+                throw new IllegalArgumentException("Unexpected '" + regex.charAt(pos[0]) + "' at " + pos[0] + ".");
+            }
+        } else {
+            root = ParseGlob(pattern);
+        }
+        prefix = Prefix(root);
+        accept = State(null, -1, -1);
+        start = Compile(root, accept);
+        setIds.put(new BitSet(), 0);
+        sets.add(new BitSet());
+        BitSet initial = new BitSet();
+        Close(start, initial);
+        Id(initial);
+    }
+
+    /**
+     * @return the characters every matching keyword starts with
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Find the keywords matching the pattern.
+     *
+     * @param keywords all keywords, sorted
+     * @return the matching keywords, sorted
+     */
+    public List<String> Search(NavigableSet<String> keywords) {
+        ArrayList<String> found = new ArrayList<String>();
+        NavigableSet<String> range = prefix.isEmpty() ? keywords
+                : keywords.subSet(prefix, true, prefix + Character.MAX_VALUE, true);
+        String key = range.isEmpty() ? null : range.first();
+        while (key != null) {
+            int state = 1, i = 0;
+            while (i < key.length() && state != 0) {
+                state = Move(state, key.charAt(i++));
+            }
+            if (state != 0) {
+                if (sets.get(state).get(accept)) {
+                    found.add(key);
+                }
+                key = range.higher(key);
+            } else if (key.charAt(i - 1) < Character.MAX_VALUE) {
+                // No keyword starting with key[0..i) can match: seek past them
+                key = range.ceiling(key.substring(0, i - 1) + (char) (key.charAt(i - 1) + 1));
+            } else {
+                key = range.higher(key);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return true if a keyword matches the pattern
+     */
+    public Boolean Matches(String key) {
+        int state = 1;
+        for (int i = 0; i < key.length() && state != 0; i++) {
+            state = Move(state, key.charAt(i));
+        }
+        return state != 0 && sets.get(state).get(accept);
+    }
+
+    /**
+     * Get the DFA state reached from a state with a character. DFA state 0 is
+     * the dead state, 1 the initial one.
+     */
+    private int Move(int state, char c) {
+        long move = ((long) state << 16) | c;
+        Integer target = moves.get(move);
+        if (target == null) {
+            BitSet set = sets.get(state), reached = new BitSet();
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                if (chars.get(s) != null && chars.get(s).Matches(c)) {
+                    Close(next.get(s), reached);
+                }
+            }
+            target = Id(reached);
+            moves.put(move, target);
+        }
+        return target;
+    }
+
+    private int Id(BitSet set) {
+        Integer id = setIds.get(set);
+        if (id == null) {
+            id = sets.size();
+            sets.add(set);
+            setIds.put(set, id);
+        }
+        return id;
+    }
+
+    /**
+     * Add a state and the states reachable from it without consuming anything.
+     */
+    private void Close(int state, BitSet set) {
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        pending.push(state);
+        while (!pending.isEmpty()) {
+            int s = pending.pop();
+            if (s < 0 || set.get(s)) {
+                continue;
+            }
+            set.set(s);
+            if (chars.get(s) == null) {
+                pending.push(alt.get(s));
+                pending.push(next.get(s));
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pattern needs too many states
+     */
+    private int State(Chars on, int to, int other) {
+        if (chars.size() >= MAX_STATES) {
+            throw new IllegalArgumentException("Pattern too large.");
+        }
+        chars.add(on);
+        next.add(to);
+        alt.add(other);
+        return chars.size() - 1;
+    }
+
+    /**
+     * Build the states matching a node, followed by the given state.
+     *
+     * @return the first state
+     */
+    private int Compile(Node node, int then) {
+        if (node instanceof Chars) {
+            return State((Chars) node, then, -1);
+        } else if (node instanceof Concat) {
+            ArrayList<Node> items = ((Concat) node).items;
+            for (int i = items.size() - 1; i >= 0; i--) {
+                then = Compile(items.get(i), then);
+            }
+            return then;
+        } else if (node instanceof Alternation) {
+            int first = -1;
+            for (Node choice : ((Alternation) node).choices) {
+                int entry = Compile(choice, then);
+                first = first < 0 ? entry : State(null, entry, first);
+            }
+            return first;
+        }
+        Repeat repeat = (Repeat) node;
+        if (repeat.max < 0) {
+            // Loop back to a split state: item then split again, or leave
+            int split = State(null, -1, then);
+            next.set(split, Compile(repeat.item, split));
+            then = split;
+        } else {
+            for (int i = repeat.min; i < repeat.max; i++) {
+                then = State(null, Compile(repeat.item, then), then); // Optional copies
+            }
+        }
+        for (int i = 0; i < repeat.min; i++) {
+            then = Compile(repeat.item, then);
+        }
+        return then;
+    }
+
+    /**
+     * @return the literal characters the node always starts with
+     */
+    private static String Prefix(Node node) {
+        StringBuilder prefix = new StringBuilder();
+        ArrayList<Node> items = new ArrayList<Node>();
+        if (node instanceof Concat) {
+            items = ((Concat) node).items;
+        } else {
+            items.add(node);
+        }
+        for (Node item : items) {
+            if (!(item instanceof Chars) || ((Chars) item).Single() == 0) {
+                break;
+            }
+            prefix.append(((Chars) item).Single());
+        }
+        return prefix.toString();
+    }
+
+    private static Node ParseGlob(String glob) {
+        Concat concat = new Concat();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                concat.items.add(new Repeat(Any(), 0, -1));
+            } else if (c == '?') {
+                concat.items.add(Any());
+            } else if (c == '[') {
+                int[] pos = { i + 1 };
+                concat.items.add(ParseClass(glob, pos, '!'));
+                i = pos[0] - 1;
+            } else {
+                if (c == '\\' && i + 1 < glob.length()) {
+                    c = glob.charAt(++i);
+                }
+                concat.items.add(new Chars().Add(c, c));
+            }
+        }
+        return concat;
+    }
+
+    private static Node ParseAlternation(String regex, int[] pos) {
+        Alternation alternation = new Alternation();
+        alternation.choices.add(ParseConcat(regex, pos));
+        while (pos[0] < regex.length() && regex.charAt(pos[0]) == '|') {
+            pos[0]++;
+            alternation.choices.add(ParseConcat(regex, pos));
+        }
+        return alternation.choices.size() == 1 ? alternation.choices.get(0) : alternation;
+    }
+
+    private static Node ParseConcat(String regex, int[] pos) {
+        Concat concat = new Concat();
+        while (pos[0] < regex.length() && regex.charAt(pos[0]) != '|' && regex.charAt(pos[0]) != ')') {
+            Node atom = ParseAtom(regex, pos);
+            // Quantifiers
+            while (pos[0] < regex.length()) {
+                char c = regex.charAt(pos[0]);
+                if (c == '*') {
+                    atom = new Repeat(atom, 0, -1);
+                } else if (c == '+') {
+                    atom = new Repeat(atom, 1, -1);
+                } else if (c == '?') {
+                    atom = new Repeat(atom, 0, 1);
+                } else if (c == '{') {
+                    int end = regex.indexOf('}', pos[0]);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Missing '}'.");
+                    }
+                    String[] bounds = regex.substring(pos[0] + 1, end).split(",", -1);
+                    try {
+                        int min = Integer.parseInt(bounds[0].trim());
+                        int max = bounds.length == 1 ? min
+                                : bounds[1].isBlank() ? -1 : Integer.parseInt(bounds[1].trim());
+                        if (min < 0 || min > MAX_REPEAT || max > MAX_REPEAT || (max >= 0 && max < min)) {
+                            throw new IllegalArgumentException("Invalid repetition " + regex.substring(pos[0], end + 1) + ".");
+                        }
+                        atom = new Repeat(atom, min, max);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid repetition.");
+                    }
+                    pos[0] = end;
+                } else {
+                    break;
+                }
+                pos[0]++;
+            }
+            concat.items.add(atom);
+        }
+        return concat.items.size() == 1 ? concat.items.get(0) : concat;
+    }
+
+    private static Node ParseAtom(String regex, int[] pos) {
+        char c = regex.charAt(pos[0]++);
+        switch (c) {
+            case '(':
+                Node group = ParseAlternation(regex, pos);
+                if (pos[0] >= regex.length() || regex.charAt(pos[0]) != ')') {
+                    throw new IllegalArgumentException("Missing ')'.");
+                }
+                pos[0]++;
+                return group;
+
+            case '[':
+                return ParseClass(regex, pos, '^');
+
+            case '.':
+                return Any();
+
+            case '\\':
+                if (pos[0] >= regex.length()) {
+                    throw new IllegalArgumentException("Trailing '\\'.");
+                }
+                return Escape(regex.charAt(pos[0]++));
+
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new IllegalArgumentException("Nothing to repeat before '" + c + "'.");
+
+            default:
+                return new Chars().Add(c, c);
+        }
+    }
+
+    /**
+     * Parse a class after its '[', up to its ']'.
+     *
+     * @param negation the character negating the class when first
+     */
+    private static Chars ParseClass(String pattern, int[] pos, char negation) {
+        Chars set = new Chars();
+        if (pos[0] < pattern.length() && pattern.charAt(pos[0]) == negation) {
+            set.negated = true;
+            pos[0]++;
+        }
+        Boolean first = true;
+        while (pos[0] < pattern.length() && (first || pattern.charAt(pos[0]) != ']')) {
+            first = false;
+            char from = pattern.charAt(pos[0]++);
+            if (from == '\\' && pos[0] < pattern.length()) {
+                Chars escaped = Escape(pattern.charAt(pos[0]++));
+                if (escaped.Single() == 0) {
+                    set.ranges.addAll(escaped.ranges);
+                    continue;
+                }
+                from = escaped.Single();
+            }
+            char to = from;
+            if (pos[0] + 1 < pattern.length() && pattern.charAt(pos[0]) == '-' && pattern.charAt(pos[0] + 1) != ']') {
+                to = pattern.charAt(pos[0] + 1);
+                pos[0] += 2;
+                if (to < from) {
+                    throw new IllegalArgumentException("Invalid range " + from + "-" + to + ".");
+                }
+            }
+            set.Add(from, to);
+        }
+        if (pos[0] >= pattern.length()) {
+            throw new IllegalArgumentException("Missing ']'.");
+        }
+        pos[0]++;
+        return set;
+    }
+
+    private static Chars Escape(char c) {
+        switch (c) {
+            case 'd':
+                return new Chars().Add('0', '9');
+            case 'w':
+                return new Chars().Add('a', 'z').Add('A', 'Z').Add('0', '9').Add('_', '_');
+            case 's':
+                return new Chars().Add(' ', ' ').Add('\t', '\t');
+            default:
+                return new Chars().Add(c, c);
+        }
+    }
+
+    private static Chars Any() {
+        return new Chars().Add(Character.MIN_VALUE, Character.MAX_VALUE);
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.*;
+
+/**
+ * A sorted map made of an immutable base layer and a small mutable overlay. The
+ * base holds the entries read from the original glossary file, the overlay
+ * holds every change made since: added or replaced entries, and tombstones for
+ * removed ones. Discarding all changes only clears the overlay, and listing
+ * them doesn't need to compare the whole glossary.
+ * <p>
+ * The overlay is a PersistentTreeMap, so a version of the whole map is just a
+ * reference to its overlay: taking one is O(1), older versions can be viewed
+ * with At() and restored with Checkout(). Changes to the base layer itself
+ * (PutBase) aren't versioned.
+ */
+public class LayeredMap extends AbstractMap<String, String[]> {
+    private static final String[] TOMBSTONE = new String[0];
+
+    private Map<String, String[]> base;
+    private PersistentTreeMap overlay = PersistentTreeMap.EMPTY;
+    private int size;
+
+    /**
+     * @param base entries of the base layer, iterated in keyword order (a
+     *             TreeMap or a CompactMap), not to be modified afterwards
+     */
+    public LayeredMap(Map<String, String[]> base) {
+        this.base = base;
+        size = base.size();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public String[] get(Object key) {
+        String[] value = overlay.get(key);
+        if (value == TOMBSTONE) {
+            return null;
+        }
+        return value != null ? value : base.get(key);
+    }
+
+    @Override
+    public String[] put(String key, String[] value) {
+        String[] old = get(key);
+        overlay = overlay.With(key, value);
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    @Override
+    public String[] remove(Object key) {
+        String[] old = get(key);
+        if (old == null) {
+            return null;
+        }
+        if (base.containsKey(key)) {
+            overlay = overlay.With((String) key, TOMBSTONE);
+        } else {
+            overlay = overlay.Without((String) key);
+        }
+        size--;
+        return old;
+    }
+
+    /**
+     * @return the entries of the base layer (read-only)
+     */
+    public Map<String, String[]> getBase() {
+        return Collections.unmodifiableMap(base);
+    }
+
+    /**
+     * @return number of changes in the overlay
+     */
+    public Integer getOverlaySize() {
+        return overlay.size();
+    }
+
+    /**
+     * Get the changes of the overlay, in keyword order. Removed keywords have no
+     * definition (an empty array), see IsRemoved to tell them from keywords
+     * without definition.
+     *
+     * @return the changes (immutable)
+     */
+    public PersistentTreeMap getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * @param key a keyword of the overlay
+     * @return true if the keyword was removed from the base
+     */
+    public Boolean IsRemoved(String key) {
+        return overlay.get(key) == TOMBSTONE;
+    }
+
+    /**
+     * Load changes saved from getOverlay() without telling removed keywords
+     * apart: an entry without definition removes the keyword.
+     *
+     * @param key    the keyword
+     * @param values its definitions, empty if removed
+     */
+    public void Restore(String key, String[] values) {
+        if (values.length == 0) {
+            remove(key);
+        } else {
+            put(key, values);
+        }
+    }
+
+    /**
+     * Discard all changes, in time proportional to the number of changes.
+     *
+     * @return the keywords that were changed
+     */
+    public Set<String> ClearOverlay() {
+        return Checkout(PersistentTreeMap.EMPTY);
+    }
+
+    /**
+     * Take a snapshot of the current version, in O(1).
+     *
+     * @return the version
+     */
+    public PersistentTreeMap Snapshot() {
+        return overlay;
+    }
+
+    /**
+     * Go back (or forward) to a version, in time proportional to the number of
+     * changes of both versions.
+     *
+     * @param version a version returned by Snapshot()
+     * @return the keywords whose definitions differ between both versions
+     */
+    public Set<String> Checkout(PersistentTreeMap version) {
+        Set<String> keys = new TreeSet<String>();
+        for (Map.Entry<String, String[]> entry : overlay.entrySet()) {
+            if (version.get(entry.getKey()) != entry.getValue()) {
+                keys.add(entry.getKey());
+            }
+        }
+        for (String key : version.keySet()) {
+            if (!overlay.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        overlay = version;
+        size = Size(base, overlay);
+        return keys;
+    }
+
+    /**
+     * Get a read-only view of a version, sharing the base layer. Creating it
+     * takes time proportional to the number of changes of the version.
+     *
+     * @param version a version returned by Snapshot()
+     * @return the view
+     */
+    public Map<String, String[]> At(PersistentTreeMap version) {
+        LayeredMap view = new LayeredMap(base);
+        view.overlay = version;
+        view.size = Size(base, version);
+        return Collections.unmodifiableMap(view);
+    }
+
+    private static int Size(Map<String, String[]> base, PersistentTreeMap overlay) {
+        int size = base.size();
+        for (Map.Entry<String, String[]> entry : overlay.entrySet()) {
+            Boolean inBase = base.containsKey(entry.getKey());
+            if (entry.getValue() == TOMBSTONE) {
+                size -= inBase ? 1 : 0;
+            } else {
+                size += inBase ? 0 : 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Change the base layer itself, when the original file has changed. Changes
+     * of the overlay still take precedence.
+     *
+     * @param key   the keyword
+     * @param value its new definitions, or null to remove it
+     */
+    public void PutBase(String key, String[] value) {
+        Boolean visible = get(key) != null;
+        if (value == null) {
+            base.remove(key);
+            if (overlay.get(key) == TOMBSTONE) {
+                overlay = overlay.Without(key);
+            }
+        } else {
+            base.put(key, value);
+        }
+        size += (get(key) != null ? 1 : 0) - (visible ? 1 : 0);
+    }
+
+    @Override
+    public Set<Map.Entry<String, String[]>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String[]>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String[]>> iterator() {
+                return new MergeIterator();
+            }
+        };
+    }
+
+    /**
+     * Iterate over both layers at once, in keyword order. The overlay being
+     * immutable, entries can be changed while iterating.
+     */
+    private class MergeIterator implements Iterator<Map.Entry<String, String[]>> {
+        private Iterator<Map.Entry<String, String[]>> baseIt = base.entrySet().iterator();
+        private Iterator<Map.Entry<String, String[]>> overlayIt = overlay.entrySet().iterator();
+        private Map.Entry<String, String[]> nextBase = Advance(baseIt), nextOverlay = Advance(overlayIt);
+        private Map.Entry<String, String[]> next = null;
+
+        private Map.Entry<String, String[]> Advance(Iterator<Map.Entry<String, String[]>> it) {
+            return it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && (nextBase != null || nextOverlay != null)) {
+                int cmp = nextBase == null ? 1
+                        : nextOverlay == null ? -1 : nextBase.getKey().compareTo(nextOverlay.getKey());
+                Map.Entry<String, String[]> candidate;
+                if (cmp < 0) {
+                    candidate = nextBase;
+                    nextBase = Advance(baseIt);
+                } else {
+                    if (cmp == 0) {
+                        nextBase = Advance(baseIt); // Shadowed by the overlay
+                    }
+                    candidate = nextOverlay;
+                    nextOverlay = Advance(overlayIt);
+                }
+                if (candidate.getValue() != TOMBSTONE) {
+                    next = new Entry(candidate.getKey(), candidate.getValue());
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String[]> entry = next;
+            next = null;
+            return entry;
+        }
+    }
+
+    /**
+     * An entry of the merged view. Setting its value writes to the overlay.
+     */
+    private class Entry extends SimpleEntry<String, String[]> {
+        private static final long serialVersionUID = 1L;
+
+        private Entry(String key, String[] value) {
+            super(key, value);
+        }
+
+        @Override
+        public String[] setValue(String[] value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
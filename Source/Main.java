@@ -1,8 +1,9 @@
-import java.util.Arrays;
-import java.util.Scanner;
+import java.util.*;
+import java.util.stream.Stream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.PrintStream;
 
 // References are marked with 'REF' keywords
 
@@ -14,12 +15,54 @@ import java.io.IOException;
 */
 
 public class Main {
-    public static final Scanner sc = new Scanner(System.in, "UTF-8");
+    // Input of the commands, replaced while the daemon serves a client
+    public static Scanner sc = new Scanner(System.in, "UTF-8");
+    // The terminal, for background threads: System.out is replaced too
+    public static final PrintStream console = System.out;
 
     public static void main(String[] args) {
+        // Thin client of a daemon (see GlossaryDaemon), without loading the glossary
+        if (args.length >= 2 && args[0].equals("--client")) {
+            GlossaryDaemon.Client(args[1], String.join(" ", Arrays.copyOfRange(args, 2, args.length)));
+            return;
+        }
         System.out.println("\n---- WELCOME TO URBAN GLOSSARY ----\n");
 
-        Glossary glossary = getGlossary(args);
+        // Keep the glossary loaded and serve commands over a socket
+        Boolean daemon = false;
+        if (args.length != 0 && args[args.length - 1].equals("--daemon")) {
+            daemon = true;
+            args = Arrays.copyOfRange(args, 0, args.length - 1);
+        }
+        // Follow the changes of a writer replicating the glossary, read-only
+        Boolean follow = false;
+        if (args.length != 0 && args[args.length - 1].equals("--follow")) {
+            follow = true;
+            args = Arrays.copyOfRange(args, 0, args.length - 1);
+        }
+        // Store definitions dictionary-encoded
+        Boolean compact = false;
+        if (args.length != 0 && args[args.length - 1].equals("--compact")) {
+            compact = true;
+            args = Arrays.copyOfRange(args, 0, args.length - 1);
+        }
+        Glossary glossary = getGlossary(args, compact, follow);
+        if (follow) {
+            try {
+                glossary.Follow();
+                System.out.println("(i) Following the writer of '" + glossary.path + "', read-only.\n");
+            } catch (IOException e) {
+                System.out.println("(!) " + e.getMessage());
+                sc.close();
+                return;
+            }
+        }
+        if (daemon) {
+            GlossaryDaemon.Run(glossary);
+            glossary.WriteSearchStats();
+            sc.close();
+            return;
+        }
         if (args.length != 0) {
             if (glossary.path == args[0]) {
                 // Remove the path argument
@@ -27,6 +70,7 @@ public class Main {
             }
         }
         getCommand(glossary, args);
+        glossary.WriteSearchStats();
 
         sc.close();
     }
@@ -35,10 +79,11 @@ public class Main {
      * Init a glossary database. If no existing glossary found, ask the user to
      * input the path of the new glossary.
      * 
-     * @param args get file name for terminal arguments
+     * @param args    get file name for terminal arguments
+     * @param compact use the compact storage (see Glossary)
      * @return the glossasy object
      */
-    private static Glossary getGlossary(String[] args) {
+    private static Glossary getGlossary(String[] args, Boolean compact, Boolean follow) {
         if (args.length == 0) {
             args = new String[] { "" };
         }
@@ -52,7 +97,8 @@ public class Main {
             FilenameFilter filter = new FilenameFilter() {
                 @Override
                 public boolean accept(File f, String name) {
-                    return !name.startsWith(".") && !name.endsWith(".hist.csv") && name.endsWith(".csv");
+                    return !name.startsWith(".") && !name.endsWith(".hist.csv") && !name.endsWith(".overlay.csv") && !name.matches(".*\\.shard[0-9]+\\.csv")
+                            && (name.endsWith(".csv") || name.endsWith(".ugz"));
                 }
             };
             files = dir.list(filter);
@@ -91,7 +137,7 @@ public class Main {
                 System.out.println("(!) File not exist.");
             }
         }
-        return new Glossary(path);
+        return new Glossary(path, compact, follow);
     }
 
     /**
@@ -100,7 +146,7 @@ public class Main {
      * @param glossary the glossary object
      * @param args     arguments entered when launched the program
      */
-    private static void getCommand(Glossary glossary, String[] args) {
+    public static void getCommand(Glossary glossary, String[] args) {
         String cmd = String.join(" ", args); // Put args to cmd
         Boolean listening = true;
         printHelp(""); // Print command list first
@@ -109,159 +155,732 @@ public class Main {
                 System.out.print(" >> ");
                 cmd = sc.nextLine();
             }
-            // If user enters without a command -> do nothing
-            if (cmd.isEmpty()) {
-                continue;
-            } else {
-                System.out.println();
+            listening = runCommand(glossary, cmd);
+            cmd = "";
+        }
+    }
+
+    /**
+     * Run a single command.
+     * 
+     * @param glossary the glossary object
+     * @param cmd      the command and its arguments
+     * @return false if the command was to quit, true otherwise
+     */
+    public static Boolean runCommand(Glossary glossary, String cmd) {
+        Boolean listening = true;
+        // If user enters without a command -> do nothing
+        if (cmd.isEmpty()) {
+            return true;
+        } else {
+            System.out.println();
+        }
+        // Split into [<command>, <arguments>]
+        String[] args = cmd.split(" ", 2);
+        if (args.length == 1) {
+            args = new String[] { args[0], "" };
+        }
+        if (glossary.IsFollower() && IsWriting(args[0], args[1].trim())) {
+            System.out.println("(!) '" + args[0] + "' can't be used on a read-only follower.\n");
+            return true;
+        }
+        // For spliting into [<subcommand>, <arguments>]
+        String[] subargs;
+        switch (args[0]) {
+            case "help":
+            case "h":
+                subargs = args[1].split(" ", 2);
+                if (subargs.length == 1) {
+                    subargs = new String[] { subargs[0], "" };
+                }
+                printHelp(subargs[0]);
+                break;
+            case "print":
+            case "p":
+                subargs = args[1].split(" ", 2);
+                if (subargs.length == 1) {
+                    subargs = new String[] { subargs[0], "" };
+                }
+                if (subargs[0].isEmpty()) {
+                    glossary.Print();
+                } else if (subargs[0].equals("search")) {
+                    glossary.PrintSearchHistory();
+                } else {
+                    System.out.println("(!) Unknown subcommand '" + subargs[0] + "'.");
+                }
+                break;
+
+            case "search":
+            case "s":
+                subargs = args[1].split(" ", 2);
+                if (subargs.length == 1) {
+                    subargs = new String[] { subargs[0], "" };
+                }
+                // Split into [<term>, <version>]
+                String[] term = subargs[1].split(" --at ", 2);
+                Integer version = null;
+                if (term.length == 2) {
+                    try {
+                        version = Integer.parseInt(term[1].trim());
+                    } catch (NumberFormatException e) {
+                        System.out.println("(!) Invalid version '" + term[1] + "'.");
+                        break;
+                    }
+                }
+                if (subargs[0].equals("sound") || subargs[0].equals("pattern")) {
+                    Search(glossary, subargs[0], subargs[1], null);
+                } else if (subargs[0].equals("query") || subargs[0].equals("key") || subargs[0].equals("def")) {
+                    Search(glossary, subargs[0], term[0], version);
+                } else if (subargs[0].equals("")) {
+                    System.out.println("(!) Missing subcommand. Try 'search key <term>' or 'search def <term>'.");
+                } else {
+                    System.out.println("(!) Unknown subcommand '" + subargs[0]
+                            + "' Try 'search key <term>' or 'search def <term>'.");
+                }
+                break;
+
+            case "add":
+            case "a":
+                subargs = args[1].split(" ", 2);
+                if (subargs.length == 1) {
+                    subargs = new String[] { subargs[0], "" };
+                }
+                if (subargs[0].equals("")) {
+                    AddSlang(glossary, "", "");
+                } else if (subargs.length == 2) {
+                    AddSlang(glossary, subargs[0], subargs[1]);
+                } else {
+                    System.out.println("(!) Missing definition for '" + subargs[0] + "'.");
+                }
+                break;
+
+            case "edit":
+            case "e":
+                subargs = args[1].split(" ", 2);
+                EditSlang(glossary, subargs[0]);
+                break;
+
+            case "delete":
+            case "d":
+                subargs = args[1].split(" ", 2);
+                DeleteSlang(glossary, subargs[0]);
+                break;
+
+            case "reset":
+            case "r":
+                Reset(glossary);
+                break;
+
+            case "onthisday":
+            case "o":
+                glossary.Random();
+                break;
+
+            case "import":
+            case "i":
+                // Split into [<file>, <option>]
+                subargs = args[1].split(" --on-conflict=", 2);
+                if (subargs[0].isBlank()) {
+                    System.out.println("(!) Missing file. Try 'import <file> --on-conflict=overwrite|append|skip'.");
+                } else {
+                    try {
+                        glossary.Import(subargs[0].trim(),
+                                Importer.Policy.Parse(subargs.length == 2 ? subargs[1] : "skip"));
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("(!) Unknown conflict option '" + subargs[1]
+                                + "'. Valid ones are 'overwrite', 'append' and 'skip'.");
+                    }
+                }
+                break;
+
+            case "export":
+            case "x":
+                if (args[1].isBlank()) {
+                    System.out.println("(!) Missing file. Try 'export <file>.csv' or 'export <file>.jsonl'.");
+                } else {
+                    glossary.Export(args[1].trim());
+                }
+                break;
+
+            case "watch":
+            case "w":
+                glossary.Watch(!args[1].trim().equals("stop"));
+                break;
+
+            case "diff":
+                glossary.Diff();
+                break;
+
+            case "memory":
+            case "m":
+                try {
+                    glossary.Memory(args[1].isBlank() ? null : Long.parseLong(args[1].trim()));
+                } catch (NumberFormatException e) {
+                    System.out.println("(!) Invalid number of entries '" + args[1] + "'.");
+                }
+                break;
+
+            case "undo":
+            case "u":
+                glossary.Undo();
+                break;
+
+            case "redo":
+                glossary.Redo();
+                break;
+
+            case "dedupe":
+                glossary.Dedupe(args[1].trim());
+                break;
+
+            case "stats":
+                subargs = args[1].split(" ", 2);
+                if (subargs[0].equals("top")) {
+                    Integer n = null;
+                    try {
+                        n = subargs.length == 1 ? 10 : Integer.parseInt(subargs[1].trim());
+                    } catch (NumberFormatException e) {
+                        // Reported below
+                    }
+                    if (n == null || n < 1) {
+                        System.out.println("(!) Invalid number of searches '" + subargs[1] + "'.");
+                    } else {
+                        glossary.PrintTopSearches(n);
+                    }
+                } else if (subargs[0].equals("corpus")) {
+                    Integer k = null;
+                    try {
+                        k = subargs.length == 1 ? 10 : Integer.parseInt(subargs[1].trim());
+                    } catch (NumberFormatException e) {
+                        // Reported below
+                    }
+                    if (k == null || k < 0) {
+                        System.out.println("(!) Invalid number of words '" + subargs[1] + "'.");
+                    } else {
+                        glossary.PrintCorpusStats(k);
+                    }
+                } else {
+                    System.out.println("(!) Unknown subcommand '" + subargs[0] + "'. Try 'stats top' or 'stats corpus'.");
+                }
+                break;
+
+            case "complete":
+                if (args[1].isBlank()) {
+                    System.out.println("(!) Missing beginning of a slang word. Try 'complete <prefix>'.");
+                } else {
+                    List<String> completions = glossary.Complete(args[1].trim());
+                    if (completions.isEmpty()) {
+                        System.out.println("(!) No keyword starts with '" + args[1].trim() + "'.\n");
+                    } else {
+                        System.out.println("(i) Completions: " + String.join(", ", completions) + "\n");
+                    }
+                }
+                break;
+
+            case "compress":
+                glossary.Compress(!args[1].trim().equals("off"));
+                break;
+
+            case "replicate":
+                subargs = args[1].split(" ", 2);
+                if (subargs[0].isEmpty() || subargs[0].equals("stop") || subargs[0].equals("status")) {
+                    glossary.Replicate(subargs[0]);
+                } else {
+                    System.out.println("(!) Unknown subcommand '" + subargs[0] + "'. Try 'replicate status'.");
+                }
+                break;
+
+            case "shard":
+                subargs = args[1].split(" ", 2);
+                try {
+                    glossary.Shard(Integer.parseInt(subargs[0]));
+                } catch (NumberFormatException e) {
+                    System.out.println("(!) Missing number of shards. Try 'shard <number>'.");
+                }
+                break;
+
+            case "game":
+            case "g":
+                subargs = args[1].split(" ", 3);
+                if (subargs.length == 1) {
+                    subargs = new String[] { subargs[0], "5", "" };
+                } else if (subargs.length == 2) {
+                    subargs = new String[] { subargs[0], subargs[1], "" };
+                }
+                glossary.Game(subargs[0], Integer.parseInt(subargs[1]), subargs[2]);
+                break;
+
+            case "quit":
+            case "q":
+                // Check for changes in glossary
+                if (glossary.modified) {
+                    listening = false;
+                    String option;
+                    System.out.println("(?) There are unsaved changes, do you want to save? (Y/n/c)");
+                    do {
+                        System.out.print(" > ");
+                        option = Main.sc.nextLine();
+                        switch (option) {
+                            case "yes":
+                            case "y":
+                            case "":
+                                try {
+                                    glossary.Write();
+                                } catch (IOException e) {
+                                    System.out.println("(!) Error reading file.");
+                                }
+                                option = "c";
+                                break;
+
+                            case "no":
+                            case "n":
+                                // Stop listening for commands -> exit method
+                                option = "c";
+                                break;
+
+                            case "cancel":
+                            case "c":
+                                listening = true;
+                                break;
+
+                            default:
+                                System.out.println("(!) Unknown option '" + option + "'.");
+                                break;
+                        }
+                    } while (option != "c");
+                } else {
+                    listening = false;
+                }
+                break;
+
+            default:
+                System.out.println("(!) Unknown command '" + args[0] + "'.");
+                break;
+        }
+        return listening;
+    }
+
+    /**
+     * Tell whether a command changes the glossary or writes its files, which a
+     * read-only follower can't do.
+     * 
+     * @param cmd the command
+     * @param arg its arguments
+     * @return true if the command writes
+     */
+    private static Boolean IsWriting(String cmd, String arg) {
+        switch (cmd) {
+            case "add":
+            case "a":
+            case "edit":
+            case "e":
+            case "delete":
+            case "d":
+            case "reset":
+            case "r":
+            case "import":
+            case "i":
+            case "undo":
+            case "u":
+            case "redo":
+            case "compress":
+            case "shard":
+                return true;
+            case "watch":
+            case "w":
+                return !arg.equals("stop");
+            case "dedupe":
+                return arg.equals("merge");
+            case "game":
+            case "g":
+                return arg.startsWith("review"); // Saves the review schedule
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Search the glossary and print the results.
+     * 
+     * @param glossary the glossary object
+     * @param type     kind of search: key, def, query, pattern or sound
+     * @param term     search term
+     * @param version  version to search in (see undo), null for the current one
+     */
+    private static void Search(Glossary glossary, String type, String term, Integer version) {
+        String at = version == null ? "" : " at version " + version;
+        if (type.equals("key") || type.equals("def")) {
+            glossary.AddSearchHistory(type.equals("key") ? 0 : 1, term);
+        }
+        Stream<Map.Entry<String, String[]>> results;
+        String searching;
+        try {
+            switch (type) {
+                case "key":
+                    results = glossary.FindKeyword(term, version);
+                    searching = term + " as keyword" + at;
+                    break;
+
+                case "def":
+                    results = glossary.FindDefinition(term, version);
+                    searching = term + " as definition" + at;
+                    break;
+
+                case "query":
+                    results = glossary.FindQuery(term, version);
+                    searching = term + " in definitions" + at;
+                    break;
+
+                case "pattern":
+                    results = glossary.FindPattern(term);
+                    searching = "keywords matching " + term;
+                    break;
+
+                default:
+                    results = glossary.FindSound(term);
+                    searching = "keywords sounding like " + term;
+                    break;
             }
+        } catch (NoSuchElementException e) {
+            System.out.println("(!) " + e.getMessage() + "\n");
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println("(!) Invalid " + type + " '" + term + "': " + e.getMessage() + "\n");
+            return;
+        }
+        System.out.println("(@) Searching for " + searching + "...");
+        System.out.println("(i) Done.");
+        Iterator<Map.Entry<String, String[]>> it = results.iterator();
+        if (!it.hasNext()) {
+            System.out.println("(!) Found no results.\n");
+            return;
+        }
+        System.out.println("(i) The following results are found:");
+        while (it.hasNext()) {
+            Map.Entry<String, String[]> entry = it.next();
+            System.out.print(entry.getKey() + ": ");
+            for (String str : entry.getValue()) {
+                System.out.print(str + " || ");
+            }
+            System.out.println();
+        }
+        System.out.println();
+    }
+
+    /**
+     * Add a new slang word to glossary. If an entry exist, ask the user to decide
+     * whether they want to overwrite or append the definition.
+     * 
+     * @param glossary the glossary object
+     * @param key      keyword to add to glossary
+     * @param def      definition for that keyword
+     */
+    private static void AddSlang(Glossary glossary, String key, String def) {
+        // Enter data (if no args given)
+        if (key == "" && def == "") {
+            System.out.println("(?) Enter keyword...");
+            System.out.print(" > ");
+            key = sc.nextLine();
+            System.out.println("(?) Enter definition...");
+            System.out.print(" > ");
+            def = sc.nextLine();
+        }
+        // Check existing
+        String[] values = glossary.Get(key);
+        if (values == null) {
+            glossary.Put(key, new String[] { def });
+            System.out.println("(i) Slang word added to glossary.");
+            System.out.println();
+            return;
+        }
+        String option = "";
+        System.out.print("(?) Found an existing entry '" + key + "': ");
+        for (String str : values) {
+            System.out.print(str + " || ");
+        }
+        System.out.println();
+        System.out.println("(?) Do you want to overwrite? (y/N/a/?)");
+        do {
+            System.out.print(" > ");
+            option = sc.nextLine();
+            switch (option) {
+                case "yes":
+                case "y":
+                    // Overwrite the entry
+                    glossary.Put(key, new String[] { def });
+                    System.out.println("(i) Slang word updated to glossary.");
+                    break;
+
+                case "no":
+                case "n":
+                case "":
+                    System.out.println("(i) Adding cancelled.");
+                    break;
+
+                case "append":
+                case "a":
+                    // Append new definition to keyword (Duplicate slang word)
+                    glossary.Append(key, def);
+                    System.out.println("(i) Slang word updated to glossary.");
+                    break;
+
+                case "help":
+                case "h":
+                case "?":
+                    System.out.println("(i) Options: y = yes, n = no (default), a = append definition, ? = show this help.");
+                    break;
+
+                default:
+                    System.out.println("(!) Unknown option '" + option + "'.");
+                    option = "?";
+                    break;
+            }
+        } while (option == "?");
+        System.out.println();
+    }
+
+    /**
+     * Edit the definitions of a slang word if the provided keyword existed. The
+     * program will enter edit mode for the keyword, the user wil be able to change
+     * a definition, or delete it.
+     * 
+     * @param glossary the glossary object
+     * @param key      the keyword existing in the glossary
+     */
+    private static void EditSlang(Glossary glossary, String key) {
+        // Enter data (if no args given)
+        if (key == "") {
+            System.out.println("(?) Enter keyword...");
+            System.out.print(" > ");
+            key = sc.nextLine();
+        }
+        // Check existing
+        String[] val = glossary.Get(key);
+        if (val == null) {
+            System.out.println("(!) Slang word " + key + " not found.");
+            System.out.println();
+            return;
+        }
+        String cmd = "";
+        String[] args, subargs;
+        System.out.println("(i) Found " + key + ": ");
+        for (int i = 0; i < val.length; i++) {
+            System.out.println("(i) - " + (i + 1) + ". " + val[i]);
+        }
+        System.out.println("(i) ----");
+        printEditHelp();
+        Boolean listening = true;
+        while (listening) {
+            System.out.print(" e> ");
+            cmd = sc.nextLine();
             // Split into [<command>, <arguments>]
             args = cmd.split(" ", 2);
             if (args.length == 1) {
                 args = new String[] { args[0], "" };
             }
-            // For spliting into [<subcommand>, <arguments>]
-            String[] subargs;
+            Integer id; // Index of definition
+            String option; // Confirmation variable
             switch (args[0]) {
                 case "help":
                 case "h":
-                    subargs = args[1].split(" ", 2);
-                    if (subargs.length == 1) {
-                        subargs = new String[] { subargs[0], "" };
-                    }
-                    printHelp(subargs[0]);
+                    printEditHelp();
                     break;
+
                 case "print":
                 case "p":
-                    subargs = args[1].split(" ", 2);
-                    if (subargs.length == 1) {
-                        subargs = new String[] { subargs[0], "" };
-                    }
-                    if (subargs[0].isEmpty()) {
-                        glossary.Print();
-                    } else if (subargs[0].equals("search")) {
-                        glossary.PrintSearchHistory();
-                    } else {
-                        System.out.println("(!) Unknown subcommand '" + subargs[0] + "'.");
+                case "":
+                    for (int i = 0; i < val.length; i++) {
+                        System.out.println("(i) - " + (i + 1) + ". " + val[i]);
                     }
+                    System.out.println("----");
                     break;
 
-                case "search":
-                case "s":
+                case "change":
+                case "c":
                     subargs = args[1].split(" ", 2);
-                    if (subargs.length == 1) {
-                        subargs = new String[] { subargs[0], "" };
+                    if (subargs.length < 2) {
+                        System.out.println("(!) Missing arguments. Correct syntax is 'change <id> <def>'.");
+                        break;
                     }
-                    if (subargs[0].equals("key")) {
-                        glossary.SearchKeyword(subargs[1]);
-                    } else if (subargs[0].equals("def")) {
-                        glossary.SearchDefinition(subargs[1]);
-                    } else if (subargs[0].equals("")) {
-                        System.out.println("(!) Missing subcommand. Try 'search key <term>' or 'search def <term>'.");
-                    } else {
-                        System.out.println("(!) Unknown subcommand '" + subargs[0]
-                                + "' Try 'search key <term>' or 'search def <term>'.");
+                    id = getIndex(subargs[0], val.length);
+                    if (id != null) {
+                        val = glossary.Change(key, id, subargs[1]);
+                        System.out.println("(i) Definition changed.");
                     }
                     break;
 
-                case "add":
-                case "a":
+                case "delete":
+                case "d":
+                    // Split into 2 to discard any remaining arguments in subargs[1]
                     subargs = args[1].split(" ", 2);
-                    if (subargs.length == 1) {
-                        subargs = new String[] { subargs[0], "" };
-                    }
-                    if (subargs[0].equals("")) {
-                        glossary.AddSlang("", "");
-                    } else if (subargs.length == 2) {
-                        glossary.AddSlang(subargs[0], subargs[1]);
-                    } else {
-                        System.out.println("(!) Missing definition for '" + subargs[0] + "'.");
+                    id = getIndex(subargs[0], val.length);
+                    if (id == null) {
+                        break;
                     }
+                    System.out.println("(@) Deleting '" + val[id] + "'...");
+                    System.out.println("(?) Do you want to delete this definition? (y/N)");
+                    do {
+                        System.out.print(" > ");
+                        option = sc.nextLine();
+                        switch (option) {
+                            case "yes":
+                            case "y":
+                                val = glossary.RemoveDefinition(key, id);
+                                System.out.println("(i) Definition deleted.");
+                                break;
+
+                            case "no":
+                            case "n":
+                            case "":
+                                // Do nothing
+                                break;
+
+                            default:
+                                System.out.println("(!) Unknown option '" + option + "'.");
+                                option = "?";
+                                break;
+                        }
+                    } while (option == "?");
                     break;
 
-                case "edit":
-                case "e":
-                    subargs = args[1].split(" ", 2);
-                    glossary.EditSlang(subargs[0]);
+                case "quit":
+                case "q":
+                    listening = false;
                     break;
 
-                case "delete":
-                case "d":
-                    subargs = args[1].split(" ", 2);
-                    glossary.DeleteSlang(subargs[0]);
+                default:
+                    System.out.println("(!) Unknown command '" + cmd + "'.");
                     break;
+            }
+        }
+        System.out.println();
+    }
 
-                case "reset":
-                case "r":
-                    glossary.Reset();
+    /**
+     * Print the commands of the edit menu.
+     */
+    private static void printEditHelp() {
+        System.out.println("(i) Edit commands:");
+        System.out.println("(i) - (h)elp: Print this help.");
+        System.out.println("(i) - (p)rint: Print the definitions.");
+        System.out.println("(i) - (c)hange <id> <def>: Change the <id>th definition with <def>.");
+        System.out.println("(i) - (d)elete <id>: Delete the <id>th definition.");
+        System.out.println("(i) - (q)uit: Quit the edit menu.");
+    }
+
+    /**
+     * Read the index of a definition entered in the edit menu.
+     * 
+     * @param arg   the index, from 1
+     * @param count number of definitions
+     * @return the index from 0, or null if it is invalid
+     */
+    private static Integer getIndex(String arg, Integer count) {
+        try {
+            Integer id = Integer.parseInt(arg.trim());
+            if (id >= 1 && id <= count) {
+                return id - 1;
+            }
+        } catch (NumberFormatException e) {
+            // Same message as an index out of range
+        }
+        System.out.println("(!) Invalid index, the possible range is [1," + count + "].");
+        return null;
+    }
+
+    /**
+     * Delete a slang word from glossary. If an entry exist, ask the user to
+     * confirm deletion. If not, abort.
+     * 
+     * @param glossary the glossary object
+     * @param key      keyword to remove from glossary
+     */
+    private static void DeleteSlang(Glossary glossary, String key) {
+        // Enter data (if no args given)
+        if (key == "") {
+            System.out.println("(?) Enter keyword...");
+            System.out.print(" > ");
+            key = sc.nextLine();
+        }
+        // Check existing
+        String[] values = glossary.Get(key);
+        if (values == null) {
+            System.out.println("(i) Slang word not exists.");
+            System.out.println();
+            return;
+        }
+        String option = "";
+        System.out.print("(?) Found '" + key + "': ");
+        for (String str : values) {
+            System.out.print(str + " || ");
+        }
+        System.out.println();
+        System.out.println("(?) Are you sure to delete? (y/N)");
+        do {
+            System.out.print(" > ");
+            option = sc.nextLine();
+            switch (option) {
+                case "yes":
+                case "y":
+                    glossary.Remove(key);
+                    System.out.println("(i) Slang word deleted from glossary.");
                     break;
 
-                case "onthisday":
-                case "o":
-                    glossary.Random();
+                case "no":
+                case "n":
+                case "":
+                    System.out.println("(i) Deleting cancelled.");
                     break;
 
-                case "game":
-                case "g":
-                    subargs = args[1].split(" ", 3);
-                    if (subargs.length == 1) {
-                        subargs = new String[] { subargs[0], "5", "" };
-                    } else if (subargs.length == 2) {
-                        subargs = new String[] { subargs[0], subargs[1], "" };
-                    }
-                    glossary.Game(subargs[0], Integer.parseInt(subargs[1]));
+                default:
+                    System.out.println("(!) Unknown option '" + option + "'. Valid ones are 'y' and 'n'.");
+                    option = "?";
                     break;
+            }
+        } while (option == "?");
+        System.out.println();
+    }
 
-                case "quit":
-                case "q":
-                    // Check for changes in glossary
-                    if (glossary.modified) {
-                        listening = false;
-                        String option;
-                        System.out.println("(?) There are unsaved changes, do you want to save? (Y/n/c)");
-                        do {
-                            System.out.print(" > ");
-                            option = Main.sc.nextLine();
-                            switch (option) {
-                                case "yes":
-                                case "y":
-                                case "":
-                                    try {
-                                        glossary.Write();
-                                    } catch (IOException e) {
-                                        System.out.println("(!) Error reading file.");
-                                    }
-                                    option = "c";
-                                    break;
-
-                                case "no":
-                                case "n":
-                                    // Stop listening for commands -> exit method
-                                    option = "c";
-                                    break;
-
-                                case "cancel":
-                                case "c":
-                                    listening = true;
-                                    break;
-
-                                default:
-                                    System.out.println("(!) Unknown option '" + option + "'.");
-                                    break;
-                            }
-                        } while (option != "c");
-                    } else {
-                        listening = false;
+    /**
+     * Restore the original glossary, discarding all changes made to it, and
+     * save it.
+     * 
+     * @param glossary the glossary object
+     */
+    private static void Reset(Glossary glossary) {
+        System.out.println("(?) Do you want to reset the glossary? All changes made will be lost. (y/N)");
+        String option;
+        do {
+            System.out.print(" > ");
+            option = sc.nextLine();
+            switch (option) {
+                case "yes":
+                case "y":
+                    Integer changed = glossary.Restore().size();
+                    try {
+                        // Removes the file of the changes
+                        glossary.Write();
+                        glossary.modified = false;
+                    } catch (IOException e) {
+                        System.out.println("(!) Error writing file.");
                     }
+                    System.out.println("(i) Discarded " + changed + " changes.");
+                    System.out.println();
+                    break;
+
+                case "no":
+                case "n":
+                case "":
+                    System.out.println("(i) Reseting cancelled.");
+                    System.out.println();
                     break;
 
                 default:
-                    System.out.println("(!) Unknown command '" + args[0] + "'.");
+                    System.out.println("(!) Unknown option '" + option + "'.");
+                    option = "?";
                     break;
             }
-            cmd = "";
-        }
-
+        } while (option == "?");
     }
 
     /**
@@ -282,6 +901,19 @@ public class Main {
                 System.out.println("(i) - (r)eset: Reset the glossary to the original data.");
                 System.out.println("(i) - (o)nthisday: Output a random slang word.");
                 System.out.println("(i) - (g)ame: Play a game.");
+                System.out.println("(i) - (i)mport: Add all slang words of another file.");
+                System.out.println("(i) - e(x)port: Save the glossary as csv, JSON Lines or compressed.");
+                System.out.println("(i) - (u)ndo: Undo the last change.");
+                System.out.println("(i) - redo: Redo the last undone change.");
+                System.out.println("(i) - diff: List changes made to the original glossary.");
+                System.out.println("(i) - (w)atch: Apply changes of the original file while running.");
+                System.out.println("(i) - dedupe: Find duplicated definitions.");
+                System.out.println("(i) - shard: Split the glossary into shard files.");
+                System.out.println("(i) - compress: Keep the glossary in a compressed file.");
+                System.out.println("(i) - replicate: Ship changes to read-only followers.");
+                System.out.println("(i) - stats: Report the most frequent searches and glossary statistics.");
+                System.out.println("(i) - complete: Complete the beginning of a slang word.");
+                System.out.println("(i) - (m)emory: Report the heap used by the glossary.");
                 System.out.println("(i) - (q)uit: Quit the program.");
                 break;
 
@@ -297,6 +929,11 @@ public class Main {
                 System.out.println("(i) Search commands (search <type>):");
                 System.out.println("(i) - search key: Search entries by keyword (case-insensitive).");
                 System.out.println("(i) - search def: Search entries by definition (case-insensitive).");
+                System.out.println("(i) - search key <term> --at <version>: Search in a previous version (see undo).");
+                System.out.println("(i) - search pattern <glob>: Search keywords matching a glob (case-sensitive): * = any characters, ? = any character, [abc] = one of them.");
+                System.out.println("(i) - search pattern ^<regex>$: Search keywords matching a regular expression (case-sensitive).");
+                System.out.println("(i) - search sound <term>: Search keywords sounding like a term, e.g. kewl for cool, phat for fat.");
+                System.out.println("(i) - search query <query>: Search definitions by words, e.g. money AND NOT drunk, \"laughing out loud\", (cool OR awesome) AND slang.");
                 break;
 
             case "add":
@@ -322,12 +959,89 @@ public class Main {
 
             case "game":
             case "g":
-                System.out.println("(i) Game commands (game <type> <stages>):");
+                System.out.println("(i) Game commands (game <type> <stages> [learner]):");
                 System.out.println("(i) - game: Enter game menu.");
                 System.out.println("(i) - game key: Guessing slang words.");
                 System.out.println("(i) - game def: Definition quiz.");
                 System.out.println("(i) - game key 8: Guessing 8 slang words.");
                 System.out.println("(i) - game def 12: Definition quiz with 12 questions.");
+                System.out.println("(i) - game review 10 alice: Spaced-repetition review of 10 slang words, due ones");
+                System.out.println("(i)   first, for learner alice (default: your user name).");
+                break;
+
+            case "import":
+            case "i":
+                System.out.println("(i) Import commands (import <file> --on-conflict=<option>):");
+                System.out.println("(i) - import <file>: Add slang words of <file>, skipping existing ones.");
+                System.out.println("(i) - import <file> --on-conflict=overwrite: Replace existing slang words.");
+                System.out.println("(i) - import <file> --on-conflict=append: Append definitions to existing slang words.");
+                System.out.println("(i) - import <file> --on-conflict=skip: Keep existing slang words (default).");
+                break;
+
+            case "export":
+            case "x":
+                System.out.println("(i) Export commands (export <file>):");
+                System.out.println("(i) - export <file>.csv: Save the glossary as csv (RFC 4180), one slang word per row.");
+                System.out.println("(i) - export <file>.jsonl: Save the glossary as JSON Lines.");
+                System.out.println("(i) - export <file>.ugz: Save the glossary compressed (see 'help compress').");
+                System.out.println("(i) - Exported files can be added back with 'import <file>'.");
+                break;
+
+            case "watch":
+            case "w":
+                System.out.println("(i) Watch commands (watch <option>):");
+                System.out.println("(i) - watch: Apply changes made to the original file while the program runs.");
+                System.out.println("(i) - watch stop: Stop watching the original file.");
+                break;
+
+            case "dedupe":
+                System.out.println("(i) Dedupe commands (dedupe <option>):");
+                System.out.println("(i) - dedupe: Report duplicated definitions in the glossary.");
+                System.out.println("(i) - dedupe merge: Merge duplicated definitions of each slang word.");
+                System.out.println("(i) - dedupe <file>: Report duplicated definitions in a glossary file.");
+                break;
+
+            case "shard":
+                System.out.println("(i) Shard commands (shard <number>):");
+                System.out.println("(i) - shard <number>: Split the glossary into <number> hash-partitioned shard files.");
+                System.out.println("(i) - The glossary is then read from its shards, and changes are saved to their change logs.");
+                System.out.println("(i) - Resharding is done offline with 'java ShardedStore <glossary> <number>'.");
+                break;
+
+            case "stats":
+                System.out.println("(i) Stats commands (stats <option>):");
+                System.out.println("(i) - stats top: Report the 10 most frequent searches by keyword and definition.");
+                System.out.println("(i) - stats top <number>: Report the <number> most frequent searches.");
+                System.out.println("(i) - stats corpus: Report counts, the 10 most frequent words and slang words sharing definitions.");
+                System.out.println("(i) - stats corpus <number>: Report the <number> most frequent words and groups.");
+                System.out.println("(i) - The results of the most frequent searches are cached.");
+                break;
+
+            case "complete":
+                System.out.println("(i) Complete commands (complete <prefix>):");
+                System.out.println("(i) - complete <prefix>: List slang words starting with <prefix>, the most searched first.");
+                break;
+
+            case "replicate":
+                System.out.println("(i) Replicate commands (replicate <option>):");
+                System.out.println("(i) - replicate: Log changes for followers started with 'java Main <glossary> --follow'.");
+                System.out.println("(i) - replicate stop: Stop logging changes.");
+                System.out.println("(i) - replicate status: Report the last record, or the lag of a follower.");
+                System.out.println("(i) - Followers are read-only and start from the last snapshot of the writer.");
+                break;
+
+            case "compress":
+                System.out.println("(i) Compress commands (compress <option>):");
+                System.out.println("(i) - compress: Keep the glossary in a compressed file instead of csv.");
+                System.out.println("(i) - compress off: Go back to the csv file.");
+                System.out.println("(i) - A slang word is looked up offline with 'java BlockFile <file>.ugz <keyword>'.");
+                break;
+
+            case "memory":
+            case "m":
+                System.out.println("(i) Memory commands (memory <entries>):");
+                System.out.println("(i) - memory: Report the heap used by each structure, per entry and per definition.");
+                System.out.println("(i) - memory <entries>: Also estimate the heap needed for <entries> entries.");
                 break;
 
             default:
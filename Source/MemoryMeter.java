@@ -0,0 +1,311 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.*;
+import java.util.*;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Measure the heap retained by object graphs, from the layout of their
+ * objects: each object costs its header plus its fields (4 or 8 bytes per
+ * reference depending on compressed references), rounded up to the object
+ * alignment, and each array its header plus its elements. The layout settings
+ * are read from the running JVM.
+ * <p>
+ * Objects of the program are walked through their fields. JDK classes can't be
+ * walked that way, so the collections used by the glossary (TreeMap, TreeSet,
+ * HashMap, LinkedHashMap, HashSet, ArrayList, ArrayDeque, PriorityQueue),
+ * strings and boxed numbers are accounted from the field layout of their
+ * classes and their elements. Other JDK collections count for their own fields
+ * and their elements, other JDK objects only for their own fields. Hash tables
+ * and arrays are assumed to have the capacity they would get by growing to
+ * their current size.
+ * <p>
+ * Every object is counted once per meter: measuring several roots attributes
+ * shared objects to the first root measured.
+ */
+public class MemoryMeter {
+    public final Boolean compressedOops;
+    public final Integer referenceSize, headerSize, arrayHeaderSize, alignment;
+    private Boolean compactStrings;
+
+    private IdentityHashMap<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
+    private HashMap<Class<?>, Long> shallow = new HashMap<Class<?>, Long>();
+    private long strings = 0, lists = 0, total = 0;
+
+    public MemoryMeter() {
+        Boolean oops, classPointers, compact;
+        int align;
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            oops = Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+            classPointers = Boolean.parseBoolean(bean.getVMOption("UseCompressedClassPointers").getValue());
+            compact = Boolean.parseBoolean(bean.getVMOption("CompactStrings").getValue());
+            align = Integer.parseInt(bean.getVMOption("ObjectAlignmentInBytes").getValue());
+        } catch (RuntimeException | LinkageError e) {
+            // Not a HotSpot JVM: use its defaults for heaps under 32 GB
+            oops = Runtime.getRuntime().maxMemory() < (32L << 30);
+            classPointers = true;
+            compact = true;
+            align = 8;
+        }
+        compressedOops = oops;
+        compactStrings = compact;
+        alignment = align;
+        referenceSize = oops ? 4 : 8;
+        headerSize = classPointers ? 12 : 16;
+        arrayHeaderSize = headerSize + 4;
+    }
+
+    /**
+     * Measure the objects reachable from a root, except the ones already
+     * measured or excluded.
+     *
+     * @param root the root object, can be null
+     * @return the size of the newly reached objects, in bytes
+     */
+    public long Measure(Object root) {
+        long before = total;
+        ArrayDeque<Object> stack = new ArrayDeque<Object>();
+        Push(stack, root);
+        while (!stack.isEmpty()) {
+            Visit(stack.pop(), stack);
+        }
+        return total - before;
+    }
+
+    /**
+     * Don't count an object (nor walk through it) in later measures.
+     *
+     * @param object the object
+     */
+    public void Exclude(Object object) {
+        seen.put(object, true);
+    }
+
+    /**
+     * @return bytes of strings (with their content) measured so far
+     */
+    public long getStrings() {
+        return strings;
+    }
+
+    /**
+     * @return bytes of String and int arrays measured so far (lists of
+     *         definitions and ids)
+     */
+    public long getLists() {
+        return lists;
+    }
+
+    /**
+     * @return bytes of all objects measured so far
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    private void Push(ArrayDeque<Object> stack, Object object) {
+        if (object != null && !IsShared(object) && seen.put(object, true) == null) {
+            stack.push(object);
+        }
+    }
+
+    /**
+     * @return true for objects shared by the whole JVM, which no structure
+     *         retains (small boxed integers, booleans, enums, classes)
+     */
+    private static Boolean IsShared(Object object) {
+        if (object instanceof Integer || object instanceof Short || object instanceof Byte
+                || object instanceof Long) {
+            long value = ((Number) object).longValue();
+            return value >= -128 && value <= 127;
+        }
+        return object instanceof Boolean || object instanceof Enum || object instanceof Class;
+    }
+
+    private void Visit(Object object, ArrayDeque<Object> stack) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            Class<?> component = type.getComponentType();
+            int length = Array.getLength(object);
+            long size = ArraySize(component, length);
+            total += size;
+            if (component == String.class || component == int.class) {
+                lists += size;
+            }
+            if (!component.isPrimitive()) {
+                for (Object element : (Object[]) object) {
+                    Push(stack, element);
+                }
+            }
+            return;
+        }
+        long size = Shallow(type);
+        if (object instanceof String) {
+            String str = (String) object;
+            Boolean latin1 = compactStrings;
+            for (int i = 0; latin1 && i < str.length(); i++) {
+                latin1 = str.charAt(i) <= 0xFF;
+            }
+            size += ArraySize(byte.class, str.length() * (latin1 ? 1 : 2));
+            strings += size;
+        } else if (object instanceof TreeMap) {
+            size += Nodes(((Map<?, ?>) object).size(), "java.util.TreeMap$Entry");
+            PushAll(stack, (Map<?, ?>) object);
+        } else if (object instanceof HashMap) {
+            size += Table(((Map<?, ?>) object).size(), object instanceof LinkedHashMap);
+            PushAll(stack, (Map<?, ?>) object);
+        } else if (object instanceof HashSet) {
+            // Backed by a HashMap (or LinkedHashMap) of the elements
+            Boolean linked = object instanceof LinkedHashSet;
+            size += Shallow(linked ? LinkedHashMap.class : HashMap.class)
+                    + Table(((Set<?>) object).size(), linked);
+            PushAll(stack, (Set<?>) object);
+        } else if (object instanceof ArrayList) {
+            int capacity = 10;
+            while (capacity < ((List<?>) object).size()) {
+                capacity += capacity >> 1;
+            }
+            size += ArraySize(Object.class, ((List<?>) object).isEmpty() ? 0 : capacity);
+            PushAll(stack, (List<?>) object);
+        } else if (object instanceof TreeSet) {
+            // Backed by a TreeMap of the elements
+            size += Shallow(TreeMap.class) + Nodes(((Set<?>) object).size(), "java.util.TreeMap$Entry");
+            PushAll(stack, (Collection<?>) object);
+        } else if (object instanceof ArrayDeque) {
+            // One slot is always left free
+            size += ArraySize(Object.class, Capacity(17, ((Collection<?>) object).size() + 1));
+            PushAll(stack, (Collection<?>) object);
+        } else if (object instanceof PriorityQueue) {
+            size += ArraySize(Object.class, Capacity(11, ((Collection<?>) object).size()));
+            PushAll(stack, (Collection<?>) object);
+        } else if (IsJdk(type) && (object instanceof Collection || object instanceof Map)) {
+            // Other JDK collections: their own fields and their elements
+            if (object instanceof Map) {
+                PushAll(stack, (Map<?, ?>) object);
+            } else {
+                PushAll(stack, (Collection<?>) object);
+            }
+        } else if (!IsJdk(type)) {
+            // Walk through the fields of the objects of the program
+            for (Class<?> c = type; c != null && !IsJdk(c); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        Push(stack, field.get(object));
+                    } catch (RuntimeException | IllegalAccessException e) {
+                        // Not readable, only its own size is known
+                    }
+                }
+            }
+        }
+        total += size;
+    }
+
+    private void PushAll(ArrayDeque<Object> stack, Map<?, ?> map) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Push(stack, entry.getKey());
+            Push(stack, entry.getValue());
+        }
+    }
+
+    private void PushAll(ArrayDeque<Object> stack, Collection<?> collection) {
+        for (Object element : collection) {
+            Push(stack, element);
+        }
+    }
+
+    /**
+     * Capacity of an ArrayDeque or PriorityQueue array grown from its default
+     * capacity to hold a number of elements.
+     */
+    private static int Capacity(int capacity, int size) {
+        while (capacity < size) {
+            capacity += capacity < 64 ? capacity + 2 : capacity >> 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Size of the table and nodes of a HashMap (or LinkedHashMap), grown from the
+     * default capacity to hold its entries.
+     */
+    private long Table(int size, Boolean linked) {
+        if (size == 0) {
+            return 0;
+        }
+        int capacity = 16;
+        while (capacity * 3 / 4 < size) {
+            capacity <<= 1;
+        }
+        return ArraySize(Object.class, capacity)
+                + Nodes(size, linked ? "java.util.LinkedHashMap$Entry" : "java.util.HashMap$Node");
+    }
+
+    private long Nodes(int count, String className) {
+        try {
+            return count * Shallow(Class.forName(className));
+        } catch (ClassNotFoundException e) {
+            // Another JDK: a key, a value and 3 links per node
+            return count * Align(headerSize + 5L * referenceSize);
+        }
+    }
+
+    /**
+     * Size of an instance of a class: its header and all its instance fields,
+     * including the inherited ones, rounded up to the alignment.
+     */
+    private long Shallow(Class<?> type) {
+        Long size = shallow.get(type);
+        if (size == null) {
+            long fields = 0;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        fields += FieldSize(field.getType());
+                    }
+                }
+            }
+            size = Align(headerSize + fields);
+            shallow.put(type, size);
+        }
+        return size;
+    }
+
+    private long ArraySize(Class<?> component, long length) {
+        int element = FieldSize(component);
+        // Elements of 8 bytes start on an 8-byte boundary
+        long header = element == 8 ? Align(arrayHeaderSize, 8) : arrayHeaderSize;
+        return Align(header + length * element);
+    }
+
+    private int FieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return referenceSize;
+    }
+
+    private long Align(long size) {
+        return Align(size, alignment);
+    }
+
+    private static long Align(long size, int alignment) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    private static Boolean IsJdk(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.")
+                || name.startsWith("sun.") || name.startsWith("com.sun.");
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.*;
+
+/**
+ * An immutable sorted map (AVL tree). Adding or removing an entry returns a new
+ * map sharing all nodes but the O(log n) ones on the changed path, so keeping
+ * every version of a map only costs memory proportional to the changes, and
+ * taking a snapshot is just keeping a reference.
+ * REF: https://en.wikipedia.org/wiki/Persistent_data_structure#Trees
+ */
+public final class PersistentTreeMap extends AbstractMap<String, String[]> {
+    public static final PersistentTreeMap EMPTY = new PersistentTreeMap(null);
+
+    private static final class Node {
+        private final String key;
+        private final String[] value;
+        private final Node left, right;
+        private final int height, size;
+
+        private Node(String key, String[] value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            height = Math.max(Height(left), Height(right)) + 1;
+            size = Size(left) + Size(right) + 1;
+        }
+    }
+
+    private final Node root;
+
+    private PersistentTreeMap(Node root) {
+        this.root = root;
+    }
+
+    @Override
+    public int size() {
+        return Size(root);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return Find(key) != null;
+    }
+
+    @Override
+    public String[] get(Object key) {
+        Node node = Find(key);
+        return node == null ? null : node.value;
+    }
+
+    private Node Find(Object key) {
+        Node node = root;
+        while (node != null) {
+            int cmp = ((String) key).compareTo(node.key);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @param key   the key
+     * @param value the value
+     * @return a map with the entry added or replaced, this map is unchanged
+     */
+    public PersistentTreeMap With(String key, String[] value) {
+        return new PersistentTreeMap(Put(root, key, value));
+    }
+
+    /**
+     * @param key the key
+     * @return a map without the entry, this map is unchanged
+     */
+    public PersistentTreeMap Without(String key) {
+        Node newRoot = Remove(root, key);
+        return newRoot == root ? this : new PersistentTreeMap(newRoot);
+    }
+
+    private static Node Put(Node node, String key, String[] value) {
+        if (node == null) {
+            return new Node(key, value, null, null);
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return new Node(key, value, node.left, node.right);
+        } else if (cmp < 0) {
+            return Balance(node.key, node.value, Put(node.left, key, value), node.right);
+        }
+        return Balance(node.key, node.value, node.left, Put(node.right, key, value));
+    }
+
+    private static Node Remove(Node node, String key) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp < 0) {
+            Node left = Remove(node.left, key);
+            return left == node.left ? node : Balance(node.key, node.value, left, node.right);
+        } else if (cmp > 0) {
+            Node right = Remove(node.right, key);
+            return right == node.right ? node : Balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        }
+        // Replace with the smallest entry of the right subtree
+        Node min = node.right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return Balance(min.key, min.value, node.left, Remove(node.right, min.key));
+    }
+
+    private static Node Balance(String key, String[] value, Node left, Node right) {
+        int diff = Height(left) - Height(right);
+        if (diff > 1) {
+            if (Height(left.left) < Height(left.right)) {
+                left = RotateLeft(left.key, left.value, left.left, left.right);
+            }
+            return RotateRight(key, value, left, right);
+        } else if (diff < -1) {
+            if (Height(right.right) < Height(right.left)) {
+                right = RotateRight(right.key, right.value, right.left, right.right);
+            }
+            return RotateLeft(key, value, left, right);
+        }
+        return new Node(key, value, left, right);
+    }
+
+    private static Node RotateRight(String key, String[] value, Node left, Node right) {
+        return new Node(left.key, left.value, left.left, new Node(key, value, left.right, right));
+    }
+
+    private static Node RotateLeft(String key, String[] value, Node left, Node right) {
+        return new Node(right.key, right.value, new Node(key, value, left, right.left), right.right);
+    }
+
+    private static int Height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int Size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * The entries in key order. The map can't be changed through them.
+     */
+    @Override
+    public Set<Map.Entry<String, String[]>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String[]>>() {
+            @Override
+            public int size() {
+                return Size(root);
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String[]>> iterator() {
+                ArrayDeque<Node> stack = new ArrayDeque<Node>();
+                for (Node node = root; node != null; node = node.left) {
+                    stack.push(node);
+                }
+                return new Iterator<Map.Entry<String, String[]>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return !stack.isEmpty();
+                    }
+
+                    @Override
+                    public Map.Entry<String, String[]> next() {
+                        if (stack.isEmpty()) {
+                            throw new NoSuchElementException();
+                        }
+                        Node node = stack.pop();
+                        for (Node child = node.right; child != null; child = child.left) {
+                            stack.push(child);
+                        }
+                        return new SimpleImmutableEntry<String, String[]>(node.key, node.value);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.*;
+
+/**
+ * Find keywords that sound alike, such as "kewl" and "cool", "phat" and "fat"
+ * or "skool" and "school". Each keyword is encoded into phonetic codes with a
+ * simplified Double Metaphone tuned for slang, and the index maps every code to
+ * the keywords having it, so a lookup only encodes the term and reads its
+ * buckets.
+ * <p>
+ * Before encoding, letters and digits standing for whole words are spelled
+ * out ("u" = you, "r" = are, "2" = to, "4" = for, "8" = ate...), and the words
+ * are joined, so "what ever" sounds like "whatever". Like Double Metaphone,
+ * a keyword gets a primary code and an alternate one for the letters read in
+ * two ways ("ch" as in church or school, "th" as in thing or Thomas, "g" as in
+ * gem or get).
+ * REF: https://en.wikipedia.org/wiki/Metaphone
+ */
+public class PhoneticIndex {
+    private static final Map<String, String> WORDS = Map.ofEntries(Map.entry("u", "you"), Map.entry("r", "are"),
+            Map.entry("c", "see"), Map.entry("y", "why"), Map.entry("n", "and"), Map.entry("b", "be"),
+            Map.entry("2", "to"), Map.entry("4", "for"), Map.entry("8", "ate"));
+    private static final Map<Character, String> DIGITS = Map.of('0', "o", '1', "i", '2', "to", '3', "e", '4', "for",
+            '5', "s", '7', "t", '8', "ate");
+
+    private HashMap<String, String[]> codes = new HashMap<String, String[]>();
+    private HashMap<String, HashSet<String>> buckets = new HashMap<String, HashSet<String>>();
+
+    /**
+     * Build the index over all keywords.
+     *
+     * @param keys the keywords
+     */
+    public PhoneticIndex(Collection<String> keys) {
+        for (String key : keys) {
+            Put(key);
+        }
+    }
+
+    /**
+     * @return number of indexed keywords
+     */
+    public Integer size() {
+        return codes.size();
+    }
+
+    /**
+     * Add a keyword to the index.
+     *
+     * @param key the keyword
+     */
+    public void Put(String key) {
+        Remove(key);
+        String[] keycodes = Encode(key);
+        codes.put(key, keycodes);
+        for (String code : keycodes) {
+            buckets.computeIfAbsent(code, k -> new HashSet<String>()).add(key);
+        }
+    }
+
+    /**
+     * Remove a keyword from the index.
+     *
+     * @param key the keyword
+     */
+    public void Remove(String key) {
+        String[] keycodes = codes.remove(key);
+        if (keycodes == null) {
+            return;
+        }
+        for (String code : keycodes) {
+            HashSet<String> bucket = buckets.get(code);
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                buckets.remove(code);
+            }
+        }
+    }
+
+    /**
+     * Find the keywords sounding like a term.
+     *
+     * @param term the term
+     * @return the keywords sharing a code with the term, sorted
+     */
+    public TreeSet<String> Search(String term) {
+        TreeSet<String> results = new TreeSet<String>();
+        for (String code : Encode(term)) {
+            HashSet<String> bucket = buckets.get(code);
+            if (bucket != null) {
+                results.addAll(bucket);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Encode a keyword into its phonetic codes.
+     *
+     * @param key the keyword
+     * @return the primary code and, if it differs, the alternate code (no code
+     *         for a keyword without letters nor digits)
+     */
+    public static String[] Encode(String key) {
+        String word = Normalize(key);
+        if (word.isEmpty()) {
+            return new String[0];
+        }
+        String primary = Encode(word, false), alternate = Encode(word, true);
+        return primary.equals(alternate) ? new String[] { primary } : new String[] { primary, alternate };
+    }
+
+    /**
+     * Lower-case the keyword, spell out the letters and digits standing for
+     * words, and join the words.
+     */
+    private static String Normalize(String key) {
+        StringBuilder sb = new StringBuilder();
+        for (String word : key.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            String spelled = WORDS.get(word);
+            if (spelled != null) {
+                sb.append(spelled);
+                continue;
+            }
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (c >= 'a' && c <= 'z') {
+                    sb.append(c);
+                } else if (DIGITS.containsKey(c)) {
+                    sb.append(DIGITS.get(c));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Boolean IsVowel(String word, int i) {
+        return i >= 0 && i < word.length() && "aeiou".indexOf(word.charAt(i)) >= 0;
+    }
+
+    private static Boolean At(String word, int i, String letters) {
+        return i >= 0 && i < word.length() && letters.indexOf(word.charAt(i)) >= 0;
+    }
+
+    /**
+     * Encode a normalized word, with the primary or alternate reading of
+     * ambiguous letters.
+     */
+    private static String Encode(String word, Boolean alternate) {
+        StringBuilder code = new StringBuilder();
+        int i = 0;
+        // Silent first letters
+        if (word.startsWith("kn") || word.startsWith("gn") || word.startsWith("pn") || word.startsWith("wr")
+                || word.startsWith("ps")) {
+            i = 1;
+        } else if (word.startsWith("wh")) {
+            code.append('W');
+            i = 2;
+        } else if (word.startsWith("x")) {
+            code.append('S');
+            i = 1;
+        } else if (IsVowel(word, 0)) {
+            code.append('A');
+            i = 1;
+        }
+        for (; i < word.length(); i++) {
+            char c = word.charAt(i);
+            // Doubled letters sound as one
+            if (i > 0 && c == word.charAt(i - 1) && c != 'c') {
+                continue;
+            }
+            switch (c) {
+                case 'b':
+                    // Silent after 'm' at the end, as in "dumb"
+                    if (!(i == word.length() - 1 && At(word, i - 1, "m"))) {
+                        code.append('B');
+                    }
+                    break;
+                case 'c':
+                    if (At(word, i + 1, "h")) {
+                        code.append(alternate ? 'K' : 'X');
+                        i++;
+                    } else if (At(word, i + 1, "iey")) {
+                        code.append('S');
+                    } else {
+                        code.append('K');
+                        if (At(word, i + 1, "kq")) {
+                            i++;
+                        }
+                    }
+                    break;
+                case 'd':
+                    if (At(word, i + 1, "g") && At(word, i + 2, "iey")) {
+                        code.append('J');
+                        i++;
+                    } else {
+                        code.append('T');
+                    }
+                    break;
+                case 'g':
+                    if (At(word, i + 1, "h")) {
+                        // "laugh" but "night"
+                        if (i + 2 == word.length()) {
+                            code.append('F');
+                        }
+                        i++;
+                    } else if (At(word, i + 1, "n") && i + 2 == word.length()) {
+                        // Silent as in "sign"
+                    } else if (At(word, i + 1, "iey")) {
+                        code.append(alternate ? 'K' : 'J');
+                    } else {
+                        code.append('K');
+                    }
+                    break;
+                case 'h':
+                    if (IsVowel(word, i + 1) && !At(word, i - 1, "cgpstw")) {
+                        code.append('H');
+                    }
+                    break;
+                case 'p':
+                    if (At(word, i + 1, "h")) {
+                        code.append('F');
+                        i++;
+                    } else {
+                        code.append('P');
+                    }
+                    break;
+                case 's':
+                    if (At(word, i + 1, "h")) {
+                        code.append('X');
+                        i++;
+                    } else if (At(word, i + 1, "i") && At(word, i + 2, "oa")) {
+                        code.append('X');
+                    } else {
+                        code.append('S');
+                    }
+                    break;
+                case 't':
+                    if (At(word, i + 1, "h")) {
+                        code.append(alternate ? 'T' : '0');
+                        i++;
+                    } else if (At(word, i + 1, "i") && At(word, i + 2, "oa")) {
+                        code.append('X');
+                    } else if (!(At(word, i + 1, "c") && At(word, i + 2, "h"))) {
+                        code.append('T');
+                    }
+                    break;
+                case 'w':
+                case 'y':
+                    // Only consonants before a vowel
+                    if (IsVowel(word, i + 1)) {
+                        code.append(Character.toUpperCase(c));
+                    }
+                    break;
+                case 'q':
+                case 'k':
+                    code.append('K');
+                    break;
+                case 'v':
+                    code.append('F');
+                    break;
+                case 'x':
+                    code.append("KS");
+                    break;
+                case 'z':
+                    code.append('S');
+                    break;
+                case 'a':
+                case 'e':
+                case 'i':
+                case 'o':
+                case 'u':
+                    // Vowels are only kept at the start
+                    break;
+                default:
+                    code.append(Character.toUpperCase(c));
+                    break;
+            }
+        }
+        return code.toString();
+    }
+}
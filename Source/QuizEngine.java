@@ -0,0 +1,304 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Generate quiz questions from a snapshot of the glossary. Questions are
+ * sampled without replacement using Floyd's algorithm (O(k) for k questions)
+ * and each question picks its 3 distractors in O(1). Every quiz is derived
+ * from the engine seed and its sequence number, so the same seed always
+ * produces the same quizzes, whatever thread generates them.
+ * <p>
+ * If a SimilarityIndex is given, distractors are preferably chosen among the
+ * keywords with similar definitions, so wrong answers are plausible.
+ */
+public class QuizEngine {
+    public static final Integer OPTIONS = 4;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final Integer NEAR = 8;
+
+    private final String[] keys;
+    private final String[][] defs;
+    private final long seed;
+    private final SimilarityIndex similarity;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * A question of the quiz. In a "key" quiz the definition is asked and the
+     * options are keywords, in a "def" quiz it's the other way around.
+     */
+    public static class Question {
+        public final String key, def;
+        public final String[] options;
+        public final Integer answer;
+
+        private Question(String key, String def, String[] options, Integer answer) {
+            this.key = key;
+            this.def = def;
+            this.options = options;
+            this.answer = answer;
+        }
+
+        /**
+         * Check an answer, also accepting options identical to the correct one.
+         *
+         * @param option index of the chosen option
+         * @return true if the option is correct
+         */
+        public Boolean IsCorrect(Integer option) {
+            return options[option].equals(options[answer]);
+        }
+    }
+
+    /**
+     * Take a snapshot of the glossary for generating quizzes.
+     *
+     * @param data the glossary entries
+     * @param seed seed of all generated quizzes
+     */
+    public QuizEngine(Map<String, String[]> data, long seed) {
+        this(data, seed, null);
+    }
+
+    /**
+     * Take a snapshot of the glossary for generating quizzes with similar
+     * distractors. The index must not be modified while quizzes are generated.
+     *
+     * @param data       the glossary entries, sorted by keyword
+     * @param seed       seed of all generated quizzes
+     * @param similarity similarity index over the same entries, can be null
+     */
+    public QuizEngine(Map<String, String[]> data, long seed, SimilarityIndex similarity) {
+        this.seed = seed;
+        this.similarity = similarity;
+        keys = new String[data.size()];
+        defs = new String[data.size()][];
+        int i = 0;
+        for (Map.Entry<String, String[]> entry : data.entrySet()) {
+            keys[i] = entry.getKey();
+            defs[i++] = entry.getValue();
+        }
+    }
+
+    /**
+     * @return number of keywords in the snapshot
+     */
+    public Integer size() {
+        return keys.length;
+    }
+
+    /**
+     * @param id index of a keyword in the snapshot, from 0 to size() - 1
+     * @return the keyword
+     */
+    public String getKey(int id) {
+        return keys[id];
+    }
+
+    /**
+     * Generate the next quiz of this engine. Thread-safe.
+     *
+     * @param stages number of questions
+     * @param type   "key" or "def"
+     * @return the questions
+     */
+    public Question[] Generate(Integer stages, String type) {
+        return Generate(stages, type, sequence.getAndIncrement());
+    }
+
+    /**
+     * Generate the n-th quiz of this engine. The result only depends on the seed
+     * of the engine and n.
+     *
+     * @param stages number of questions
+     * @param type   "key" or "def"
+     * @param n      sequence number of the quiz
+     * @return the questions
+     */
+    public Question[] Generate(Integer stages, String type, long n) {
+        SplittableRandom random = new SplittableRandom(seed + n * GOLDEN);
+        Question[] quiz = new Question[stages];
+        if (keys.length == 0) {
+            return new Question[0];
+        }
+        int[] ids = Sample(keys.length, Math.min(stages, keys.length), random);
+        for (int i = 0; i < stages; i++) {
+            // If glossary size is smaller than stages, there will be duplicate questions
+            int id = i < ids.length ? ids[i] : random.nextInt(keys.length);
+            quiz[i] = Ask(id, type, random);
+        }
+        return quiz;
+    }
+
+    /**
+     * Generate the next quiz of this engine, asking about the given keywords.
+     * Keywords not in the snapshot are skipped. Thread-safe.
+     *
+     * @param asked the keywords to ask about, in order
+     * @param type  "key" or "def"
+     * @return the questions
+     */
+    public Question[] Generate(List<String> asked, String type) {
+        SplittableRandom random = new SplittableRandom(seed + sequence.getAndIncrement() * GOLDEN);
+        ArrayList<Question> quiz = new ArrayList<Question>();
+        for (String key : asked) {
+            int id = Arrays.binarySearch(keys, key);
+            if (id >= 0) {
+                quiz.add(Ask(id, type, random));
+            }
+        }
+        return quiz.toArray(new Question[0]);
+    }
+
+    /**
+     * Pre-generate many quizzes in parallel, starting from the current sequence
+     * number. The result is the same as calling Generate() count times.
+     *
+     * @param count  number of quizzes
+     * @param stages number of questions per quiz
+     * @param type   "key" or "def"
+     * @return the quizzes, ordered by sequence number
+     */
+    public List<Question[]> GenerateBatch(Integer count, Integer stages, String type) {
+        long first = sequence.getAndAdd(count);
+        Question[][] quizzes = new Question[count][];
+        IntStream.range(0, count).parallel().forEach(i -> quizzes[i] = Generate(stages, type, first + i));
+        return Arrays.asList(quizzes);
+    }
+
+    /**
+     * Build a question for a keyword with 3 distinct distractors.
+     *
+     * @param id     index of the keyword
+     * @param type   "key" or "def"
+     * @param random random source
+     * @return the question
+     */
+    private Question Ask(int id, String type, SplittableRandom random) {
+        String def = Pick(defs[id], random);
+        String correct = type.equals("key") ? keys[id] : def;
+        String[] options = new String[OPTIONS];
+        int answer = random.nextInt(OPTIONS);
+        options[answer] = correct;
+        int[] bad = Distractors(id, random);
+        for (int a = 0, b = 0; a < OPTIONS; a++) {
+            if (a == answer) {
+                continue;
+            }
+            int badId = bad[b++ % bad.length];
+            options[a] = type.equals("key") ? keys[badId] : Pick(defs[badId], random);
+        }
+        return new Question(keys[id], def, options, answer);
+    }
+
+    /**
+     * Choose 3 distinct keywords other than the given one. If the glossary is too
+     * small, the returned keywords may repeat (or be the given one).
+     *
+     * @param id     index of the correct keyword
+     * @param random random source
+     * @return indices of the distractors
+     */
+    private int[] Distractors(int id, SplittableRandom random) {
+        int n = keys.length - 1;
+        if (n < OPTIONS - 1) {
+            int[] bad = new int[OPTIONS - 1];
+            for (int i = 0; i < bad.length; i++) {
+                bad[i] = random.nextInt(keys.length);
+            }
+            return bad;
+        }
+        int[] bad = null;
+        if (similarity != null) {
+            bad = NearDistractors(id, random);
+        }
+        if (bad == null) {
+            // Sample from [0, n) and skip over the correct keyword
+            bad = Sample(n, OPTIONS - 1, random);
+            for (int i = 0; i < bad.length; i++) {
+                if (bad[i] >= id) {
+                    bad[i]++;
+                }
+            }
+        }
+        return bad;
+    }
+
+    /**
+     * Choose 3 distinct distractors, preferring keywords with definitions similar
+     * to the correct one. Missing distractors are filled randomly.
+     *
+     * @param id     index of the correct keyword
+     * @param random random source
+     * @return indices of the distractors, or null if no similar keyword exists
+     */
+    private int[] NearDistractors(int id, SplittableRandom random) {
+        List<String> near = new ArrayList<String>();
+        for (String key : similarity.Similar(keys[id], NEAR * 2)) {
+            // Skip identical meanings, they would be correct answers too
+            if (near.size() < NEAR && similarity.Similarity(keys[id], key) < 1.0) {
+                near.add(key);
+            }
+        }
+        if (near.isEmpty()) {
+            return null;
+        }
+        int[] bad = new int[OPTIONS - 1];
+        HashSet<Integer> used = new HashSet<Integer>();
+        used.add(id);
+        int count = 0;
+        for (int pick : Sample(near.size(), Math.min(bad.length, near.size()), random)) {
+            int badId = Arrays.binarySearch(keys, near.get(pick));
+            if (badId >= 0 && used.add(badId)) {
+                bad[count++] = badId;
+            }
+        }
+        while (count < bad.length) {
+            // Expected O(1) tries, as the glossary has more than 3 other keywords
+            int badId = random.nextInt(keys.length);
+            if (used.add(badId)) {
+                bad[count++] = badId;
+            }
+        }
+        return bad;
+    }
+
+    /**
+     * Pick a random definition.
+     *
+     * @param values definitions of a keyword
+     * @param random random source
+     * @return one of the definitions
+     */
+    private static String Pick(String[] values, SplittableRandom random) {
+        return values.length == 0 ? "" : values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Sample k distinct integers from [0, n) with Floyd's algorithm, in O(k) time
+     * and space. The order of the result is also random.
+     * REF: https://fermatslibrary.com/s/a-sample-of-brilliance
+     *
+     * @param n      size of the range
+     * @param k      number of samples, at most n
+     * @param random random source
+     * @return the samples
+     */
+    public static int[] Sample(int n, int k, SplittableRandom random) {
+        int[] result = new int[k];
+        HashSet<Integer> chosen = new HashSet<Integer>(k * 2);
+        int i = 0;
+        for (int j = n - k; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            // Either t or j is new, insert it at a random position to shuffle
+            int value = chosen.add(t) ? t : j;
+            if (value == j) {
+                chosen.add(j);
+            }
+            int pos = random.nextInt(i + 1);
+            result[i++] = result[pos];
+            result[pos] = value;
+        }
+        return result;
+    }
+}
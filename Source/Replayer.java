@@ -0,0 +1,369 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replay a query log against a glossary to load-test it, in-process:
+ * <code>java Replayer &lt;glossary&gt; &lt;log&gt; [options]</code>. The
+ * glossary is read as usual but never written, so its files are left as they
+ * are.
+ * <p>
+ * The log is either a search history (".hist.csv", rows <code>Code,Term</code>
+ * with 0 for a keyword search and 1 for a definition search), or a csv file
+ * with the header <code>Time,Op,Key,Value</code>: the time of the operation in
+ * milliseconds from the start of the log, the operation (key, def, query,
+ * pattern, sound, put, append or remove), then its term or keyword and the
+ * definition of put and append.
+ * <p>
+ * Operations are run by a number of workers, on virtual threads when the JVM
+ * has them:
+ * <ul>
+ * <li>open loop (default): operations start on schedule, at the times of the
+ * log or at a fixed rate (--rate), whether the previous ones are done or not.
+ * At most --workers of them run at once, the others wait for their turn.</li>
+ * <li>closed loop (--closed): each worker runs its next operation when the
+ * previous one is done, paced so that all workers together follow --rate if
+ * given.</li>
+ * </ul>
+ * Latencies are measured from the time each operation was scheduled to start,
+ * not from when it actually started, so an operation delayed by slower ones is
+ * reported as slow too (correcting coordinated omission). A closed loop without
+ * rate has no schedule: it reports service times only.
+ * REF: https://www.azul.com/files/HowNotToMeasureLatency_LLSummit_NYC_12Nov2013.pdf
+ */
+public class Replayer {
+    /**
+     * An operation of the log.
+     */
+    private static class Op {
+        private long time; // Milliseconds from the start of the log, -1 if unknown
+        private String type, key, value;
+    }
+
+    private Glossary glossary;
+    private ArrayList<Op> ops;
+    private Integer workers = 4, repeat = 1;
+    private Double rate = null;
+    private Boolean closed = false;
+
+    // Per operation: nanoseconds from its scheduled start, and from its actual
+    // start, to its end
+    private long[] latencies, services;
+    private LongAdder errors = new LongAdder();
+
+    private Replayer(Glossary glossary, ArrayList<Op> ops) {
+        this.glossary = glossary;
+        this.ops = ops;
+    }
+
+    /**
+     * Read a query log, in either format.
+     *
+     * @param path path of the log
+     * @return its operations, in order
+     * @throws IOException if it can't be read or has unknown operations
+     */
+    private static ArrayList<Op> ReadLog(String path) throws IOException {
+        ArrayList<Op> ops = new ArrayList<Op>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        String header = br.readLine();
+        if (header == null || !header.startsWith("Time,")) {
+            // Search history, the header is optional
+            String line = header;
+            while (line != null) {
+                String[] sec = line.split(",", 2);
+                if (sec.length == 2 && (sec[0].equals("0") || sec[0].equals("1"))) {
+                    Op op = new Op();
+                    op.time = -1;
+                    op.type = sec[0].equals("0") ? "key" : "def";
+                    op.key = sec[1];
+                    ops.add(op);
+                }
+                line = br.readLine();
+            }
+            br.close();
+            return ops;
+        }
+        br.close();
+        Exporter.Reader reader = new Exporter.Reader(path, Exporter.Format.CSV);
+        try {
+            String[] row;
+            while ((row = reader.Next()) != null) {
+                if (row.length < 3) {
+                    continue;
+                }
+                Op op = new Op();
+                try {
+                    op.time = row[0].isBlank() ? -1 : Long.parseLong(row[0].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid time '" + row[0] + "'.");
+                }
+                op.type = row[1].trim().toLowerCase();
+                op.key = row[2];
+                op.value = row.length > 3 ? row[3] : "";
+                if (!Arrays.asList("key", "def", "query", "pattern", "sound", "put", "append", "remove")
+                        .contains(op.type)) {
+                    throw new IOException("Unknown operation '" + row[1] + "'.");
+                }
+                ops.add(op);
+            }
+        } finally {
+            reader.close();
+        }
+        return ops;
+    }
+
+    /**
+     * Run an operation against the glossary, consuming all its results.
+     */
+    private void Run(Op op) {
+        try {
+            switch (op.type) {
+                case "key":
+                    glossary.FindKeyword(op.key).count();
+                    break;
+                case "def":
+                    glossary.FindDefinition(op.key).count();
+                    break;
+                case "query":
+                    glossary.FindQuery(op.key, null).count();
+                    break;
+                case "pattern":
+                    glossary.FindPattern(op.key).count();
+                    break;
+                case "sound":
+                    glossary.FindSound(op.key).count();
+                    break;
+                case "put":
+                    glossary.Put(op.key, new String[] { op.value });
+                    break;
+                case "append":
+                    glossary.Append(op.key, op.value);
+                    break;
+                default:
+                    glossary.Remove(op.key);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Create the executor of the workers: one virtual thread per task if the JVM
+     * has them (Java 21+), found by reflection so the tool still runs on older
+     * JVMs, else a pool of platform threads.
+     *
+     * @return the executor
+     */
+    private ExecutorService getExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            System.out.println("(i) Running on virtual threads.");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("(i) Virtual threads aren't available, running on " + workers + " threads.");
+            return Executors.newFixedThreadPool(workers);
+        }
+    }
+
+    /**
+     * Scheduled start of the i-th operation, in nanoseconds from the start, or -1
+     * if there is no schedule.
+     */
+    private long Scheduled(int i, long span) {
+        Op op = ops.get(i % ops.size());
+        if (rate != null) {
+            return (long) (i * 1e9 / rate);
+        }
+        if (op.time < 0) {
+            return -1;
+        }
+        // Repeat the log after its last operation
+        return (i / ops.size()) * span + op.time * 1_000_000L;
+    }
+
+    /**
+     * Replay the log, and report throughput and latencies.
+     *
+     * @throws InterruptedException
+     */
+    public void Replay() throws InterruptedException {
+        int total = ops.size() * repeat;
+        latencies = new long[total];
+        services = new long[total];
+        long span = (ops.get(ops.size() - 1).time + 1) * 1_000_000L;
+        Boolean scheduled = rate != null || ops.stream().allMatch(op -> op.time >= 0);
+        if (!scheduled && !closed) {
+            System.out.println("(i) The log has no times and no rate is given, running as a closed loop.");
+            closed = true;
+        }
+        ExecutorService executor = getExecutor();
+        System.out.println("(@) Replaying " + total + " operations with " + workers + " workers ("
+                + (closed ? "closed" : "open") + " loop"
+                + (rate != null ? ", " + rate + " operations/s" : scheduled ? ", at the times of the log" : "")
+                + ")...");
+        long start = System.nanoTime();
+        if (closed) {
+            // Each worker takes the next operation when done with its last one
+            AtomicInteger next = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(workers);
+            for (int w = 0; w < workers; w++) {
+                executor.execute(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < total) {
+                        long due = rate != null ? Scheduled(i, span) : -1;
+                        if (due >= 0) {
+                            WaitUntil(start + due);
+                        }
+                        Measure(i, due >= 0 ? start + due : -1);
+                    }
+                    done.countDown();
+                });
+            }
+            done.await();
+        } else {
+            // Start operations on schedule, at most workers of them at once
+            Semaphore running = new Semaphore(workers);
+            CountDownLatch done = new CountDownLatch(total);
+            for (int i = 0; i < total; i++) {
+                long due = start + Scheduled(i, span);
+                WaitUntil(due);
+                running.acquire();
+                final int current = i;
+                executor.execute(() -> {
+                    try {
+                        Measure(current, due);
+                    } finally {
+                        running.release();
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        Report(elapsed, scheduled);
+    }
+
+    /**
+     * Run the i-th operation and record its latencies.
+     *
+     * @param due scheduled start (System.nanoTime), -1 if there is no schedule
+     */
+    private void Measure(int i, long due) {
+        long begin = System.nanoTime();
+        Run(ops.get(i % ops.size()));
+        long end = System.nanoTime();
+        services[i] = end - begin;
+        latencies[i] = end - (due >= 0 ? due : begin);
+    }
+
+    private static void WaitUntil(long deadline) {
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * Print the throughput and the latency percentiles.
+     */
+    private void Report(long elapsed, Boolean scheduled) {
+        System.out.println("(i) Done.\n");
+        System.out.println("(i) Operations: " + latencies.length + " in " + String.format("%.2f", elapsed / 1e9)
+                + " s, " + String.format("%.1f", latencies.length / (elapsed / 1e9)) + " operations/s.");
+        if (errors.sum() > 0) {
+            System.out.println("(!) Failed operations: " + errors.sum() + ".");
+        }
+        if (scheduled) {
+            Percentiles("Latency (from scheduled start)", latencies);
+        }
+        Percentiles("Service time (from actual start)", services);
+        if (!scheduled) {
+            System.out.println("(i) Without a schedule, latencies can't be corrected for coordinated omission.");
+        }
+        System.out.println();
+    }
+
+    private static void Percentiles(String title, long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        StringBuilder sb = new StringBuilder("(i) " + title + ":");
+        double[] ranks = { 50, 90, 99, 99.9 };
+        for (double rank : ranks) {
+            int i = (int) Math.ceil(rank / 100 * sorted.length) - 1;
+            sb.append(" p" + (rank == (int) rank ? String.valueOf((int) rank) : String.valueOf(rank)) + " = "
+                    + Millis(sorted[Math.max(i, 0)]) + ",");
+        }
+        sb.append(" max = " + Millis(sorted[sorted.length - 1]) + ".");
+        System.out.println(sb);
+    }
+
+    private static String Millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    /**
+     * Load-testing tool.
+     *
+     * @param args the glossary path, the log path, then the options
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println(
+                    "(i) Usage: java Replayer <glossary> <log> [--workers <n>] [--rate <operations/s>] [--closed] [--repeat <n>]");
+            return;
+        }
+        ArrayList<Op> ops;
+        try {
+            ops = ReadLog(args[1]);
+        } catch (IOException e) {
+            System.out.println("(!) Error reading log: " + e.getMessage());
+            return;
+        }
+        if (ops.isEmpty()) {
+            System.out.println("(!) The log has no operations.");
+            return;
+        }
+        Replayer replayer = new Replayer(null, ops);
+        try {
+            for (int i = 2; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--workers":
+                        replayer.workers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rate":
+                        replayer.rate = Double.parseDouble(args[++i]);
+                        break;
+                    case "--closed":
+                        replayer.closed = true;
+                        break;
+                    case "--repeat":
+                        replayer.repeat = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        System.out.println("(!) Unknown option '" + args[i] + "'.");
+                        return;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("(!) Invalid or missing option value.");
+            return;
+        }
+        if (replayer.workers < 1 || replayer.repeat < 1 || (replayer.rate != null && replayer.rate <= 0)) {
+            System.out.println("(!) Workers, repeat and rate must be positive.");
+            return;
+        }
+        replayer.glossary = new Glossary(args[0]);
+        try {
+            replayer.Replay();
+        } catch (InterruptedException e) {
+            System.out.println("(!) Replay interrupted.");
+        }
+    }
+}
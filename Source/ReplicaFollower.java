@@ -0,0 +1,173 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Keep a glossary up to date with the replication log of its writer (see
+ * ReplicationLog), as a read-only follower. The follower starts from the
+ * snapshot of the log, then polls the current segment every POLL_MS for new
+ * records, and moves on to the next segment when the writer starts one. If
+ * the segments it needs were removed, or the writer restarted in a new epoch,
+ * it starts over from the snapshot.
+ * <p>
+ * The lag of a record is the time from when the writer logged it to when the
+ * follower applied it.
+ */
+public class ReplicaFollower implements Runnable {
+    private static final Long POLL_MS = 50L;
+
+    private Glossary glossary;
+    private Path dir;
+    private Thread thread;
+    private ReplicationLog.Reader reader = null;
+    private volatile long epoch = -1, applied = 0;
+    private Integer bootstraps = 0;
+
+    // Lag of the last applied record and the largest one, records applied
+    private volatile long lastLag = 0, maxLag = 0, lastApplied = 0, records = 0;
+
+    /**
+     * Start following a log: apply its snapshot, then tail it in the background.
+     *
+     * @param glossary the glossary to update
+     * @param dir      the log directory
+     * @throws IOException if there is no snapshot to start from
+     */
+    public ReplicaFollower(Glossary glossary, Path dir) throws IOException {
+        this.glossary = glossary;
+        this.dir = dir;
+        Bootstrap();
+        thread = new Thread(this, "replica-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop following.
+     */
+    public void Close() {
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Poll();
+                } catch (IOException e) {
+                    Main.console.println("\n(!) Replication error: " + e.getMessage() + ", starting over.");
+                    Thread.sleep(POLL_MS * 20);
+                    Bootstrap();
+                }
+                Thread.sleep(POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        } catch (IOException e) {
+            Main.console.println("\n(!) Replication stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the glossary with the snapshot of the log, and open the segment
+     * following it.
+     */
+    private void Bootstrap() throws IOException {
+        ReplicationLog.Snapshot snapshot = ReplicationLog.ReadSnapshot(dir, true);
+        if (snapshot == null) {
+            throw new IOException("No snapshot in '" + dir + "', is the writer replicating?");
+        }
+        glossary.Replicated(snapshot.entries);
+        epoch = snapshot.epoch;
+        applied = snapshot.seq;
+        bootstraps++;
+        if (reader != null) {
+            reader.Close();
+            reader = null;
+        }
+        // The writer may not have started the segment yet
+        Path segment = ReplicationLog.FindSegment(dir, applied + 1);
+        if (segment != null && ReplicationLog.getEpoch(segment) == epoch) {
+            reader = new ReplicationLog.Reader(segment);
+        }
+    }
+
+    /**
+     * Apply the records written since the last poll.
+     */
+    private void Poll() throws IOException {
+        if (reader == null) {
+            Path segment = ReplicationLog.FindSegment(dir, applied + 1);
+            if (segment == null || ReplicationLog.getEpoch(segment) != epoch) {
+                CheckSnapshot();
+                return;
+            }
+            reader = new ReplicationLog.Reader(segment);
+        }
+        ArrayList<ReplicationLog.Record> batch = new ArrayList<ReplicationLog.Record>();
+        ReplicationLog.Record record;
+        while ((record = reader.Next()) != null) {
+            if (record.seq != applied + batch.size() + 1) {
+                throw new IOException("Missing records before " + record.seq + ".");
+            }
+            batch.add(record);
+        }
+        if (!batch.isEmpty()) {
+            glossary.Replicated(batch);
+            long now = System.currentTimeMillis();
+            for (ReplicationLog.Record done : batch) {
+                maxLag = Math.max(maxLag, now - done.time);
+            }
+            ReplicationLog.Record last = batch.get(batch.size() - 1);
+            applied = last.seq;
+            lastLag = now - last.time;
+            lastApplied = now;
+            records += batch.size();
+            return;
+        }
+        // At the end of the segment: is there a next one?
+        Path next = ReplicationLog.FindSegment(dir, applied + 1);
+        if (next != null) {
+            reader.Close();
+            reader = null;
+            if (ReplicationLog.getEpoch(next) == epoch) {
+                reader = new ReplicationLog.Reader(next);
+            } else {
+                Bootstrap(); // The writer restarted
+            }
+            return;
+        }
+        CheckSnapshot();
+    }
+
+    /**
+     * Start over if the snapshot is from another epoch, or past the records that
+     * can still be read.
+     */
+    private void CheckSnapshot() throws IOException {
+        ReplicationLog.Snapshot snapshot = ReplicationLog.ReadSnapshot(dir, false);
+        if (snapshot == null || (snapshot.epoch == epoch && snapshot.seq <= applied)) {
+            return;
+        }
+        // Records written before the snapshot come first
+        if (reader != null && snapshot.epoch == epoch && !reader.IsAtEnd()) {
+            return;
+        }
+        Bootstrap();
+    }
+
+    /**
+     * Print the state of the replication.
+     */
+    public void PrintStatus() {
+        System.out.println("(i) Following '" + dir + "' (epoch " + Long.toHexString(epoch) + ").");
+        System.out.println("(i) Applied up to record " + applied + ", " + records + " records since start, "
+                + bootstraps + " snapshot(s) loaded.");
+        if (lastApplied > 0) {
+            System.out.println("(i) Lag: " + lastLag + " ms for the last record (applied "
+                    + (System.currentTimeMillis() - lastApplied) / 1000 + " s ago), " + maxLag + " ms at most.");
+        }
+        System.out.println();
+    }
+}
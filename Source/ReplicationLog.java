@@ -0,0 +1,352 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Log of the changes of a glossary, shipped to read-only followers through a
+ * shared directory ("&lt;name&gt;.repl" next to the glossary file). The writer
+ * appends a record per changed keyword, with its new definitions (or none if
+ * it was removed), so applying a record twice does no harm. Records are
+ * numbered in order.
+ * <ul>
+ * <li><code>snapshot</code>: every entry of the glossary after a given record,
+ * for followers to start from.</li>
+ * <li><code>log.&lt;first&gt;.&lt;epoch&gt;</code>: the records following a
+ * snapshot, from record number first. A new segment starts with every
+ * snapshot, taken every SNAPSHOT_EVERY records; the segments before the
+ * previous snapshot are removed.</li>
+ * </ul>
+ * Every start of a writer is a new epoch: its snapshot is the truth, and
+ * followers of another epoch start over from it.
+ */
+public class ReplicationLog {
+    public static final Integer SNAPSHOT_MAGIC = 0x55475253; // "UGRS"
+    public static final Integer LOG_MAGIC = 0x5547524C; // "UGRL"
+    public static final Integer SNAPSHOT_EVERY = 10000;
+
+    /**
+     * A changed keyword.
+     */
+    public static class Record {
+        public final long seq, time;
+        public final String key;
+        public final String[] defs; // null if removed
+
+        private Record(long seq, long time, String key, String[] defs) {
+            this.seq = seq;
+            this.time = time;
+            this.key = key;
+            this.defs = defs;
+        }
+    }
+
+    /**
+     * Every entry of the glossary after a record.
+     */
+    public static class Snapshot {
+        public final long epoch, seq;
+        public final LinkedHashMap<String, String[]> entries = new LinkedHashMap<String, String[]>();
+
+        private Snapshot(long epoch, long seq) {
+            this.epoch = epoch;
+            this.seq = seq;
+        }
+    }
+
+    private Path dir;
+    private long epoch, seq, snapshot = 0;
+    private DataOutputStream log;
+    private Integer pending = 0;
+
+    /**
+     * Start writing the log of a glossary, in a new epoch starting with a
+     * snapshot of its entries. Numbering continues from the existing log.
+     *
+     * @param dir     the log directory
+     * @param entries every entry of the glossary
+     * @throws IOException
+     */
+    public ReplicationLog(Path dir, Map<String, String[]> entries) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        epoch = new SplittableRandom().nextLong() & Long.MAX_VALUE;
+        seq = 0;
+        Snapshot last = ReadSnapshot(dir, false);
+        if (last != null) {
+            seq = last.seq;
+        }
+        for (Path segment : getSegments(dir)) {
+            Reader reader = new Reader(segment);
+            Record record;
+            while ((record = reader.Next()) != null) {
+                seq = Math.max(seq, record.seq);
+            }
+            reader.Close();
+        }
+        Snapshot(entries);
+        // Segments of older epochs only hold records followers won't read again
+        for (Path segment : getSegments(dir)) {
+            if (getEpoch(segment) != epoch) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    /**
+     * Append the change of a keyword. It is sent to followers by Flush().
+     *
+     * @param key  the keyword
+     * @param defs its definitions, null if it was removed
+     * @throws IOException
+     */
+    public void Append(String key, String[] defs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(++seq);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(key);
+        out.writeInt(defs == null ? -1 : defs.length);
+        if (defs != null) {
+            for (String def : defs) {
+                out.writeUTF(def);
+            }
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        log.writeInt(payload.length);
+        log.writeInt((int) crc.getValue());
+        log.write(payload);
+        pending++;
+    }
+
+    /**
+     * Send the appended changes to followers.
+     *
+     * @throws IOException
+     */
+    public void Flush() throws IOException {
+        log.flush();
+        pending = 0;
+    }
+
+    /**
+     * @return true if a snapshot should be taken (see Snapshot)
+     */
+    public Boolean IsSnapshotDue() {
+        return pending == 0 && seq - snapshot >= SNAPSHOT_EVERY;
+    }
+
+    /**
+     * Save every entry of the glossary as of the last record, and start a new
+     * segment. Call it after Flush().
+     *
+     * @param entries every entry of the glossary
+     * @throws IOException
+     */
+    public void Snapshot(Map<String, String[]> entries) throws IOException {
+        Path temp = dir.resolve("snapshot.tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())));
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(epoch);
+            out.writeLong(seq);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (String def : entry.getValue()) {
+                    out.writeUTF(def);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temp, dir.resolve("snapshot"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (log != null) {
+            log.close();
+        }
+        // Followers behind the previous snapshot start over from this one
+        for (Path segment : getSegments(dir)) {
+            if (getFirst(segment) <= snapshot) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        snapshot = seq;
+        Path segment = dir.resolve(String.format("log.%020d.%016x", seq + 1, epoch));
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment.toFile())));
+        log.writeInt(LOG_MAGIC);
+        log.writeLong(epoch);
+        log.writeLong(seq + 1);
+        log.flush();
+    }
+
+    /**
+     * Stop writing the log.
+     *
+     * @throws IOException
+     */
+    public void Close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * @return number of the last record
+     */
+    public long getSequence() {
+        return seq;
+    }
+
+    /**
+     * @return the log directory
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Read the snapshot of a log directory.
+     *
+     * @param dir     the log directory
+     * @param entries true to read the entries, false for the header only
+     * @return the snapshot, or null if there is none
+     * @throws IOException
+     */
+    public static Snapshot ReadSnapshot(Path dir, Boolean entries) throws IOException {
+        File file = dir.resolve("snapshot").toFile();
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("'" + file + "' isn't a snapshot.");
+            }
+            Snapshot snapshot = new Snapshot(in.readLong(), in.readLong());
+            int count = in.readInt();
+            for (int i = 0; entries && i < count; i++) {
+                String key = in.readUTF();
+                String[] defs = new String[in.readInt()];
+                for (int j = 0; j < defs.length; j++) {
+                    defs[j] = in.readUTF();
+                }
+                snapshot.entries.put(key, defs);
+            }
+            return snapshot;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Find the segment starting at a record.
+     *
+     * @param dir   the log directory
+     * @param first number of the first record
+     * @return the segment, or null if there is none
+     * @throws IOException
+     */
+    public static Path FindSegment(Path dir, long first) throws IOException {
+        for (Path segment : getSegments(dir)) {
+            if (getFirst(segment) == first) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param segment a segment
+     * @return epoch of the writer of the segment
+     */
+    public static long getEpoch(Path segment) {
+        return Long.parseUnsignedLong(segment.getFileName().toString().split("\\.")[2], 16);
+    }
+
+    private static long getFirst(Path segment) {
+        return Long.parseLong(segment.getFileName().toString().split("\\.")[1]);
+    }
+
+    private static List<Path> getSegments(Path dir) throws IOException {
+        ArrayList<Path> segments = new ArrayList<Path>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "log.*.*");
+        try {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        } finally {
+            stream.close();
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Read the records of a segment while it is being written: Next() returns
+     * null at the end of the complete records, and can be called again later
+     * for the records written since.
+     */
+    public static class Reader {
+        private RandomAccessFile file;
+        private long position;
+
+        /**
+         * @param segment the segment
+         * @throws IOException if it can't be opened or isn't a segment
+         */
+        public Reader(Path segment) throws IOException {
+            file = new RandomAccessFile(segment.toFile(), "r");
+            if (file.length() < 20 || file.readInt() != LOG_MAGIC) {
+                file.close();
+                throw new IOException("'" + segment + "' isn't a log segment.");
+            }
+            position = 20;
+        }
+
+        /**
+         * @return the next record, or null if none is complete yet
+         * @throws IOException if the segment is corrupted
+         */
+        public Record Next() throws IOException {
+            if (file.length() < position + 8) {
+                return null;
+            }
+            file.seek(position);
+            int length = file.readInt(), crc = file.readInt();
+            if (file.length() < position + 8 + length) {
+                return null; // Still being written
+            }
+            byte[] payload = new byte[length];
+            file.readFully(payload);
+            CRC32 check = new CRC32();
+            check.update(payload);
+            if ((int) check.getValue() != crc) {
+                throw new IOException("Corrupted record at " + position + ".");
+            }
+            position += 8 + length;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long seq = in.readLong(), time = in.readLong();
+            String key = in.readUTF();
+            int count = in.readInt();
+            String[] defs = count < 0 ? null : new String[count];
+            for (int i = 0; i < count; i++) {
+                defs[i] = in.readUTF();
+            }
+            return new Record(seq, time, key, defs);
+        }
+
+        /**
+         * @return true if nothing was written after the records read
+         * @throws IOException
+         */
+        public Boolean IsAtEnd() throws IOException {
+            return file.length() <= position;
+        }
+
+        public void Close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Spaced-repetition schedule of a learner's cards, one card per keyword, with
+ * the SM-2 algorithm: a card answered well comes back after 1 day, then 6 days,
+ * then intervals growing by its ease factor, which increases with good answers
+ * and decreases with bad ones. A card answered badly starts over from 1 day.
+ * REF: https://super-memory.com/english/ol/sm2.htm
+ * <p>
+ * Card states are kept in primitive arrays indexed by card id, and the cards
+ * are ordered by due time in an indexed binary heap, so the next due card is
+ * found in O(1) and rescheduled in O(log n), however many cards the learner
+ * has.
+ * <p>
+ * The schedule is saved as a log appended to on every change (a new card, a
+ * review or a forgotten card), and compacted when it is opened if most of its
+ * records are outdated or its last record was cut by a crash.
+ */
+public class ReviewScheduler {
+    public static final Integer MAGIC = 0x55475352; // "UGSR"
+    public static final Integer FORMAT = 1;
+    public static final Float START_EASE = 2.5f, MIN_EASE = 1.3f;
+    public static final Long DAY = 86400L; // seconds
+    private static final byte NEW = 1, REVIEW = 2, FORGET = 3;
+
+    private String path;
+    private DataOutputStream log = null;
+    private Integer records = 0;
+    private Boolean truncated = false;
+
+    // Card states, by card id
+    private String[] keys = new String[16];
+    private float[] ease = new float[16];
+    private int[] interval = new int[16], reps = new int[16];
+    private long[] due = new long[16];
+    private int count = 0;
+    private HashMap<String, Integer> ids = new HashMap<String, Integer>();
+
+    // Min-heap of card ids by due time, and position of each card in it (-1 if
+    // taken out)
+    private int[] heap = new int[16], position = new int[16];
+    private int heapSize = 0;
+
+    private ReviewScheduler(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Open the schedule saved in a file, or start an empty one.
+     *
+     * @param path path of the file
+     * @return the schedule
+     * @throws IOException if the file can't be read or written
+     */
+    public static ReviewScheduler Open(String path) throws IOException {
+        ReviewScheduler scheduler = Load(path);
+        if (!new File(path).exists() || scheduler.truncated || scheduler.records > 2 * scheduler.ids.size() + 64) {
+            scheduler.Compact();
+            scheduler = Load(path);
+        }
+        scheduler.log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path, true)));
+        return scheduler;
+    }
+
+    private static ReviewScheduler Load(String path) throws IOException {
+        ReviewScheduler scheduler = new ReviewScheduler(path);
+        if (!new File(path).exists()) {
+            return scheduler;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new IOException("'" + path + "' isn't a review schedule.");
+            }
+            scheduler.Replay(in);
+        } finally {
+            in.close();
+        }
+        return scheduler;
+    }
+
+    /**
+     * Apply the records of the log, the last one of a card wins. A record cut by
+     * a crash ends the log, which is then compacted before anything is appended
+     * after it (see Open).
+     */
+    private void Replay(DataInputStream in) throws IOException {
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                return;
+            }
+            try {
+                if (type == NEW) {
+                    Add(in.readUTF(), in.readLong());
+                } else if (type == REVIEW) {
+                    int id = in.readInt();
+                    float e = in.readFloat();
+                    int i = in.readInt(), r = in.readInt();
+                    long d = in.readLong();
+                    if (id < count && keys[id] != null) {
+                        ease[id] = e;
+                        interval[id] = i;
+                        reps[id] = r;
+                        due[id] = d;
+                        Push(id);
+                    }
+                } else if (type == FORGET) {
+                    int id = in.readInt();
+                    if (id < count && keys[id] != null) {
+                        Drop(id);
+                    }
+                } else {
+                    throw new IOException("Invalid record in '" + path + "'.");
+                }
+            } catch (EOFException e) {
+                truncated = true;
+                return;
+            }
+            records++;
+        }
+    }
+
+    /**
+     * Rewrite the log with the records of the live cards only, into a temporary
+     * file then moved over the old one. Card ids are renumbered.
+     */
+    private void Compact() throws IOException {
+        Path temp = Path.of(path + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            int written = 0;
+            for (int id = 0; id < count; id++) {
+                if (keys[id] == null) {
+                    continue;
+                }
+                WriteNew(out, keys[id], due[id]);
+                if (interval[id] > 0) {
+                    WriteReview(out, id, written);
+                }
+                written++;
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temp, Path.of(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Close the log.
+     *
+     * @throws IOException
+     */
+    public void Close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * @return number of cards
+     */
+    public Integer size() {
+        return ids.size();
+    }
+
+    /**
+     * @param key a keyword
+     * @return true if the learner has a card for the keyword
+     */
+    public Boolean Contains(String key) {
+        return ids.containsKey(key);
+    }
+
+    /**
+     * Count the cards due at a time.
+     *
+     * @param now the time, in seconds since the epoch
+     * @return number of cards due
+     */
+    public Integer CountDue(long now) {
+        // Only the part of the heap holding due cards is visited
+        return CountDue(0, now);
+    }
+
+    private Integer CountDue(int i, long now) {
+        if (i >= heapSize || due[heap[i]] > now) {
+            return 0;
+        }
+        return 1 + CountDue(2 * i + 1, now) + CountDue(2 * i + 2, now);
+    }
+
+    /**
+     * Get the cards due at a time, the most overdue first. The cards stay
+     * scheduled until they are reviewed (see Review).
+     *
+     * @param now the time, in seconds since the epoch
+     * @param max maximum number of cards
+     * @return the keywords of the cards
+     */
+    public List<String> PeekDue(long now, Integer max) {
+        ArrayList<Integer> taken = new ArrayList<Integer>();
+        while (taken.size() < max && heapSize > 0 && due[heap[0]] <= now) {
+            taken.add(heap[0]);
+            Take(heap[0]);
+        }
+        ArrayList<String> found = new ArrayList<String>();
+        for (int id : taken) {
+            Push(id);
+            found.add(keys[id]);
+        }
+        return found;
+    }
+
+    /**
+     * Record the answer to a card, creating the card if the keyword is new to
+     * the learner, and schedule its next review.
+     *
+     * @param key     the keyword
+     * @param quality quality of the answer, from 0 (blackout) to 5 (perfect);
+     *                below 3 the card starts over
+     * @param now     time of the answer, in seconds since the epoch
+     * @throws IOException if the log can't be written
+     */
+    public void Review(String key, Integer quality, long now) throws IOException {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = Add(key, now);
+            WriteNew(log, key, now);
+            records++;
+        }
+        if (quality < 3) {
+            reps[id] = 0;
+            interval[id] = 1;
+        } else {
+            reps[id]++;
+            interval[id] = reps[id] == 1 ? 1 : reps[id] == 2 ? 6 : Math.round(interval[id] * ease[id]);
+        }
+        int miss = 5 - quality;
+        ease[id] = Math.max(MIN_EASE, ease[id] + 0.1f - miss * (0.08f + miss * 0.02f));
+        due[id] = now + interval[id] * DAY;
+        Push(id);
+        WriteReview(log, id, id);
+        records++;
+        log.flush();
+    }
+
+    /**
+     * Remove the card of a keyword, e.g. a keyword removed from the glossary.
+     *
+     * @param key the keyword
+     * @throws IOException if the log can't be written
+     */
+    public void Forget(String key) throws IOException {
+        Integer id = ids.get(key);
+        if (id == null) {
+            return;
+        }
+        Drop(id);
+        log.writeByte(FORGET);
+        log.writeInt(id);
+        records++;
+        log.flush();
+    }
+
+    /**
+     * @param key a keyword
+     * @return when the card of the keyword is due, in seconds since the epoch,
+     *         or null if the learner has no card for it
+     */
+    public Long getDue(String key) {
+        Integer id = ids.get(key);
+        return id == null ? null : due[id];
+    }
+
+    private int Add(String key, long now) {
+        if (count == keys.length) {
+            int capacity = count * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            ease = Arrays.copyOf(ease, capacity);
+            interval = Arrays.copyOf(interval, capacity);
+            reps = Arrays.copyOf(reps, capacity);
+            due = Arrays.copyOf(due, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            position = Arrays.copyOf(position, capacity);
+        }
+        int id = count++;
+        keys[id] = key;
+        ease[id] = START_EASE;
+        due[id] = now;
+        position[id] = -1;
+        ids.put(key, id);
+        Push(id);
+        return id;
+    }
+
+    private void Drop(int id) {
+        Take(id);
+        ids.remove(keys[id]);
+        keys[id] = null;
+    }
+
+    private void WriteNew(DataOutputStream out, String key, long now) throws IOException {
+        out.writeByte(NEW);
+        out.writeUTF(key);
+        out.writeLong(now);
+    }
+
+    /**
+     * Write the state of a card, under the given id in the log.
+     */
+    private void WriteReview(DataOutputStream out, int id, int logged) throws IOException {
+        out.writeByte(REVIEW);
+        out.writeInt(logged);
+        out.writeFloat(ease[id]);
+        out.writeInt(interval[id]);
+        out.writeInt(reps[id]);
+        out.writeLong(due[id]);
+    }
+
+    /**
+     * Put a card into the heap, or move it to its place if its due time changed.
+     */
+    private void Push(int id) {
+        if (position[id] < 0) {
+            position[id] = heapSize;
+            heap[heapSize++] = id;
+        }
+        SiftDown(SiftUp(position[id]));
+    }
+
+    /**
+     * Take a card out of the heap.
+     */
+    private void Take(int id) {
+        int i = position[id];
+        if (i < 0) {
+            return;
+        }
+        position[id] = -1;
+        int last = heap[--heapSize];
+        if (i < heapSize) {
+            heap[i] = last;
+            position[last] = i;
+            SiftDown(SiftUp(i));
+        }
+    }
+
+    private int SiftUp(int i) {
+        int id = heap[i];
+        while (i > 0 && due[heap[(i - 1) / 2]] > due[id]) {
+            int parent = (i - 1) / 2;
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        position[id] = i;
+        return i;
+    }
+
+    private void SiftDown(int i) {
+        int id = heap[i];
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && due[heap[child + 1]] < due[heap[child]]) {
+                child++;
+            }
+            if (due[heap[child]] >= due[id]) {
+                break;
+            }
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = id;
+        position[id] = i;
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Count searched terms in fixed memory, however many searches are made:
+ * <ul>
+ * <li>a Count-Min Sketch estimates how many times any term was searched: DEPTH
+ * rows of WIDTH counters, each term adds to one counter per row and its count
+ * is the smallest of them. Counters only grow where they hold the smallest
+ * value (conservative update), which keeps the estimates tight.</li>
+ * <li>a Space-Saving tracker keeps the CAPACITY most searched terms: a new term
+ * takes the place of the least searched one, inheriting its count as possible
+ * error.</li>
+ * </ul>
+ * Both only overestimate, so the count of a tracked term is the smaller of the
+ * two. Each row of the sketch hashes the characters of the term with its own
+ * seed, so terms colliding in one row are unlikely to collide in the others.
+ * REF: http://dimacs.rutgers.edu/~graham/pubs/papers/cm-full.pdf
+ * REF: https://www.cs.ucsb.edu/sites/default/files/documents/2005-23.pdf
+ */
+public class SearchStats {
+    public static final Integer MAGIC = 0x55475354; // "UGST"
+    public static final Integer FORMAT = 2;
+    public static final Integer DEPTH = 4, WIDTH = 1024, CAPACITY = 64;
+    private static final long[] SEEDS = new long[DEPTH];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0xC0FFEEL);
+        for (int i = 0; i < DEPTH; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    private int[][] sketch = new int[DEPTH][WIDTH];
+    private long total = 0;
+    private String[] terms = new String[CAPACITY];
+    private long[] counts = new long[CAPACITY], errors = new long[CAPACITY];
+    private HashMap<String, Integer> slots = new HashMap<String, Integer>();
+
+    /**
+     * Count a search.
+     *
+     * @param term the searched term
+     */
+    public void Add(String term) {
+        total++;
+        // Conservative update of the sketch
+        int[] cells = Cells(term);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, sketch[i][cells[i]]);
+        }
+        for (int i = 0; i < DEPTH; i++) {
+            if (sketch[i][cells[i]] == min && min < Integer.MAX_VALUE) {
+                sketch[i][cells[i]]++;
+            }
+        }
+        // Space-Saving: track the term, replacing the least searched one if full
+        Integer slot = slots.get(term);
+        if (slot == null) {
+            if (slots.size() < CAPACITY) {
+                slot = slots.size();
+            } else {
+                slot = 0;
+                for (int i = 1; i < CAPACITY; i++) {
+                    if (counts[i] < counts[slot]) {
+                        slot = i;
+                    }
+                }
+                slots.remove(terms[slot]);
+                errors[slot] = counts[slot];
+            }
+            slots.put(term, slot);
+            terms[slot] = term;
+        }
+        counts[slot]++;
+    }
+
+    /**
+     * Estimate how many times a term was searched. The estimate is never below
+     * the real count, and over it by at most 2 / WIDTH of all searches with a
+     * high probability.
+     *
+     * @param term the term
+     * @return the estimated count
+     */
+    public long Estimate(String term) {
+        int[] cells = Cells(term);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, sketch[i][cells[i]]);
+        }
+        Integer slot = slots.get(term);
+        return slot == null ? min : Math.min(min, counts[slot]);
+    }
+
+    /**
+     * Get the possible error of the count of a tracked term, the count of the
+     * term it replaced.
+     *
+     * @param term the term
+     * @return the error, 0 if the term was never replaced or isn't tracked
+     */
+    public long getError(String term) {
+        Integer slot = slots.get(term);
+        return slot == null ? 0 : errors[slot];
+    }
+
+    /**
+     * Get the most searched terms.
+     *
+     * @param n number of terms
+     * @return at most n terms, the most searched first
+     */
+    public List<String> Top(Integer n) {
+        ArrayList<String> top = new ArrayList<String>(slots.keySet());
+        top.sort((a, b) -> {
+            int cmp = Long.compare(Estimate(b), Estimate(a));
+            return cmp != 0 ? cmp : a.compareTo(b);
+        });
+        return top.subList(0, Math.min(n, top.size()));
+    }
+
+    /**
+     * @return number of searches counted
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Find the counter of each row for a term.
+     */
+    private static int[] Cells(String term) {
+        int[] cells = new int[DEPTH];
+        for (int i = 0; i < DEPTH; i++) {
+            // FNV-1a of the characters from the seed of the row, then SplitMix64 finalizer
+            long h = SEEDS[i];
+            for (int j = 0; j < term.length(); j++) {
+                h = (h ^ term.charAt(j)) * 0x100000001b3L;
+            }
+            h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+            h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+            h ^= h >>> 31;
+            cells[i] = (int) Long.remainderUnsigned(h, WIDTH);
+        }
+        return cells;
+    }
+
+    /**
+     * Save the counters into a file.
+     *
+     * @param path path of the file
+     * @throws IOException
+     */
+    public void Write(String path) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(DEPTH);
+            out.writeInt(WIDTH);
+            out.writeInt(CAPACITY);
+            out.writeLong(total);
+            for (int[] row : sketch) {
+                for (int cell : row) {
+                    out.writeInt(cell);
+                }
+            }
+            out.writeInt(slots.size());
+            for (int i = 0; i < slots.size(); i++) {
+                out.writeUTF(terms[i]);
+                out.writeLong(counts[i]);
+                out.writeLong(errors[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read counters saved by Write().
+     *
+     * @param path path of the file
+     * @return the counters, or null if the file doesn't exist or was saved with
+     *         another format or other dimensions
+     * @throws IOException
+     */
+    public static SearchStats Read(String path) throws IOException {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || in.readInt() != DEPTH || in.readInt() != WIDTH
+                    || in.readInt() != CAPACITY) {
+                return null;
+            }
+            SearchStats stats = new SearchStats();
+            stats.total = in.readLong();
+            for (int[] row : stats.sketch) {
+                for (int j = 0; j < WIDTH; j++) {
+                    row[j] = in.readInt();
+                }
+            }
+            int used = in.readInt();
+            for (int i = 0; i < used; i++) {
+                stats.terms[i] = in.readUTF();
+                stats.counts[i] = in.readLong();
+                stats.errors[i] = in.readLong();
+                stats.slots.put(stats.terms[i], i);
+            }
+            return stats;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only file holding one index of the glossary, memory-mapped when
+ * opened. The file starts with a header:
+ * <ul>
+ * <li>magic number and format version (FORMAT, bumped whenever the layout of
+ * any segment changes)</li>
+ * <li>kind of segment</li>
+ * <li>length and CRC32 of the content of the data file it was built from</li>
+ * <li>length and CRC32 of the body, then CRC32 of the header itself</li>
+ * </ul>
+ * Opening a segment only reads and checks the header, so a segment of another
+ * version, or built from another version of the data file, is seen as stale
+ * right away, even if that version has the same length and modification time
+ * (see Hash, computed once for all segments of a file). The body is checked
+ * against its CRC32 when first used.
+ */
+public class Segment {
+    public static final Integer MAGIC = 0x55475347; // "UGSG"
+    public static final Integer FORMAT = 2;
+    public static final Integer HEADER = 44;
+
+    private String path;
+    private ByteBuffer body;
+    private Integer crc;
+    private Boolean verified = false;
+
+    private Segment(String path, ByteBuffer body, Integer crc) {
+        this.path = path;
+        this.body = body;
+        this.crc = crc;
+    }
+
+    /**
+     * Compute the CRC32 of the content of a data file.
+     *
+     * @param source the data file
+     * @return the CRC32
+     * @throws IOException
+     */
+    public static long Hash(File source) throws IOException {
+        CRC32 crc = new CRC32();
+        FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Open a segment file, if it is up to date.
+     *
+     * @param path   path of the segment file
+     * @param kind   expected kind of segment
+     * @param source the data file the segment must have been built from
+     * @param hash   the CRC32 of that file (see Hash)
+     * @return the segment, or null if it doesn't exist or is stale
+     * @throws IOException
+     */
+    public static Segment Open(String path, Integer kind, File source, long hash) throws IOException {
+        File file = new File(path);
+        if (!file.exists() || file.length() < HEADER) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            CRC32 check = new CRC32();
+            check.update(header.duplicate().limit(HEADER - 4));
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT || header.getInt(8) != kind
+                    || header.getLong(12) != source.length() || header.getLong(20) != hash
+                    || header.getLong(28) != channel.size() - HEADER || header.getInt(40) != (int) check.getValue()) {
+                return null;
+            }
+            ByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, channel.size() - HEADER);
+            return new Segment(path, body, header.getInt(36));
+        } finally {
+            // The mappings stay valid after closing
+            channel.close();
+        }
+    }
+
+    /**
+     * Write a segment file. The file is written aside then moved into place, so
+     * a segment is never seen half-written.
+     *
+     * @param path   path of the segment file
+     * @param kind   kind of segment
+     * @param source the data file the segment is built from
+     * @param hash   the CRC32 of that file (see Hash)
+     * @param body   content of the segment, from its position to its limit
+     * @throws IOException
+     */
+    public static void Write(String path, Integer kind, File source, long hash, ByteBuffer body)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(FORMAT).putInt(kind);
+        header.putLong(source.length()).putLong(hash);
+        header.putLong(body.remaining()).putInt((int) crc.getValue());
+        CRC32 check = new CRC32();
+        check.update(header.array(), 0, HEADER - 4);
+        header.putInt((int) check.getValue());
+        header.flip();
+        Path temp = Path.of(path + ".tmp");
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        } finally {
+            channel.close();
+        }
+        Files.move(temp, Path.of(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Get the body of the segment, checking it the first time.
+     *
+     * @return the body (read with absolute positions only)
+     * @throws IOException if the body doesn't match its checksum
+     */
+    public ByteBuffer getBody() throws IOException {
+        if (!verified) {
+            CRC32 check = new CRC32();
+            check.update(body.duplicate());
+            if ((int) check.getValue() != crc) {
+                throw new IOException("Segment '" + path + "' is corrupted.");
+            }
+            verified = true;
+        }
+        return body;
+    }
+}
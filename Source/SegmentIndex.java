@@ -0,0 +1,484 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Indexes of the base layer of a glossary, persisted as segment files next to
+ * its csv file so they don't have to be rebuilt on every start:
+ * <ul>
+ * <li><code>&lt;name&gt;.keys.seg</code>: the keywords, by id (keyword order)
+ * and sorted by lower-case form for case-insensitive lookups</li>
+ * <li><code>&lt;name&gt;.defs.seg</code>: for each trigram of the lower-case
+ * definitions, the ids of the keywords having it</li>
+ * <li><code>&lt;name&gt;.sample.seg</code>: the ids of the keywords to pick
+ * random ones from</li>
+ * <li><code>&lt;name&gt;.terms.seg</code>: for each word of the definitions
+ * (see DefinitionQuery.Tokenize), the ids of the keywords having it and the
+ * positions of the word in their definitions</li>
+ * </ul>
+ * Segments are only valid for the csv file they were built from (see
+ * Segment). Changes of the overlay aren't indexed, callers have to check them
+ * on their own.
+ */
+public class SegmentIndex {
+    public static final Integer KEYS = 1, DEFINITIONS = 2, SAMPLE = 3, TERMS = 4;
+
+    private Segment keys, definitions, sample, terms;
+
+    private SegmentIndex(Segment keys, Segment definitions, Segment sample, Segment terms) {
+        this.keys = keys;
+        this.definitions = definitions;
+        this.sample = sample;
+        this.terms = terms;
+    }
+
+    /**
+     * The keywords having a word, sorted by id, and the positions of the word
+     * in their definitions. Read straight from the mapped segment.
+     */
+    public static class Postings implements DefinitionQuery.Docs {
+        private ByteBuffer body;
+        private int docs, count;
+
+        private Postings(ByteBuffer body, int docs, int count) {
+            this.body = body;
+            this.docs = docs;
+            this.count = count;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public int Doc(int i) {
+            return body.getInt(docs + 4 * i);
+        }
+
+        /**
+         * @param i index of a keyword in the postings
+         * @return positions of the word in its definitions, sorted
+         */
+        public int[] Positions(int i) {
+            int offset = body.getInt(docs + 4 * (count + i));
+            int[] positions = new int[body.getInt(offset)];
+            for (int p = 0; p < positions.length; p++) {
+                positions[p] = body.getInt(offset + 4 * (p + 1));
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * Open the segments of a glossary.
+     *
+     * @param name   the path of the glossary, without the extension
+     * @param source the csv file of the glossary
+     * @return the index, or null if any segment is missing or stale
+     * @throws IOException
+     */
+    public static SegmentIndex Open(String name, File source) throws IOException {
+        if (!new File(name + ".keys.seg").exists()) {
+            return null; // Not worth reading the source
+        }
+        return Open(name, source, Segment.Hash(source));
+    }
+
+    private static SegmentIndex Open(String name, File source, long hash) throws IOException {
+        Segment keys = Segment.Open(name + ".keys.seg", KEYS, source, hash);
+        Segment definitions = Segment.Open(name + ".defs.seg", DEFINITIONS, source, hash);
+        Segment sample = Segment.Open(name + ".sample.seg", SAMPLE, source, hash);
+        Segment terms = Segment.Open(name + ".terms.seg", TERMS, source, hash);
+        if (keys == null || definitions == null || sample == null || terms == null) {
+            return null;
+        }
+        return new SegmentIndex(keys, definitions, sample, terms);
+    }
+
+    /**
+     * Build and write the segments of a glossary, then open them.
+     *
+     * @param name   the path of the glossary, without the extension
+     * @param source the csv file of the glossary, already written
+     * @param base   the entries of the csv file, in keyword order
+     * @return the index
+     * @throws IOException
+     */
+    public static SegmentIndex Build(String name, File source, Map<String, String[]> base) throws IOException {
+        int count = base.size();
+        String[] keywords = new String[count];
+        HashMap<Long, int[]> grams = new HashMap<Long, int[]>(); // [count, ids...]
+        HashMap<String, int[]> words = new HashMap<String, int[]>(); // [size, (id, count, positions)...]
+        int[] sampled = new int[count];
+        int samples = 0, id = 0;
+        for (Map.Entry<String, String[]> entry : base.entrySet()) {
+            final int current = id++;
+            keywords[current] = entry.getKey();
+            Boolean defined = false;
+            LinkedHashMap<String, ArrayList<Integer>> positions = new LinkedHashMap<String, ArrayList<Integer>>();
+            int position = 0;
+            for (String def : entry.getValue()) {
+                defined |= !def.isEmpty();
+                String lower = def.toLowerCase();
+                for (int i = 0; i + 3 <= lower.length(); i++) {
+                    // Ids are appended in increasing order: the postings are sorted
+                    grams.compute(Trigram(lower, i), (gram, ids) -> Append(ids, current));
+                }
+                for (String word : DefinitionQuery.Tokenize(def)) {
+                    positions.computeIfAbsent(word, w -> new ArrayList<Integer>()).add(position++);
+                }
+                position++; // Phrases don't span definitions
+            }
+            for (Map.Entry<String, ArrayList<Integer>> word : positions.entrySet()) {
+                int[] postings = Push(words.get(word.getKey()), current);
+                postings = Push(postings, word.getValue().size());
+                for (Integer p : word.getValue()) {
+                    postings = Push(postings, p);
+                }
+                words.put(word.getKey(), postings);
+            }
+            if (defined) {
+                sampled[samples++] = current;
+            }
+        }
+        long hash = Segment.Hash(source);
+        Segment.Write(name + ".keys.seg", KEYS, source, hash, KeysBody(keywords));
+        Segment.Write(name + ".defs.seg", DEFINITIONS, source, hash, DefinitionsBody(grams));
+        ByteBuffer body = ByteBuffer.allocate(4 + 4 * samples);
+        body.putInt(samples);
+        for (int i = 0; i < samples; i++) {
+            body.putInt(sampled[i]);
+        }
+        body.flip();
+        Segment.Write(name + ".sample.seg", SAMPLE, source, hash, body);
+        Segment.Write(name + ".terms.seg", TERMS, source, hash, TermsBody(words));
+        return Open(name, source, hash);
+    }
+
+    /**
+     * Layout: number of words, then a table sorted by word of (offset of the
+     * word, offset of its postings, number of keywords), then the words (length
+     * and UTF-8 bytes), then for each word the ids of its keywords followed by
+     * the offsets of their positions, then the positions (count and positions).
+     */
+    private static ByteBuffer TermsBody(HashMap<String, int[]> words) {
+        String[] sorted = words.keySet().toArray(new String[0]);
+        Arrays.sort(sorted);
+        byte[][] bytes = new byte[sorted.length][];
+        int[] docs = new int[sorted.length];
+        int size = 4 + 12 * sorted.length;
+        for (int w = 0; w < sorted.length; w++) {
+            bytes[w] = sorted[w].getBytes(StandardCharsets.UTF_8);
+            int[] postings = words.get(sorted[w]);
+            for (int i = 1; i <= postings[0]; i += 2 + postings[i + 1]) {
+                docs[w]++;
+            }
+            // Word, ids and offsets, then the positions with their count
+            size += 4 + bytes[w].length + 8 * docs[w] + 4 * (postings[0] - docs[w]);
+        }
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.putInt(sorted.length);
+        int offset = 4 + 12 * sorted.length;
+        for (int w = 0; w < sorted.length; w++) {
+            body.putInt(offset).putInt(offset + 4 + bytes[w].length).putInt(docs[w]);
+            offset += 4 + bytes[w].length + 8 * docs[w];
+        }
+        int positions = offset;
+        for (int w = 0; w < sorted.length; w++) {
+            int[] postings = words.get(sorted[w]);
+            body.putInt(bytes[w].length).put(bytes[w]);
+            for (int i = 1; i <= postings[0]; i += 2 + postings[i + 1]) {
+                body.putInt(postings[i]);
+            }
+            for (int i = 1; i <= postings[0]; i += 2 + postings[i + 1]) {
+                body.putInt(positions);
+                positions += 4 * (1 + postings[i + 1]);
+            }
+        }
+        for (int w = 0; w < sorted.length; w++) {
+            int[] postings = words.get(sorted[w]);
+            for (int i = 1; i <= postings[0]; i += 2 + postings[i + 1]) {
+                for (int p = 0; p <= postings[i + 1]; p++) {
+                    body.putInt(postings[i + 1 + p]);
+                }
+            }
+        }
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Add a value to a growable list.
+     *
+     * @param list the list ([size, values...]), or null to create it
+     * @return the list, or a larger copy of it
+     */
+    private static int[] Push(int[] list, int value) {
+        if (list == null) {
+            list = new int[4];
+        } else if (list[0] + 1 == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+        }
+        list[++list[0]] = value;
+        return list;
+    }
+
+    /**
+     * Layout: number of keywords, offset of each keyword (by id), ids sorted by
+     * lower-case keyword, then the keywords (length and UTF-8 bytes).
+     */
+    private static ByteBuffer KeysBody(String[] keywords) {
+        int count = keywords.length;
+        byte[][] bytes = new byte[count][];
+        int size = 4 + 8 * count;
+        for (int i = 0; i < count; i++) {
+            bytes[i] = keywords[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + bytes[i].length;
+        }
+        Integer[] byLower = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byLower[i] = i;
+        }
+        Arrays.sort(byLower, (a, b) -> keywords[a].toLowerCase().compareTo(keywords[b].toLowerCase()));
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.putInt(count);
+        int offset = 4 + 8 * count;
+        for (int i = 0; i < count; i++) {
+            body.putInt(offset);
+            offset += 4 + bytes[i].length;
+        }
+        for (int i = 0; i < count; i++) {
+            body.putInt(byLower[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            body.putInt(bytes[i].length).put(bytes[i]);
+        }
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Layout: number of trigrams, then a table sorted by trigram of (trigram,
+     * offset of its postings, number of postings), then the postings (ids of the
+     * keywords having the trigram, in increasing order).
+     */
+    private static ByteBuffer DefinitionsBody(HashMap<Long, int[]> grams) {
+        Long[] sorted = grams.keySet().toArray(new Long[0]);
+        Arrays.sort(sorted);
+        int size = 4 + 16 * sorted.length;
+        for (int[] ids : grams.values()) {
+            size += 4 * ids[0];
+        }
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.putInt(sorted.length);
+        int offset = 4 + 16 * sorted.length;
+        for (Long gram : sorted) {
+            int[] ids = grams.get(gram);
+            body.putLong(gram).putInt(offset).putInt(ids[0]);
+            offset += 4 * ids[0];
+        }
+        for (Long gram : sorted) {
+            int[] ids = grams.get(gram);
+            for (int i = 1; i <= ids[0]; i++) {
+                body.putInt(ids[i]);
+            }
+        }
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Add an id to a growable list of ids, unless it is already the last one.
+     *
+     * @param ids the list ([count, ids...]), or null to create it
+     * @param id  the id
+     * @return the list, or a larger copy of it
+     */
+    private static int[] Append(int[] ids, int id) {
+        if (ids == null) {
+            ids = new int[4];
+        } else if (ids[ids[0]] == id) {
+            return ids;
+        } else if (ids[0] + 1 == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[++ids[0]] = id;
+        return ids;
+    }
+
+    private static long Trigram(String str, int i) {
+        return ((long) str.charAt(i) << 32) | ((long) str.charAt(i + 1) << 16) | str.charAt(i + 2);
+    }
+
+    /**
+     * @return number of keywords of the base layer
+     * @throws IOException
+     */
+    public Integer size() throws IOException {
+        return keys.getBody().getInt(0);
+    }
+
+    /**
+     * @param id id of a keyword (its rank in keyword order)
+     * @return the keyword
+     * @throws IOException
+     */
+    public String Key(int id) throws IOException {
+        ByteBuffer body = keys.getBody();
+        int offset = body.getInt(4 + 4 * id);
+        byte[] bytes = new byte[body.getInt(offset)];
+        body.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find the keywords equal to a term, ignoring case.
+     *
+     * @param term the term
+     * @return the keywords, in keyword order
+     * @throws IOException
+     */
+    public List<String> Keyword(String term) throws IOException {
+        ByteBuffer body = keys.getBody();
+        int count = body.getInt(0), byLower = 4 + 4 * count;
+        String lower = term.toLowerCase();
+        // Find the first keyword not less than the term
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Key(body.getInt(byLower + 4 * mid)).toLowerCase().compareTo(lower) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        TreeSet<String> found = new TreeSet<String>();
+        for (int i = low; i < count; i++) {
+            String key = Key(body.getInt(byLower + 4 * i));
+            if (!key.toLowerCase().equals(lower)) {
+                break;
+            }
+            found.add(key);
+        }
+        return new ArrayList<String>(found);
+    }
+
+    /**
+     * Find the keywords whose definitions may contain a term, ignoring case:
+     * the ones having all trigrams of the term. Callers still have to check the
+     * definitions.
+     *
+     * @param term the term
+     * @return the candidate keywords, in keyword order, or null if the term is
+     *         too short to use the index
+     * @throws IOException
+     */
+    public List<String> Definition(String term) throws IOException {
+        String lower = term.toLowerCase();
+        if (lower.length() < 3) {
+            return null;
+        }
+        ByteBuffer body = definitions.getBody();
+        // Postings of every distinct trigram, the shortest first
+        TreeSet<Long> grams = new TreeSet<Long>();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            grams.add(Trigram(lower, i));
+        }
+        ArrayList<int[]> postings = new ArrayList<int[]>(); // [offset, count]
+        for (Long gram : grams) {
+            int entry = FindTrigram(body, gram);
+            if (entry < 0) {
+                return new ArrayList<String>();
+            }
+            postings.add(new int[] { body.getInt(entry + 8), body.getInt(entry + 12) });
+        }
+        postings.sort((a, b) -> Integer.compare(a[1], b[1]));
+        int[] ids = new int[postings.get(0)[1]];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = body.getInt(postings.get(0)[0] + 4 * i);
+        }
+        int size = ids.length;
+        for (int p = 1; p < postings.size() && size > 0; p++) {
+            // Keep the ids also in the next postings (both are sorted)
+            int offset = postings.get(p)[0], length = postings.get(p)[1], j = 0, kept = 0;
+            for (int i = 0; i < size; i++) {
+                while (j < length && body.getInt(offset + 4 * j) < ids[i]) {
+                    j++;
+                }
+                if (j < length && body.getInt(offset + 4 * j) == ids[i]) {
+                    ids[kept++] = ids[i];
+                }
+            }
+            size = kept;
+        }
+        ArrayList<String> found = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            found.add(Key(ids[i]));
+        }
+        return found;
+    }
+
+    /**
+     * @return position of the entry of a trigram in the table, or -1
+     */
+    private static int FindTrigram(ByteBuffer body, long gram) {
+        int low = 0, high = body.getInt(0) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = body.getLong(4 + 16 * mid);
+            if (value < gram) {
+                low = mid + 1;
+            } else if (value > gram) {
+                high = mid - 1;
+            } else {
+                return 4 + 16 * mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the keywords whose definitions have a word.
+     *
+     * @param word a lower-case word (see DefinitionQuery.Tokenize)
+     * @return the postings of the word, empty if no definition has it
+     * @throws IOException
+     */
+    public Postings Term(String word) throws IOException {
+        ByteBuffer body = terms.getBody();
+        int low = 0, high = body.getInt(0) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1, entry = 4 + 12 * mid, offset = body.getInt(entry);
+            byte[] bytes = new byte[body.getInt(offset)];
+            body.get(offset + 4, bytes);
+            int cmp = new String(bytes, StandardCharsets.UTF_8).compareTo(word);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return new Postings(body, body.getInt(entry + 4), body.getInt(entry + 8));
+            }
+        }
+        return new Postings(body, 0, 0);
+    }
+
+    /**
+     * @return number of keywords that can be sampled
+     * @throws IOException
+     */
+    public Integer getSampleSize() throws IOException {
+        return sample.getBody().getInt(0);
+    }
+
+    /**
+     * @param i index in the sampling table, in [0, getSampleSize())
+     * @return the keyword at that index
+     * @throws IOException
+     */
+    public String Sample(int i) throws IOException {
+        return Key(sample.getBody().getInt(4 + 4 * i));
+    }
+}
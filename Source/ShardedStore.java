@@ -0,0 +1,592 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Store glossary data across multiple shard files. Keywords are partitioned by
+ * the hash of their lower-case form, so each keyword (in any letter case)
+ * always lives in exactly one shard. Every shard has its own csv file, its own
+ * TreeMap and its own change log:
+ * <ul>
+ * <li><code>&lt;name&gt;.shards</code>: manifest holding the number of shards
+ * and their generation</li>
+ * <li><code>&lt;name&gt;.g&lt;generation&gt;.shard&lt;i&gt;.csv</code>: data of
+ * the i-th shard</li>
+ * <li><code>&lt;name&gt;.g&lt;generation&gt;.shard&lt;i&gt;.log</code>: changes
+ * made since the csv was written, as csv records: '+', a keyword and its
+ * definitions, or '-' and a removed keyword</li>
+ * </ul>
+ * A glossary with shards is read from them (see Glossary): the csv files hold
+ * its base layer and the change logs its changes, so saving a change only
+ * rewrites the log of one shard.
+ * <p>
+ * Resharding to a different number of shards is done offline with
+ * <code>java ShardedStore &lt;glossary&gt; &lt;shards&gt;</code>. The new
+ * shards are written under the next generation, then the manifest is replaced
+ * by one pointing to them, and only then are the old shards removed: if it is
+ * interrupted, the old shards are still used.
+ */
+public class ShardedStore {
+    private String name;
+    private Integer generation;
+    private Shard[] shards;
+    private ExecutorService pool;
+
+    /**
+     * A single shard: one csv file, one change log and one TreeMap.
+     */
+    private static class Shard {
+        private String csvpath, logpath;
+        private TreeMap<String, String[]> data = new TreeMap<String, String[]>();
+        // Changes of the log, null for a removed keyword
+        private TreeMap<String, String[]> changes = new TreeMap<String, String[]>();
+        private Boolean modified = false;
+
+        private Shard(String name, Integer generation, Integer id) {
+            String prefix = name + ".g" + generation + ".shard" + id;
+            csvpath = prefix + ".csv";
+            logpath = prefix + ".log";
+        }
+
+        /**
+         * Load the csv file of this shard, then its change log.
+         *
+         * @throws IOException
+         */
+        private void Read() throws IOException {
+            if (new File(csvpath).exists()) {
+                Exporter.Reader reader = new Exporter.Reader(csvpath, Exporter.Format.CSV);
+                String[] entry;
+                while ((entry = reader.Next()) != null) {
+                    data.put(entry[0], Arrays.copyOfRange(entry, 1, entry.length));
+                }
+                reader.close();
+            }
+            if (new File(logpath).exists()) {
+                Exporter.Reader reader = new Exporter.Reader(logpath, Exporter.Format.CSV);
+                String[] change;
+                while ((change = reader.Next()) != null) {
+                    if (change.length >= 2 && change[0].equals("+")) {
+                        changes.put(change[1], Arrays.copyOfRange(change, 2, change.length));
+                    } else if (change.length == 2 && change[0].equals("-")) {
+                        changes.put(change[1], null);
+                    }
+                }
+                reader.close();
+            }
+        }
+
+        /**
+         * Rewrite the change log with the changes held in memory.
+         *
+         * @throws IOException
+         */
+        private void WriteLog() throws IOException {
+            if (changes.isEmpty()) {
+                new File(logpath).delete();
+                return;
+            }
+            Writer fw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logpath), "UTF-8"));
+            try {
+                fw.write(Exporter.CHANGES_HEADER + "\n");
+                for (Map.Entry<String, String[]> change : changes.entrySet()) {
+                    fw.write(Exporter.ChangeRecord(change.getKey(), change.getValue()) + "\n");
+                }
+            } finally {
+                fw.close();
+            }
+        }
+
+        private void Delete() {
+            new File(csvpath).delete();
+            new File(logpath).delete();
+        }
+    }
+
+    private ShardedStore(String name, Integer count, Integer generation) {
+        this.name = name;
+        this.generation = generation;
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(name, generation, i);
+        }
+        // Workers don't keep the program running
+        pool = Executors.newFixedThreadPool(Math.min(count, Runtime.getRuntime().availableProcessors()), task -> {
+            Thread thread = new Thread(task, "shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Tell whether a glossary is stored in shards.
+     *
+     * @param name the path of the glossary, without the extension
+     * @return true if its manifest exists
+     */
+    public static Boolean Exists(String name) {
+        return new File(name + ".shards").exists();
+    }
+
+    /**
+     * Read the manifest of a sharded glossary.
+     *
+     * @return the number of shards and their generation, or null if there is no
+     *         manifest
+     */
+    private static int[] ReadManifest(String name) throws IOException {
+        File manifest = new File(name + ".shards");
+        if (!manifest.exists()) {
+            return null;
+        }
+        BufferedReader br = new BufferedReader(new FileReader(manifest));
+        String line = br.readLine();
+        br.close();
+        if (line == null || !line.startsWith("Shards,")) {
+            throw new IOException("Invalid shard manifest '" + manifest + "'.");
+        }
+        String[] sec = line.substring(7).trim().split(",");
+        if (sec.length != 2) {
+            throw new IOException("Invalid shard manifest '" + manifest + "'.");
+        }
+        try {
+            return new int[] { Integer.parseInt(sec[0]), Integer.parseInt(sec[1]) };
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid shard manifest '" + manifest + "'.");
+        }
+    }
+
+    /**
+     * Replace the manifest, atomically.
+     */
+    private void WriteManifest() throws IOException {
+        Path temp = Path.of(name + ".shards.tmp");
+        Writer fw = new FileWriter(temp.toFile());
+        try {
+            fw.write("Shards," + shards.length + "," + generation + "\n");
+        } finally {
+            fw.close();
+        }
+        Files.move(temp, Path.of(name + ".shards"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Open an existing sharded glossary. All shards are loaded concurrently.
+     *
+     * @param name the path of the glossary, without the extension
+     * @return the opened store, or null if no manifest exists
+     * @throws IOException
+     */
+    public static ShardedStore Open(String name) throws IOException {
+        int[] manifest = ReadManifest(name);
+        if (manifest == null) {
+            return null;
+        }
+        ShardedStore store = new ShardedStore(name, manifest[0], manifest[1]);
+        store.RunAll(shard -> {
+            shard.Read();
+            return null;
+        });
+        return store;
+    }
+
+    /**
+     * Create a sharded glossary from existing data, replacing any shards of the
+     * same name once the new ones are written. Shards are written concurrently.
+     *
+     * @param name  the path of the glossary, without the extension
+     * @param data  entries to distribute into shards
+     * @param count number of shards
+     * @return the created store
+     * @throws IOException
+     */
+    public static ShardedStore Create(String name, Map<String, String[]> data, Integer count) throws IOException {
+        return Create(name, data, new TreeMap<String, String[]>(), count);
+    }
+
+    /**
+     * Create a sharded glossary from existing data and changes to it, kept in the
+     * change logs, replacing any shards of the same name once the new ones are
+     * written. Shards are written concurrently.
+     *
+     * @param name    the path of the glossary, without the extension
+     * @param data    entries to distribute into shards
+     * @param changes changes to the entries, null for removed keywords
+     * @param count   number of shards
+     * @return the created store
+     * @throws IOException
+     */
+    public static ShardedStore Create(String name, Map<String, String[]> data, Map<String, String[]> changes,
+            Integer count) throws IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive.");
+        }
+        int[] old = ReadManifest(name);
+        ShardedStore store = new ShardedStore(name, count, old == null ? 1 : old[1] + 1);
+        for (Map.Entry<String, String[]> entry : data.entrySet()) {
+            store.ShardOf(entry.getKey()).data.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            store.ShardOf(change.getKey()).changes.put(change.getKey(), change.getValue());
+        }
+        store.RunAll(shard -> {
+            Exporter.Export(shard.data, shard.csvpath, Exporter.Format.CSV);
+            shard.WriteLog();
+            return null;
+        });
+        store.WriteManifest();
+        if (old != null) {
+            for (int i = 0; i < old[0]; i++) {
+                new Shard(name, old[1], i).Delete();
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Get the shard responsible for a keyword.
+     *
+     * @param key the keyword
+     * @return index of the shard holding the keyword
+     */
+    public Integer getShard(String key) {
+        return Math.floorMod(key.toLowerCase().hashCode(), shards.length);
+    }
+
+    private Shard ShardOf(String key) {
+        return shards[getShard(key)];
+    }
+
+    /**
+     * Run a task on every shard in parallel and wait for all of them.
+     *
+     * @param task the task to run
+     * @return results of the task, ordered by shard
+     * @throws IOException
+     */
+    private <T> List<T> RunAll(ShardTask<T> task) throws IOException {
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (Shard shard : shards) {
+            futures.add(pool.submit(() -> task.Run(shard)));
+        }
+        List<T> results = new ArrayList<T>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for shards.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    private interface ShardTask<T> {
+        T Run(Shard shard) throws IOException;
+    }
+
+    /**
+     * @return number of shards
+     */
+    public Integer getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Search for a keyword (case-insensitive) in the csv files only, without the
+     * changes of the logs. Only one shard is touched.
+     *
+     * @param term search term
+     * @return a TreeMap of all found results
+     */
+    public TreeMap<String, String[]> SearchBaseKeyword(String term) {
+        TreeMap<String, String[]> results = new TreeMap<String, String[]>();
+        Shard shard = ShardOf(term);
+        synchronized (shard) {
+            for (Map.Entry<String, String[]> entry : shard.data.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(term)) {
+                    results.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Search for a term in the definitions (case-insensitive) in the csv files
+     * only, without the changes of the logs. The search fans out to all shards
+     * in parallel.
+     *
+     * @param term search term
+     * @return a TreeMap of all found results
+     * @throws IOException
+     */
+    public TreeMap<String, String[]> SearchBaseDefinition(String term) throws IOException {
+        String lower = term.toLowerCase();
+        TreeMap<String, String[]> results = new TreeMap<String, String[]>();
+        for (TreeMap<String, String[]> part : RunAll(shard -> {
+            TreeMap<String, String[]> found = new TreeMap<String, String[]>();
+            synchronized (shard) {
+                for (Map.Entry<String, String[]> entry : shard.data.entrySet()) {
+                    for (String str : entry.getValue()) {
+                        if (str.toLowerCase().contains(lower)) {
+                            found.put(entry.getKey(), entry.getValue());
+                            break;
+                        }
+                    }
+                }
+            }
+            return found;
+        })) {
+            results.putAll(part);
+        }
+        return results;
+    }
+
+    /**
+     * Get the entries of the csv files of the shards, without the changes of the
+     * logs, as one map: getting, putting or removing a keyword only touches its
+     * shard, and entries are iterated in keyword order by merging the shards.
+     * Changes made through it are written by WriteBase().
+     *
+     * @return the map
+     */
+    public Map<String, String[]> getBase() {
+        return new AbstractMap<String, String[]>() {
+            @Override
+            public int size() {
+                return BaseSize();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return ShardOf((String) key).data.containsKey(key);
+            }
+
+            @Override
+            public String[] get(Object key) {
+                return ShardOf((String) key).data.get(key);
+            }
+
+            @Override
+            public String[] put(String key, String[] value) {
+                Shard shard = ShardOf(key);
+                synchronized (shard) {
+                    shard.modified = true;
+                    return shard.data.put(key, value);
+                }
+            }
+
+            @Override
+            public String[] remove(Object key) {
+                Shard shard = ShardOf((String) key);
+                synchronized (shard) {
+                    shard.modified = true;
+                    return shard.data.remove(key);
+                }
+            }
+
+            @Override
+            public Set<Map.Entry<String, String[]>> entrySet() {
+                return new AbstractSet<Map.Entry<String, String[]>>() {
+                    @Override
+                    public int size() {
+                        return BaseSize();
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<String, String[]>> iterator() {
+                        return new MergeIterator();
+                    }
+                };
+            }
+        };
+    }
+
+    private int BaseSize() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.data.size();
+        }
+        return size;
+    }
+
+    /**
+     * Iterate over the csv entries of all shards in keyword order, always taking
+     * the smallest next keyword among the shards.
+     */
+    private class MergeIterator implements Iterator<Map.Entry<String, String[]>> {
+        private PriorityQueue<PeekingIterator> heads = new PriorityQueue<PeekingIterator>(
+                (a, b) -> a.next.getKey().compareTo(b.next.getKey()));
+
+        private MergeIterator() {
+            for (Shard shard : shards) {
+                PeekingIterator it = new PeekingIterator(shard.data.entrySet().iterator());
+                if (it.next != null) {
+                    heads.add(it);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<String, String[]> next() {
+            PeekingIterator last = heads.poll();
+            if (last == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String[]> entry = last.next;
+            last.Advance();
+            if (last.next != null) {
+                heads.add(last);
+            }
+            return entry;
+        }
+    }
+
+    private static class PeekingIterator {
+        private Iterator<Map.Entry<String, String[]>> it;
+        private Map.Entry<String, String[]> next;
+
+        private PeekingIterator(Iterator<Map.Entry<String, String[]>> it) {
+            this.it = it;
+            Advance();
+        }
+
+        private void Advance() {
+            next = it.hasNext() ? it.next() : null;
+        }
+    }
+
+    /**
+     * Write the csv files of the shards changed through getBase(), in parallel.
+     * The manifest is written again too, so its modification time tells when the
+     * shards last changed.
+     *
+     * @throws IOException
+     */
+    public void WriteBase() throws IOException {
+        RunAll(shard -> {
+            synchronized (shard) {
+                if (shard.modified) {
+                    Exporter.Export(shard.data, shard.csvpath, Exporter.Format.CSV);
+                    shard.modified = false;
+                }
+            }
+            return null;
+        });
+        WriteManifest();
+    }
+
+    /**
+     * Get the changes of the change logs of all shards.
+     *
+     * @return the changes in keyword order, null for removed keywords
+     */
+    public TreeMap<String, String[]> getChanges() {
+        TreeMap<String, String[]> all = new TreeMap<String, String[]>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                all.putAll(shard.changes);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Replace the changes of the change logs. Only the logs of the shards whose
+     * changes differ are written.
+     *
+     * @param changes every change, null for removed keywords
+     * @throws IOException
+     */
+    public void setChanges(Map<String, String[]> changes) throws IOException {
+        ArrayList<TreeMap<String, String[]>> parts = new ArrayList<TreeMap<String, String[]>>();
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new TreeMap<String, String[]>());
+        }
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            parts.get(getShard(change.getKey())).put(change.getKey(), change.getValue());
+        }
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            synchronized (shard) {
+                if (!SameChanges(shard.changes, parts.get(i))) {
+                    shard.changes = parts.get(i);
+                    shard.WriteLog();
+                }
+            }
+        }
+    }
+
+    private static Boolean SameChanges(TreeMap<String, String[]> a, TreeMap<String, String[]> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (Map.Entry<String, String[]> entry : a.entrySet()) {
+            if (!b.containsKey(entry.getKey()) || !Arrays.equals(entry.getValue(), b.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop the worker threads of this store.
+     */
+    public void Close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Redistribute a sharded glossary into a different number of shards. This is
+     * an offline operation: no other process should use the shards meanwhile.
+     * The old shards are only removed once the new ones are in place (see
+     * Create).
+     *
+     * @param name  the path of the glossary, without the extension
+     * @param count the new number of shards
+     * @throws IOException
+     */
+    public static void Reshard(String name, Integer count) throws IOException {
+        ShardedStore old = Open(name);
+        if (old == null) {
+            throw new FileNotFoundException("No shard manifest found for '" + name + "'.");
+        }
+        TreeMap<String, String[]> base = new TreeMap<String, String[]>(old.getBase());
+        old.Close();
+        // Changes stay changes, so they can still be discarded (see Glossary)
+        Create(name, base, old.getChanges(), count).Close();
+    }
+
+    /**
+     * Offline resharding tool.
+     *
+     * @param args the glossary path and the new number of shards
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("(i) Usage: java ShardedStore <glossary> <shards>");
+            return;
+        }
+        String name = args[0].replace('\\', '/').replaceFirst("[.][^.]+$", "");
+        try {
+            System.out.println("(@) Resharding '" + name + "' into " + args[1] + " shards...");
+            Reshard(name, Integer.parseInt(args[1]));
+            System.out.println("(i) Done.");
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("(!) Error resharding: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import java.util.*;
+
+/**
+ * Find keywords with similar definitions using MinHash signatures and
+ * locality-sensitive hashing (LSH). Each keyword is represented by the set of
+ * character 3-grams of its definitions. The signature of that set is split into
+ * bands, and keywords sharing any band land in the same bucket, so candidates
+ * are found without comparing all pairs.
+ * REF: http://infolab.stanford.edu/~ullman/mmds/ch3.pdf
+ */
+public class SimilarityIndex {
+    public static final Integer HASHES = 32, BANDS = 16, ROWS = HASHES / BANDS;
+    private static final Integer MAX_CANDIDATES = 256;
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDL);
+        for (int i = 0; i < HASHES; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    private HashMap<String, int[]> signatures = new HashMap<String, int[]>();
+    private HashMap<Long, HashSet<String>> buckets = new HashMap<Long, HashSet<String>>();
+
+    /**
+     * Create an empty index.
+     */
+    public SimilarityIndex() {
+    }
+
+    /**
+     * Build the index over all entries, in time linear to the size of the
+     * glossary.
+     *
+     * @param data the glossary entries
+     */
+    public SimilarityIndex(Map<String, String[]> data) {
+        for (Map.Entry<String, String[]> entry : data.entrySet()) {
+            Put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return number of indexed keywords
+     */
+    public Integer size() {
+        return signatures.size();
+    }
+
+    /**
+     * Add or update the definitions of a keyword.
+     *
+     * @param key  the keyword
+     * @param defs its definitions, null to remove the keyword
+     */
+    public void Put(String key, String[] defs) {
+        Remove(key);
+        if (defs == null) {
+            return;
+        }
+        Put(key, Signature(defs));
+    }
+
+    /**
+     * Add or update a keyword with an already computed signature.
+     *
+     * @param key the keyword
+     * @param sig its signature
+     */
+    public void Put(String key, int[] sig) {
+        Remove(key);
+        signatures.put(key, sig);
+        for (int b = 0; b < BANDS; b++) {
+            buckets.computeIfAbsent(Band(sig, b), k -> new HashSet<String>()).add(key);
+        }
+    }
+
+    /**
+     * Remove a keyword from the index.
+     *
+     * @param key the keyword
+     */
+    public void Remove(String key) {
+        int[] sig = signatures.remove(key);
+        if (sig == null) {
+            return;
+        }
+        for (int b = 0; b < BANDS; b++) {
+            Long band = Band(sig, b);
+            HashSet<String> bucket = buckets.get(band);
+            if (bucket != null && bucket.remove(key) && bucket.isEmpty()) {
+                buckets.remove(band);
+            }
+        }
+    }
+
+    /**
+     * Find keywords whose definitions are similar to those of a keyword, most
+     * similar first.
+     *
+     * @param key   the keyword
+     * @param limit maximum number of results
+     * @return similar keywords, excluding the keyword itself
+     */
+    public List<String> Similar(String key, Integer limit) {
+        int[] sig = signatures.get(key);
+        if (sig == null) {
+            return new ArrayList<String>();
+        }
+        return Similar(sig, key, limit, 0.0);
+    }
+
+    /**
+     * Find keywords whose signature is similar to the given one.
+     *
+     * @param sig       the signature to compare with
+     * @param exclude   keyword to leave out of the results, can be null
+     * @param limit     maximum number of results
+     * @param threshold minimum estimated similarity, in [0, 1]
+     * @return similar keywords, most similar first
+     */
+    public List<String> Similar(int[] sig, String exclude, Integer limit, Double threshold) {
+        HashMap<String, Integer> candidates = new HashMap<String, Integer>();
+        for (int b = 0; b < BANDS && candidates.size() < MAX_CANDIDATES; b++) {
+            HashSet<String> bucket = buckets.get(Band(sig, b));
+            if (bucket == null) {
+                continue;
+            }
+            for (String other : bucket) {
+                if (candidates.size() >= MAX_CANDIDATES) {
+                    break;
+                }
+                if (!other.equals(exclude) && !candidates.containsKey(other)) {
+                    candidates.put(other, Agreement(sig, signatures.get(other)));
+                }
+            }
+        }
+        ArrayList<String> results = new ArrayList<String>();
+        for (Map.Entry<String, Integer> entry : candidates.entrySet()) {
+            if (entry.getValue() >= threshold * HASHES) {
+                results.add(entry.getKey());
+            }
+        }
+        // Most similar first, then by keyword for a deterministic order
+        results.sort((a, b) -> {
+            int cmp = candidates.get(b).compareTo(candidates.get(a));
+            return cmp != 0 ? cmp : a.compareTo(b);
+        });
+        return results.size() > limit ? new ArrayList<String>(results.subList(0, limit)) : results;
+    }
+
+    /**
+     * Estimate the Jaccard similarity between 2 indexed keywords.
+     *
+     * @param a first keyword
+     * @param b second keyword
+     * @return the estimated similarity in [0, 1], or 0 if any is not indexed
+     */
+    public Double Similarity(String a, String b) {
+        int[] sa = signatures.get(a), sb = signatures.get(b);
+        if (sa == null || sb == null) {
+            return 0.0;
+        }
+        return (double) Agreement(sa, sb) / HASHES;
+    }
+
+    /**
+     * Count the signature positions where 2 signatures agree.
+     */
+    private static Integer Agreement(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return same;
+    }
+
+    /**
+     * Hash a band of a signature into a bucket id.
+     */
+    private static Long Band(int[] sig, int band) {
+        long h = band;
+        for (int r = band * ROWS; r < (band + 1) * ROWS; r++) {
+            h = Mix(h * 31 + sig[r]);
+        }
+        return h;
+    }
+
+    /**
+     * Compute the MinHash signature of the character 3-grams of some definitions.
+     *
+     * @param defs the definitions
+     * @return the signature
+     */
+    public static int[] Signature(String... defs) {
+        int[] sig = new int[HASHES];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+        for (String def : defs) {
+            String text = " " + Normalize(def) + " ";
+            if (text.length() < 3) {
+                continue;
+            }
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                long shingle = text.charAt(i) * 961L + text.charAt(i + 1) * 31L + text.charAt(i + 2);
+                for (int h = 0; h < HASHES; h++) {
+                    int value = (int) (Mix(shingle ^ SEEDS[h]) >>> 33);
+                    if (value < sig[h]) {
+                        sig[h] = value;
+                    }
+                }
+            }
+        }
+        return sig;
+    }
+
+    /**
+     * Lower-case a definition, keep only letters and digits, and collapse
+     * everything else into single spaces.
+     *
+     * @param def the definition
+     * @return the normalized text
+     */
+    public static String Normalize(String def) {
+        StringBuilder sb = new StringBuilder(def.length());
+        Boolean space = true;
+        for (int i = 0; i < def.length(); i++) {
+            char c = Character.toLowerCase(def.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == ' ') {
+            sb.setLength(len - 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 64-bit finalizer of MurmurHash3.
+     */
+    private static long Mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,377 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Split a glossary file in the user's format (keyword`def1| def2, with
+ * continuation lines) into content-defined chunks, so changes to the file can
+ * be found without parsing it again. A chunk ends after every keyword whose
+ * hash is a multiple of CHUNK_MASK + 1, so inserting or removing lines only
+ * changes the chunks around them, and the other chunks keep their hash.
+ * <p>
+ * Each chunk remembers the keywords it defines and a hash of their
+ * definitions, which is enough to tell which keywords were added, changed or
+ * removed between 2 versions of the file.
+ * <p>
+ * The index also records the size, modification time and hash of the whole
+ * file, and can be saved next to the glossary (see Write), so a later run can
+ * tell whether the file changed, and which keywords, without parsing it again.
+ */
+public class SourceIndex {
+    public static final Integer CHUNK_MASK = 31; // ~32 keywords per chunk
+    public static final Integer MAGIC = 0x55475349; // "UGSI"
+    public static final Integer FORMAT = 1;
+
+    private ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+    private HashMap<Long, Chunk> byHash = new HashMap<Long, Chunk>();
+    private long length = -1, modified = -1, hash = 0;
+
+    /**
+     * A part of the file starting at the beginning of a keyword line.
+     */
+    public static class Chunk {
+        public final Long hash;
+        public final Integer start, length;
+        private LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>();
+
+        private Chunk(Long hash, Integer start, Integer length) {
+            this.hash = hash;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * @return keywords defined in this chunk, in file order
+         */
+        public Set<String> Keys() {
+            return entries.keySet();
+        }
+    }
+
+    /**
+     * Keywords added or changed (with their new definitions) and removed
+     * between 2 versions of a file.
+     */
+    public static class Changes {
+        public final LinkedHashMap<String, String[]> put = new LinkedHashMap<String, String[]>();
+        public final HashSet<String> removed = new HashSet<String>();
+        public Integer parsed = 0, total = 0; // chunks
+
+        public Boolean IsEmpty() {
+            return put.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    /**
+     * Split a file into chunks, parsing all of them (see Parse). This is how
+     * Glossary.Read reads the user's file, so both always agree.
+     *
+     * @param path   path of the file
+     * @param parsed receives the entries of the file, can be null
+     * @return the index of the file
+     * @throws IOException
+     */
+    public static SourceIndex Scan(String path, Map<String, String[]> parsed) throws IOException {
+        File file = new File(path);
+        long modified = file.lastModified();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        SourceIndex index = Scan(bytes, null, parsed);
+        index.Stamp(bytes, modified);
+        return index;
+    }
+
+    /**
+     * Split the content of a file into chunks. Chunks also found in a previous
+     * index are reused, the other ones are parsed into the given map.
+     *
+     * @param bytes    content of the file
+     * @param previous index of the previous version, can be null
+     * @param parsed   receives the entries of the new chunks, can be null
+     * @return the index of the file
+     */
+    private static SourceIndex Scan(byte[] bytes, SourceIndex previous, Map<String, String[]> parsed) {
+        SourceIndex index = new SourceIndex();
+        int pos = NextLine(bytes, 0); // Skip columns name
+        int start = pos;
+        long hash = 0xcbf29ce484222325L;
+        while (pos < bytes.length) {
+            int end = NextLine(bytes, pos);
+            Boolean boundary = false;
+            int tick = IndexOf(bytes, pos, end, (byte) '`');
+            if (tick >= 0) {
+                // A keyword line ends the chunk if the keyword hash says so
+                long keyHash = 0xcbf29ce484222325L;
+                for (int i = pos; i < tick; i++) {
+                    keyHash = (keyHash ^ bytes[i]) * 0x100000001b3L;
+                }
+                boundary = (keyHash & CHUNK_MASK) == 0;
+            }
+            for (int i = pos; i < end; i++) {
+                hash = (hash ^ bytes[i]) * 0x100000001b3L;
+            }
+            pos = end;
+            if (boundary) {
+                // The chunk ends with the keyword, its continuation lines go along
+                while (pos < bytes.length && IndexOf(bytes, pos, NextLine(bytes, pos), (byte) '`') < 0) {
+                    int next = NextLine(bytes, pos);
+                    for (int i = pos; i < next; i++) {
+                        hash = (hash ^ bytes[i]) * 0x100000001b3L;
+                    }
+                    pos = next;
+                }
+                index.Add(bytes, new Chunk(hash, start, pos - start), previous, parsed);
+                start = pos;
+                hash = 0xcbf29ce484222325L;
+            }
+        }
+        if (pos > start) {
+            index.Add(bytes, new Chunk(hash, start, pos - start), previous, parsed);
+        }
+        return index;
+    }
+
+    /**
+     * Add a chunk, reusing the entries of the previous index if it has the same
+     * hash, or parsing it otherwise.
+     */
+    private void Add(byte[] bytes, Chunk chunk, SourceIndex previous, Map<String, String[]> parsed) {
+        Chunk old = previous == null ? null : previous.byHash.get(chunk.hash);
+        if (old != null) {
+            chunk.entries = old.entries;
+        } else {
+            LinkedHashMap<String, String[]> entries = Parse(bytes, chunk.start, chunk.length);
+            for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+                chunk.entries.put(entry.getKey(), Hash(entry.getValue()));
+            }
+            if (parsed != null) {
+                parsed.putAll(entries);
+            }
+        }
+        chunks.add(chunk);
+        byHash.put(chunk.hash, chunk);
+    }
+
+    /**
+     * Parse a part of a file: a keyword line is "keyword`def1| def2", the
+     * following lines without '`' add definitions to it, blank ones are skipped.
+     * A repeated keyword replaces the previous one.
+     *
+     * @param bytes  content of the file
+     * @param start  offset of the first keyword line
+     * @param length length of the part
+     * @return the entries, in file order
+     */
+    public static LinkedHashMap<String, String[]> Parse(byte[] bytes, int start, int length) {
+        LinkedHashMap<String, String[]> entries = new LinkedHashMap<String, String[]>();
+        String text = new String(bytes, start, length, StandardCharsets.UTF_8);
+        String last = null;
+        for (String line : text.split("\r?\n")) {
+            String[] sec = line.split("`", 2);
+            if (sec.length >= 2) {
+                last = sec[0].trim();
+                entries.put(last, Trim(sec[1].split("\\|")));
+            } else if (last != null && !line.isBlank()) {
+                // Another definition of the above keyword
+                String[] values = entries.get(last), ext = Trim(sec[0].split("\\|"));
+                String[] newValues = Arrays.copyOf(values, values.length + ext.length);
+                System.arraycopy(ext, 0, newValues, values.length, ext.length);
+                entries.put(last, newValues);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Find the changes from this version of a file to its current content. Only
+     * the chunks that changed are parsed.
+     *
+     * @param path    path of the file
+     * @param changes receives the changes
+     * @return the index of the current content
+     * @throws IOException
+     */
+    public SourceIndex Rescan(String path, Changes changes) throws IOException {
+        File file = new File(path);
+        long modified = file.lastModified();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length == length && Hash(bytes) == hash) {
+            // Same content, only touched
+            this.modified = modified;
+            changes.total = chunks.size();
+            return this;
+        }
+        LinkedHashMap<String, String[]> parsed = new LinkedHashMap<String, String[]>();
+        SourceIndex current = Scan(bytes, this, parsed);
+        current.Stamp(bytes, modified);
+        // Old definitions of the keywords in chunks that disappeared
+        HashMap<String, Long> old = new HashMap<String, Long>();
+        for (Chunk chunk : chunks) {
+            if (!current.byHash.containsKey(chunk.hash)) {
+                old.putAll(chunk.entries);
+            }
+        }
+        for (Map.Entry<String, String[]> entry : parsed.entrySet()) {
+            Long before = old.remove(entry.getKey());
+            if (before == null || !before.equals(Hash(entry.getValue()))) {
+                changes.put.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!old.isEmpty()) {
+            // Keywords moved to another chunk are still there
+            HashSet<String> keys = new HashSet<String>();
+            for (Chunk chunk : current.chunks) {
+                keys.addAll(chunk.entries.keySet());
+            }
+            for (String key : old.keySet()) {
+                if (!keys.contains(key)) {
+                    changes.removed.add(key);
+                }
+            }
+        }
+        for (Chunk chunk : current.chunks) {
+            if (!byHash.containsKey(chunk.hash)) {
+                changes.parsed++;
+            }
+        }
+        changes.total = current.chunks.size();
+        return current;
+    }
+
+    /**
+     * Tell whether a file is still the one this index was made from, by its size
+     * and modification time only.
+     *
+     * @param file the file
+     * @return true if the file has the same size and modification time
+     */
+    public Boolean Matches(File file) {
+        return file.length() == length && file.lastModified() == modified;
+    }
+
+    /**
+     * Record the size, modification time and hash of the content indexed.
+     */
+    private void Stamp(byte[] bytes, long modified) {
+        this.length = bytes.length;
+        this.modified = modified;
+        this.hash = Hash(bytes);
+    }
+
+    /**
+     * Save the index into a file: a header with the size, modification time and
+     * hash of the indexed file, then every chunk with its keywords and the hash
+     * of their definitions.
+     *
+     * @param path path of the file
+     * @throws IOException
+     */
+    public void Write(String path) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(length);
+            out.writeLong(modified);
+            out.writeLong(hash);
+            out.writeInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                out.writeLong(chunk.hash);
+                out.writeInt(chunk.start);
+                out.writeInt(chunk.length);
+                out.writeInt(chunk.entries.size());
+                for (Map.Entry<String, Long> entry : chunk.entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read an index saved by Write().
+     *
+     * @param path path of the file
+     * @return the index, or null if the file doesn't exist or has another format
+     * @throws IOException
+     */
+    public static SourceIndex Read(String path) throws IOException {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return null;
+            }
+            SourceIndex index = new SourceIndex();
+            index.length = in.readLong();
+            index.modified = in.readLong();
+            index.hash = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Chunk chunk = new Chunk(in.readLong(), in.readInt(), in.readInt());
+                int entries = in.readInt();
+                for (int j = 0; j < entries; j++) {
+                    chunk.entries.put(in.readUTF(), in.readLong());
+                }
+                index.chunks.add(chunk);
+                index.byHash.put(chunk.hash, chunk);
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the chunks, in file order
+     */
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    private static String[] Trim(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].trim(); // Remove whitespaces
+        }
+        return values;
+    }
+
+    private static Long Hash(String[] values) {
+        long h = 0xcbf29ce484222325L;
+        for (String value : values) {
+            for (int i = 0; i < value.length(); i++) {
+                h = (h ^ value.charAt(i)) * 0x100000001b3L;
+            }
+            h = (h ^ '|') * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long Hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h = (h ^ b) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static int NextLine(byte[] bytes, int pos) {
+        while (pos < bytes.length && bytes[pos] != '\n') {
+            pos++;
+        }
+        return Math.min(pos + 1, bytes.length);
+    }
+
+    private static int IndexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}